@@ -0,0 +1,410 @@
+package edu.berkeley.cs186.database;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.DataBoxException;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.index.BPlusTree;
+import edu.berkeley.cs186.database.index.BPlusTreeException;
+import edu.berkeley.cs186.database.io.AccessStrategy;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+
+/**
+ * Loads the rows of a CSV file into an empty table and its empty indices. See Database#loadCsv.
+ *
+ * The calling thread reads the file a batch of lines at a time and hands each batch to a pool of
+ * parser threads, which split the lines into fields and turn the fields into DataBoxes of the
+ * schema's types. The calling thread takes the parsed batches back in file order and appends
+ * them with Table#addRecords, so the records land on the table's pages in the order of the file.
+ * Only the rows themselves are streamed: at most 2 * numThreads batches of BATCH_SIZE lines are
+ * in flight at once.
+ *
+ * Each index is built bottom-up with BPlusTree#bulkLoad once the table is loaded, the indices in
+ * parallel, which takes its entries in key order. Until then the entries of each index are
+ * sorted externally: the key and record id of each row are gathered on the heap a run of
+ * runSize entries at a time, and every full run is sorted and written out to a temporary table
+ * of the transaction passed in. The bulk load then merges the runs. Temporary tables are kept in
+ * IOMode.MEMORY, so the runs stay on the heap until they outgrow
+ * PageAllocator.getMemorySpillThreshold and spill to disk; the entries held on the heap outside
+ * of them are at most one run per index.
+ *
+ * Fields are separated by commas and may be quoted with double quotes, in which case they may
+ * contain commas, and "" stands for a double quote. A row may not span lines.
+ */
+class CsvLoader {
+  // The number of lines parsed as one batch.
+  private static final int BATCH_SIZE = 4096;
+  // The number of index entries sorted on the heap as one run, unless given.
+  static final int DEFAULT_RUN_SIZE = 1 << 16;
+
+  private static final Comparator<Pair<DataBox, RecordId>> byKey =
+    (a, b) -> a.getFirst().compareTo(b.getFirst());
+
+  private final Table table;
+  private final List<Type> types;
+  private final List<Integer> indexedCols;
+  private final List<BPlusTree> indices;
+  private final Database.Transaction transaction;
+  private final int numThreads;
+  private final int runSize;
+
+  /**
+   * @param table the table to load, which must be empty
+   * @param indexedCols the column of each index in indices
+   * @param indices the indices of the table to build, which must be empty
+   * @param transaction the transaction to keep sorted runs of index entries in
+   * @param numThreads the number of threads to parse with
+   */
+  CsvLoader(Table table, List<Integer> indexedCols, List<BPlusTree> indices,
+            Database.Transaction transaction, int numThreads) {
+    this(table, indexedCols, indices, transaction, numThreads, DEFAULT_RUN_SIZE);
+  }
+
+  /**
+   * @param table the table to load, which must be empty
+   * @param indexedCols the column of each index in indices
+   * @param indices the indices of the table to build, which must be empty
+   * @param transaction the transaction to keep sorted runs of index entries in
+   * @param numThreads the number of threads to parse with
+   * @param runSize the number of index entries to sort on the heap before writing them out
+   */
+  CsvLoader(Table table, List<Integer> indexedCols, List<BPlusTree> indices,
+            Database.Transaction transaction, int numThreads, int runSize) {
+    if (runSize < 1) {
+      throw new IllegalArgumentException("runSize must be positive");
+    }
+    this.table = table;
+    this.types = table.getSchema().getFieldTypes();
+    this.indexedCols = indexedCols;
+    this.indices = indices;
+    this.transaction = transaction;
+    this.numThreads = numThreads;
+    this.runSize = runSize;
+  }
+
+  /**
+   * Loads every line of in, skipping the first if hasHeader is set.
+   *
+   * @return the number of rows loaded
+   * @throws DatabaseException if a line cannot be parsed as a row of the table, or if a key of
+   * an index is duplicated
+   */
+  long load(BufferedReader in, boolean hasHeader) throws DatabaseException {
+    List<IndexEntries> entries = new ArrayList<IndexEntries>();
+    for (int i = 0; i < this.indices.size(); i++) {
+      entries.add(new IndexEntries(this.types.get(this.indexedCols.get(i))));
+    }
+
+    ExecutorService parsers = Executors.newFixedThreadPool(this.numThreads, r -> {
+      Thread t = new Thread(r, "CsvLoader parser");
+      t.setDaemon(true);
+      return t;
+    });
+    try {
+      long numRows = 0;
+      long lineNum = 0;
+      if (hasHeader && in.readLine() != null) {
+        lineNum++;
+      }
+
+      Deque<Future<List<List<DataBox>>>> inFlight = new ArrayDeque<Future<List<List<DataBox>>>>();
+      boolean eof = false;
+      while (!eof || !inFlight.isEmpty()) {
+        // Keep every parser busy, with one more batch queued behind each.
+        while (!eof && inFlight.size() < 2 * this.numThreads) {
+          List<String> lines = new ArrayList<String>(BATCH_SIZE);
+          String line;
+          while (lines.size() < BATCH_SIZE && (line = in.readLine()) != null) {
+            lines.add(line);
+          }
+          eof = lines.size() < BATCH_SIZE;
+          if (!lines.isEmpty()) {
+            long firstLineNum = lineNum + 1;
+            inFlight.addLast(parsers.submit(() -> parseLines(lines, firstLineNum)));
+            lineNum += lines.size();
+          }
+        }
+        if (inFlight.isEmpty()) {
+          break;
+        }
+
+        List<List<DataBox>> rows = get(inFlight.removeFirst());
+        List<RecordId> rids = this.table.addRecords(rows.iterator());
+        for (int i = 0; i < this.indices.size(); i++) {
+          int col = this.indexedCols.get(i);
+          for (int j = 0; j < rows.size(); j++) {
+            entries.get(i).add(rows.get(j).get(col), rids.get(j));
+          }
+        }
+        numRows += rows.size();
+      }
+
+      List<Future<Void>> builds = new ArrayList<Future<Void>>();
+      for (int i = 0; i < this.indices.size(); i++) {
+        BPlusTree index = this.indices.get(i);
+        IndexEntries indexEntries = entries.get(i);
+        // The transaction is not thread-safe, so the runs are opened here rather than by the
+        // builds.
+        List<Iterator<Pair<DataBox, RecordId>>> runs = indexEntries.openRuns();
+        builds.add(parsers.submit((Callable<Void>) () -> {
+          index.bulkLoad(indexEntries.merge(runs), 1.0f);
+          return null;
+        }));
+      }
+      for (Future<Void> build : builds) {
+        get(build);
+      }
+      return numRows;
+    } catch (IOException e) {
+      throw new DatabaseException(e);
+    } finally {
+      parsers.shutdownNow();
+    }
+  }
+
+  /**
+   * The entries of one index: the run being gathered on the heap, and the names of the temporary
+   * tables of the runs written out before it.
+   */
+  private class IndexEntries {
+    private final Schema runSchema;
+    private final List<String> runTables;
+    private List<Pair<DataBox, RecordId>> run;
+
+    IndexEntries(Type keyType) {
+      this.runSchema = new Schema(Arrays.asList("key", "pageNum", "entryNum"),
+                                  Arrays.asList(keyType, Type.intType(), Type.intType()));
+      this.runTables = new ArrayList<String>();
+      this.run = new ArrayList<Pair<DataBox, RecordId>>();
+    }
+
+    void add(DataBox key, RecordId rid) throws DatabaseException {
+      this.run.add(new Pair<DataBox, RecordId>(key, rid));
+      if (this.run.size() >= runSize) {
+        writeRun();
+      }
+    }
+
+    /**
+     * Sorts the run on the heap and writes it out to a new temporary table, which keeps its
+     * records in the order they are added.
+     */
+    private void writeRun() throws DatabaseException {
+      this.run.sort(byKey);
+      List<List<DataBox>> rows = new ArrayList<List<DataBox>>(this.run.size());
+      for (Pair<DataBox, RecordId> entry : this.run) {
+        RecordId rid = entry.getSecond();
+        rows.add(Arrays.asList(entry.getFirst(), new IntDataBox(rid.getPageNum()),
+                               new IntDataBox(rid.getEntryNum())));
+      }
+      String tableName = transaction.createTempTable(this.runSchema);
+      transaction.addRecords(tableName, rows.iterator());
+      this.runTables.add(tableName);
+      this.run = new ArrayList<Pair<DataBox, RecordId>>();
+    }
+
+    /**
+     * @return an iterator over the entries of each run written out so far, in key order
+     */
+    List<Iterator<Pair<DataBox, RecordId>>> openRuns() throws DatabaseException {
+      List<Iterator<Pair<DataBox, RecordId>>> runs =
+        new ArrayList<Iterator<Pair<DataBox, RecordId>>>();
+      for (String tableName : this.runTables) {
+        // Each run is read once from start to end.
+        Iterator<Record> records = transaction.getRecordIterator(tableName,
+                                                                 AccessStrategy.BULK_READ);
+        runs.add(new Iterator<Pair<DataBox, RecordId>>() {
+          public boolean hasNext() {
+            return records.hasNext();
+          }
+
+          public Pair<DataBox, RecordId> next() {
+            List<DataBox> values = records.next().getValues();
+            RecordId rid = new RecordId(values.get(1).getInt(), (short) values.get(2).getInt());
+            return new Pair<DataBox, RecordId>(values.get(0), rid);
+          }
+        });
+      }
+      return runs;
+    }
+
+    /**
+     * Sorts the run on the heap and merges it with runs, which openRuns returned.
+     *
+     * @return an iterator over every entry of the index, in key order
+     */
+    Iterator<Pair<DataBox, RecordId>> merge(List<Iterator<Pair<DataBox, RecordId>>> runs) {
+      this.run.sort(byKey);
+      if (runs.isEmpty()) {
+        return this.run.iterator();
+      }
+      List<Iterator<Pair<DataBox, RecordId>>> all =
+        new ArrayList<Iterator<Pair<DataBox, RecordId>>>(runs);
+      all.add(this.run.iterator());
+      return new MergeIterator(all);
+    }
+  }
+
+  /**
+   * Merges iterators that each return entries in key order into one that does.
+   */
+  private static class MergeIterator implements Iterator<Pair<DataBox, RecordId>> {
+    private final List<Iterator<Pair<DataBox, RecordId>>> runs;
+    // The next entry of each run that has one, with the index of the run.
+    private final PriorityQueue<Pair<Pair<DataBox, RecordId>, Integer>> heads;
+
+    MergeIterator(List<Iterator<Pair<DataBox, RecordId>>> runs) {
+      this.runs = runs;
+      this.heads = new PriorityQueue<Pair<Pair<DataBox, RecordId>, Integer>>(
+        runs.size(), (a, b) -> byKey.compare(a.getFirst(), b.getFirst()));
+      for (int i = 0; i < runs.size(); i++) {
+        advance(i);
+      }
+    }
+
+    private void advance(int i) {
+      Iterator<Pair<DataBox, RecordId>> run = this.runs.get(i);
+      if (run.hasNext()) {
+        this.heads.add(new Pair<Pair<DataBox, RecordId>, Integer>(run.next(), i));
+      }
+    }
+
+    public boolean hasNext() {
+      return !this.heads.isEmpty();
+    }
+
+    public Pair<DataBox, RecordId> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Pair<Pair<DataBox, RecordId>, Integer> head = this.heads.poll();
+      advance(head.getSecond());
+      return head.getFirst();
+    }
+  }
+
+  private List<List<DataBox>> parseLines(List<String> lines, long firstLineNum)
+      throws DatabaseException {
+    List<List<DataBox>> rows = new ArrayList<List<DataBox>>(lines.size());
+    for (int i = 0; i < lines.size(); i++) {
+      try {
+        rows.add(parseRow(lines.get(i)));
+      } catch (DatabaseException | DataBoxException | NumberFormatException e) {
+        String msg = String.format("Line %d: %s", firstLineNum + i, e.getMessage());
+        throw new DatabaseException(msg);
+      }
+    }
+    return rows;
+  }
+
+  private List<DataBox> parseRow(String line) throws DatabaseException {
+    List<String> fields = splitFields(line);
+    if (fields.size() != this.types.size()) {
+      String msg = String.format("Expected %d fields but found %d.", this.types.size(),
+                                 fields.size());
+      throw new DatabaseException(msg);
+    }
+
+    List<DataBox> values = new ArrayList<DataBox>(fields.size());
+    for (int i = 0; i < fields.size(); i++) {
+      String field = fields.get(i);
+      Type type = this.types.get(i);
+      switch (type.getTypeId()) {
+        case BOOL:
+          if (field.trim().equalsIgnoreCase("true")) {
+            values.add(new BoolDataBox(true));
+          } else if (field.trim().equalsIgnoreCase("false")) {
+            values.add(new BoolDataBox(false));
+          } else {
+            throw new DatabaseException("'" + field + "' is not a boolean.");
+          }
+          break;
+        case INT:
+          values.add(new IntDataBox(Integer.parseInt(field.trim())));
+          break;
+        case FLOAT:
+          values.add(new FloatDataBox(Float.parseFloat(field.trim())));
+          break;
+        case STRING:
+          values.add(new StringDataBox(field, type.getSizeInBytes()));
+          break;
+        default:
+          throw new DatabaseException("Unknown type " + type);
+      }
+    }
+    return values;
+  }
+
+  private static List<String> splitFields(String line) throws DatabaseException {
+    List<String> fields = new ArrayList<String>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c != '"') {
+          field.append(c);
+        } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        } else {
+          quoted = false;
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    if (quoted) {
+      throw new DatabaseException("Unterminated quoted field.");
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+
+  private static <T> T get(Future<T> future) throws DatabaseException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DatabaseException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof DatabaseException) {
+        throw (DatabaseException) cause;
+      }
+      if (cause instanceof BPlusTreeException) {
+        throw new DatabaseException(cause.getMessage());
+      }
+      throw new DatabaseException(e);
+    }
+  }
+}
@@ -1,6 +1,11 @@
 package edu.berkeley.cs186.database;
 
+import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -14,25 +19,39 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.LinkedList;
 
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
+import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.index.BPlusTree;
 import edu.berkeley.cs186.database.index.BPlusTreeException;
+import edu.berkeley.cs186.database.io.AccessStrategy;
+import edu.berkeley.cs186.database.io.AllocatorClass;
+import edu.berkeley.cs186.database.io.EvictionPolicy;
+import edu.berkeley.cs186.database.io.IOMode;
 import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
 import edu.berkeley.cs186.database.table.RecordIterator;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.table.TableFormat;
 
 
 
 public class Database {
+  // The number of rows Transaction#addRecords adds to a table before updating its indices.
+  private static final int ADD_RECORDS_BATCH_SIZE = 1024;
+
   private Map<String, Table> tableLookup;
   private Map<String, BPlusTree> indexLookup;
   private long numTransactions;
   private String fileDir;
   private int numMemoryPages;
+  private EvictionPolicy evictionPolicy;
+  private long groupCommitMillis;
+  private long backgroundWriteMillis;
+  private boolean warmRestart;
 
   /**
    * Creates a new database.
@@ -54,7 +73,23 @@ public class Database {
    * @throws DatabaseException
    */
   public Database(String fileDir, int numMemoryPages) throws DatabaseException {
+    this(fileDir, numMemoryPages, EvictionPolicy.CLOCK);
+  }
+
+  /**
+   * Creates a new database.
+   *
+   * @param fileDir the directory to put the table files in
+   * @param numMemoryPages the number of pages of memory Database Operations should use when executing Queries
+   * @param evictionPolicy the replacement policy used to cache the pages of every table and index
+   * @throws DatabaseException
+   */
+  public Database(String fileDir, int numMemoryPages, EvictionPolicy evictionPolicy) throws DatabaseException {
     this.numMemoryPages = numMemoryPages;
+    this.evictionPolicy = evictionPolicy;
+    this.groupCommitMillis = 0;
+    this.backgroundWriteMillis = 0;
+    this.warmRestart = false;
     this.fileDir = fileDir;
     numTransactions = 0;
     tableLookup = new ConcurrentHashMap<String, Table>();
@@ -73,12 +108,12 @@ public class Database {
       if (fName.endsWith(Table.FILENAME_EXTENSION)) {
         int lastIndex = fName.lastIndexOf(Table.FILENAME_EXTENSION);
         String tableName = fName.substring(0, lastIndex);
-        tableLookup.put(tableName, new Table(tableName, f.toPath().toString()));
+        tableLookup.put(tableName, new Table(tableName, f.toPath().toString(), evictionPolicy));
       } else if (fName.endsWith(BPlusTree.FILENAME_EXTENSION)) {
         int lastIndex = fName.lastIndexOf(BPlusTree.FILENAME_EXTENSION);
         String indexName = fName.substring(0, lastIndex);
-        Path path = Paths.get(f.toPath().toString(), indexName + BPlusTree.FILENAME_EXTENSION);
-        indexLookup.put(indexName, new BPlusTree(path.toString()));
+        Path path = Paths.get(fileDir, indexName + BPlusTree.FILENAME_EXTENSION);
+        indexLookup.put(indexName, new BPlusTree(path.toString(), evictionPolicy));
       }
     }
   }
@@ -92,12 +127,42 @@ public class Database {
    * @throws DatabaseException
    */
   public synchronized void createTable(Schema s, String tableName) throws DatabaseException {
+    createTable(s, tableName, Page.pageSize);
+  }
+
+  /**
+   * Create a new table in this database whose file uses pages of pageSize bytes.
+   *
+   * @param s the table schema
+   * @param tableName the name of the table
+   * @param pageSize the page size in bytes: a power of two from Page.pageSize to 64 KB
+   * @throws DatabaseException
+   */
+  public synchronized void createTable(Schema s, String tableName, int pageSize) throws DatabaseException {
+    createTable(s, tableName, pageSize, TableFormat.FIXED);
+  }
+
+  /**
+   * Create a new table in this database whose file uses pages of pageSize bytes laid out as
+   * format says. See TableFormat.
+   *
+   * @param s the table schema
+   * @param tableName the name of the table
+   * @param pageSize the page size in bytes: a power of two from Page.pageSize to 64 KB
+   * @param format the layout of the table's data pages
+   * @throws DatabaseException
+   */
+  public synchronized void createTable(Schema s, String tableName, int pageSize,
+                                       TableFormat format) throws DatabaseException {
     if (this.tableLookup.containsKey(tableName)) {
       throw new DatabaseException("Table name already exists");
     }
 
     Path path = Paths.get(fileDir, tableName + Table.FILENAME_EXTENSION);
-    this.tableLookup.put(tableName, new Table(tableName, s, path.toString()));
+    Table table = new Table(tableName, s, path.toString(), this.evictionPolicy,
+                            AllocatorClass.BASE_TABLE, pageSize, IOMode.MMAP_PER_PAGE, format);
+    configureAllocator(table.getAllocator());
+    this.tableLookup.put(tableName, table);
   }
 
   /**
@@ -109,6 +174,38 @@ public class Database {
    * @throws DatabaseException
    */
   public synchronized void createTableWithIndices(Schema s, String tableName, List<String> indexColumns) throws DatabaseException {
+    createTableWithIndices(s, tableName, indexColumns, Page.pageSize);
+  }
+
+  /**
+   * Create a new table in this database with an index on each of the given column names, where
+   * the files of the table and of its indices use pages of pageSize bytes.
+   * NOTE: YOU CAN NOT DELETE/UPDATE FROM THIS TABLE IF YOU CHOOSE TO BUILD INDICES!!
+   * @param s the table schema
+   * @param tableName the name of the table
+   * @param indexColumns the list of unique columnNames on the maintain an index on
+   * @param pageSize the page size in bytes: a power of two from Page.pageSize to 64 KB
+   * @throws DatabaseException
+   */
+  public synchronized void createTableWithIndices(Schema s, String tableName, List<String> indexColumns,
+                                                  int pageSize) throws DatabaseException {
+    createTableWithIndices(s, tableName, indexColumns, pageSize, TableFormat.FIXED);
+  }
+
+  /**
+   * Create a new table in this database with an index on each of the given column names, where
+   * the files of the table and of its indices use pages of pageSize bytes, and the table's data
+   * pages are laid out as format says.
+   * NOTE: YOU CAN NOT DELETE/UPDATE FROM THIS TABLE IF YOU CHOOSE TO BUILD INDICES!!
+   * @param s the table schema
+   * @param tableName the name of the table
+   * @param indexColumns the list of unique columnNames on the maintain an index on
+   * @param pageSize the page size in bytes: a power of two from Page.pageSize to 64 KB
+   * @param format the layout of the table's data pages
+   * @throws DatabaseException
+   */
+  public synchronized void createTableWithIndices(Schema s, String tableName, List<String> indexColumns,
+                                                  int pageSize, TableFormat format) throws DatabaseException {
     if (this.tableLookup.containsKey(tableName)) {
       throw new DatabaseException("Table name already exists");
     }
@@ -131,21 +228,89 @@ public class Database {
     }
 
     Path path = Paths.get(fileDir, tableName + Table.FILENAME_EXTENSION);
-    this.tableLookup.put(tableName, new Table(tableName, s, path.toString()));
+    Table table = new Table(tableName, s, path.toString(), this.evictionPolicy,
+                            AllocatorClass.BASE_TABLE, pageSize, IOMode.MMAP_PER_PAGE, format);
+    configureAllocator(table.getAllocator());
+    this.tableLookup.put(tableName, table);
     for (int i : schemaColIndex) {
       String colName = schemaColNames.get(i);
       Type colType = schemaColType.get(i);
       String indexName = tableName + "," + colName;
       Path p = Paths.get(this.fileDir, indexName + BPlusTree.FILENAME_EXTENSION);
       try {
-      this.indexLookup.put(indexName, new BPlusTree(p.toString(), colType,
-                           BPlusTree.maxOrder(Page.pageSize, colType)));
+      BPlusTree index = new BPlusTree(p.toString(), colType, BPlusTree.maxOrder(pageSize, colType),
+                                      this.evictionPolicy, pageSize);
+      configureAllocator(index.getAllocator());
+      this.indexLookup.put(indexName, index);
       } catch (BPlusTreeException e) {
         throw new DatabaseException(e.getMessage());
       }
     }
   }
 
+  /**
+   * Create a new table with an index on each of the given column names, like
+   * createTableWithIndices, and load it with the rows of a CSV file. Lines are parsed on one
+   * thread per processor, the rows are appended to the table a page at a time, and each index is
+   * built bottom-up from its sorted keys once the table is loaded. The keys are sorted in runs
+   * kept in temporary tables, so the heap only needs room for a run of keys per index; see
+   * CsvLoader for how, and for the accepted CSV syntax.
+   *
+   * Every field of a row must parse as the type of its column: true or false for booleans, and
+   * a string of allowed characters for strings, which are truncated or padded like any other.
+   * If a line does not parse or a key of an index is duplicated, the table and its indices are
+   * dropped and an exception is thrown.
+   *
+   * @param csvFile the path of the CSV file
+   * @param hasHeader whether the first line of the file is a header to skip
+   * @param s the table schema, whose columns are the fields of each line in order
+   * @param tableName the name of the table
+   * @param indexColumns the list of unique columnNames on the maintain an index on
+   * @return the number of rows loaded
+   * @throws DatabaseException
+   */
+  public synchronized long loadCsv(String csvFile, boolean hasHeader, Schema s, String tableName,
+                                   List<String> indexColumns) throws DatabaseException {
+    return loadCsv(csvFile, hasHeader, s, tableName, indexColumns, CsvLoader.DEFAULT_RUN_SIZE);
+  }
+
+  /**
+   * Like loadCsv above, sorting the keys of each index in runs of runSize keys. Package-private
+   * for testing.
+   */
+  synchronized long loadCsv(String csvFile, boolean hasHeader, Schema s, String tableName,
+                            List<String> indexColumns, int runSize) throws DatabaseException {
+    createTableWithIndices(s, tableName, indexColumns);
+    Table table = this.tableLookup.get(tableName);
+    List<Integer> indexedCols = new ArrayList<Integer>();
+    List<BPlusTree> indices = new ArrayList<BPlusTree>();
+    for (String col : indexColumns) {
+      indexedCols.add(s.getFieldNames().indexOf(col));
+      indices.add(this.indexLookup.get(tableName + "," + col));
+    }
+
+    // The transaction holds the sorted runs of index keys, and drops them when it ends.
+    Transaction transaction = beginTransaction();
+    CsvLoader loader = new CsvLoader(table, indexedCols, indices, transaction,
+                                     Runtime.getRuntime().availableProcessors(), runSize);
+    try (BufferedReader in = Files.newBufferedReader(Paths.get(csvFile), StandardCharsets.UTF_8)) {
+      return loader.load(in, hasHeader);
+    } catch (DatabaseException | IOException | RuntimeException e) {
+      for (String col : indexColumns) {
+        String indexName = tableName + "," + col;
+        this.indexLookup.remove(indexName).close();
+        Paths.get(this.fileDir, indexName + BPlusTree.FILENAME_EXTENSION).toFile().delete();
+      }
+      deleteTable(tableName);
+      if (e instanceof DatabaseException) {
+        throw (DatabaseException) e;
+      }
+      throw new DatabaseException(e);
+    } finally {
+      transaction.end();
+    }
+  }
+
   /**
    * Delete a table in this database.
    *
@@ -157,11 +322,12 @@ public class Database {
       return false;
     }
 
+    // A table that is going away has no use for a hot page manifest.
+    this.tableLookup.get(tableName).getAllocator().setWarmRestart(false);
     this.tableLookup.get(tableName).close();
     this.tableLookup.remove(tableName);
 
-    File f = new File(fileDir + tableName + Table.FILENAME_EXTENSION);
-    f.delete();
+    Paths.get(this.fileDir, tableName + Table.FILENAME_EXTENSION).toFile().delete();
 
     return true;
   }
@@ -177,6 +343,78 @@ public class Database {
     }
   }
 
+  /**
+   * Enables group commit of allocation metadata for every table and index in this database,
+   * including those created later. See PageAllocator#setGroupCommitInterval. Metadata is also
+   * synced whenever a transaction ends.
+   *
+   * @param intervalMillis the group commit interval in milliseconds, or 0 to disable it
+   */
+  public synchronized void setGroupCommitInterval(long intervalMillis) {
+    this.groupCommitMillis = intervalMillis;
+    for (Table t : this.tableLookup.values()) {
+      t.getAllocator().setGroupCommitInterval(intervalMillis);
+    }
+    for (BPlusTree index : this.indexLookup.values()) {
+      index.getAllocator().setGroupCommitInterval(intervalMillis);
+    }
+  }
+
+  /**
+   * Enables the background writer for every table and index in this database, including those
+   * created later. See PageAllocator#setBackgroundWriteInterval.
+   *
+   * @param intervalMillis the background write interval in milliseconds, or 0 to disable it
+   */
+  public synchronized void setBackgroundWriteInterval(long intervalMillis) {
+    this.backgroundWriteMillis = intervalMillis;
+    for (Table t : this.tableLookup.values()) {
+      t.getAllocator().setBackgroundWriteInterval(intervalMillis);
+    }
+    for (BPlusTree index : this.indexLookup.values()) {
+      index.getAllocator().setBackgroundWriteInterval(intervalMillis);
+    }
+  }
+
+  /**
+   * Enables warm restart for every table and index in this database, including those created
+   * later: closing the database records which of their pages are cached, and reopening it
+   * preloads those pages in the background. See PageAllocator#setWarmRestart.
+   *
+   * @param warmRestart whether closing the database should record its cached pages
+   */
+  public synchronized void setWarmRestart(boolean warmRestart) {
+    this.warmRestart = warmRestart;
+    for (Table t : this.tableLookup.values()) {
+      t.getAllocator().setWarmRestart(warmRestart);
+    }
+    for (BPlusTree index : this.indexLookup.values()) {
+      index.getAllocator().setWarmRestart(warmRestart);
+    }
+  }
+
+  /**
+   * Forces the allocation metadata of every table and index in this database to disk.
+   */
+  public void sync() {
+    for (Table t : this.tableLookup.values()) {
+      t.getAllocator().sync();
+    }
+    for (BPlusTree index : this.indexLookup.values()) {
+      index.getAllocator().sync();
+    }
+  }
+
+  private void configureAllocator(PageAllocator allocator) {
+    if (this.groupCommitMillis > 0) {
+      allocator.setGroupCommitInterval(this.groupCommitMillis);
+    }
+    if (this.backgroundWriteMillis > 0) {
+      allocator.setBackgroundWriteInterval(this.backgroundWriteMillis);
+    }
+    allocator.setWarmRestart(this.warmRestart);
+  }
+
   /**
    * Close this database.
    */
@@ -184,8 +422,12 @@ public class Database {
     for (Table t : this.tableLookup.values()) {
       t.close();
     }
+    for (BPlusTree index : this.indexLookup.values()) {
+      index.close();
+    }
 
     this.tableLookup.clear();
+    this.indexLookup.clear();
   }
 
   public Table getTable(String tableName) {
@@ -221,6 +463,10 @@ public class Database {
     HashMap<String, Table> tempTables;
     HashMap<String, String> aliasMaps;
     long tempTableCounter;
+    // The BULK_READ scans handed out by getRecordIterator and getPageIterator,
+    // which are closed when the transaction ends in case they were abandoned
+    // early.
+    List<Closeable> bulkScans;
 
     private Transaction(long tNum) {
       this.transNum = tNum;
@@ -228,6 +474,7 @@ public class Database {
       this.tempTables = new HashMap<String, Table>();
       this.aliasMaps = new HashMap<String, String>();
       this.tempTableCounter = 0;
+      this.bulkScans = new ArrayList<Closeable>();
     }
 
     public boolean isActive() {
@@ -237,9 +484,10 @@ public class Database {
     public void end(){
       assert(this.active);
 
+      closeBulkScans();
       deleteAllTempTables();
       this.active = false;
-
+      Database.this.sync();
     }
 
     /**
@@ -289,7 +537,10 @@ public class Database {
       }
 
       Path path = Paths.get(Database.this.fileDir, "temp", tempTableName + Table.FILENAME_EXTENSION);
-      this.tempTables.put(tempTableName, new Table(tempTableName, schema, path.toString()));
+      this.tempTables.put(tempTableName, new Table(tempTableName, schema, path.toString(),
+                                                   Database.this.evictionPolicy,
+                                                   AllocatorClass.TEMP, Page.pageSize,
+                                                   IOMode.MEMORY));
       return tempTableName;
     }
 
@@ -316,7 +567,10 @@ public class Database {
       }
 
       Path path = Paths.get(Database.this.fileDir, "temp", tempTableName + Table.FILENAME_EXTENSION);
-      this.tempTables.put(tempTableName, new Table(tempTableName, schema, path.toString()));
+      this.tempTables.put(tempTableName, new Table(tempTableName, schema, path.toString(),
+                                                   Database.this.evictionPolicy,
+                                                   AllocatorClass.TEMP, Page.pageSize,
+                                                   IOMode.MEMORY));
     }
 
 
@@ -388,6 +642,93 @@ public class Database {
     }
 
 
+    /**
+     * Adds every row of values to a table, and the new records to the table's indices. Rows are
+     * handed to Table#addRecords a batch at a time. The keys of each batch are then added to each
+     * index with BPlusTree#putAll, which writes every index node they land in once.
+     *
+     * Each batch is checked before any of it is written, so that the table never holds a row its
+     * indices lack: if a row does not match the table's schema, or would give an index a key it
+     * already has or that another row of the batch has, nothing of that batch or after is added.
+     * Earlier batches stay added.
+     *
+     * @return the record ids of the new records, in order
+     * @throws DatabaseException if a row does not match the table's schema or repeats a key of an
+     * index
+     */
+    public List<RecordId> addRecords(String tableName, Iterator<List<DataBox>> values) throws DatabaseException {
+      assert(this.active);
+      Table tab = getTable(tableName);
+      Schema s = tab.getSchema();
+
+      List<String> colNames = s.getFieldNames();
+      List<Integer> indexedCols = new ArrayList<Integer>();
+      List<BPlusTree> indices = new ArrayList<BPlusTree>();
+      for (int i = 0; i < colNames.size(); i++) {
+        if (indexExists(tableName, colNames.get(i))) {
+          indexedCols.add(i);
+          indices.add(resolveIndexFromName(tableName, colNames.get(i)));
+        }
+      }
+
+      List<RecordId> rids = new ArrayList<RecordId>();
+      List<List<DataBox>> batch = new ArrayList<List<DataBox>>(ADD_RECORDS_BATCH_SIZE);
+      while (values.hasNext()) {
+        batch.clear();
+        while (values.hasNext() && batch.size() < ADD_RECORDS_BATCH_SIZE) {
+          List<DataBox> row = values.next();
+          // Check the whole batch up front, so that the table never holds rows its indices lack.
+          s.verify(row);
+          batch.add(row);
+        }
+        for (int j = 0; j < indices.size(); j++) {
+          checkNewKeys(indices.get(j), colNames.get(indexedCols.get(j)), indexedCols.get(j), batch);
+        }
+        List<RecordId> batchRids = tab.addRecords(batch.iterator());
+        rids.addAll(batchRids);
+
+        for (int j = 0; j < indices.size(); j++) {
+          int col = indexedCols.get(j);
+          List<Pair<DataBox, RecordId>> entries = new ArrayList<Pair<DataBox, RecordId>>(batch.size());
+          for (int k = 0; k < batch.size(); k++) {
+            entries.add(new Pair<DataBox, RecordId>(batch.get(k).get(col), batchRids.get(k)));
+          }
+          try {
+            indices.get(j).putAll(entries);
+          } catch (BPlusTreeException e) {
+            throw new DatabaseException(e.getMessage());
+          }
+        }
+      }
+      return rids;
+    }
+
+    /**
+     * Checks that the keys the rows of batch have in column col are neither in index nor repeated
+     * within batch.
+     *
+     * @throws DatabaseException naming the first repeated key
+     */
+    private void checkNewKeys(BPlusTree index, String colName, int col, List<List<DataBox>> batch)
+        throws DatabaseException {
+      Set<DataBox> keys = new HashSet<DataBox>();
+      for (List<DataBox> row : batch) {
+        DataBox key = row.get(col);
+        if (!keys.add(key) || index.get(key).isPresent()) {
+          throw new DatabaseException("duplicate key " + key + " in index on column " + colName);
+        }
+      }
+    }
+
+    /**
+     * Adds numPages empty data pages to a table as runs of consecutive pages. See
+     * Table#addDataPages.
+     */
+    public void addDataPages(String tableName, int numPages) throws DatabaseException {
+      assert(this.active);
+      getTable(tableName).addDataPages(numPages);
+    }
+
     public int getNumMemoryPages() throws DatabaseException {
       assert(this.active);
 
@@ -429,11 +770,37 @@ public class Database {
       return getTable(tableName).iterator();
     }
 
+    /**
+     * Returns an iterator over the records of a table whose pages are brought in as strategy
+     * says. See AccessStrategy.
+     */
+    public RecordIterator getRecordIterator(String tableName, AccessStrategy strategy) throws DatabaseException {
+      assert(this.active);
+      RecordIterator iter = getTable(tableName).iterator(strategy);
+      if (strategy == AccessStrategy.BULK_READ) {
+        this.bulkScans.add(iter);
+      }
+      return iter;
+    }
+
     public BacktrackingIterator<Page> getPageIterator(String tableName) throws DatabaseException {
       assert(this.active);
       return getTable(tableName).getAllocator().iterator();
     }
 
+    /**
+     * Returns an iterator over the pages of a table which brings them in as strategy says. See
+     * AccessStrategy.
+     */
+    public BacktrackingIterator<Page> getPageIterator(String tableName, AccessStrategy strategy) throws DatabaseException {
+      assert(this.active);
+      PageAllocator.PageIterator iter = getTable(tableName).getAllocator().iterator(strategy);
+      if (strategy == AccessStrategy.BULK_READ) {
+        this.bulkScans.add(iter);
+      }
+      return iter;
+    }
+
     public BacktrackingIterator<Record> getBlockIterator(String tableName, Page[] block) throws DatabaseException {
       assert(this.active);
       return getTable(tableName).blockIterator(block);
@@ -607,8 +974,19 @@ public class Database {
       this.tempTables.get(tempTableName).close();
       Database.this.tableLookup.remove(tempTableName);
 
-      File f = new File(Database.this.fileDir + "temp/" + tempTableName + Table.FILENAME_EXTENSION);
-      f.delete();
+      Paths.get(Database.this.fileDir, "temp", tempTableName + Table.FILENAME_EXTENSION).toFile()
+        .delete();
+    }
+
+    private void closeBulkScans() {
+      for (Closeable scan : this.bulkScans) {
+        try {
+          scan.close();
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+      this.bulkScans.clear();
     }
 
     private void deleteAllTempTables() {
@@ -640,6 +1018,9 @@ public class Database {
         public static final int DELETE = 1;
         public static final int UPDATE = 2;
         public static final int UPDATE_WHERE = 3;
+        public static final int ADD_ALL = 4;
+
+        public List<List<DataBox>> rows;
     }
 
 
@@ -665,6 +1046,7 @@ public class Database {
                 case Operation.DELETE: newRecords.add(super.runDeleteRecord(op.tableName, op.rid)); break;
                 case Operation.UPDATE: newRecords.add(super.runUpdateRecord(op.tableName, op.values, op.rid)); break;
                 case Operation.UPDATE_WHERE: newRecords.add(super.runUpdateRecordWhere(op.tableName, op.targetColumnName, op.targetVaue, op.predColumnName, op.predValue)); break;
+                case Operation.ADD_ALL: newRecords.addAll(super.addRecords(op.tableName, op.rows.iterator())); break;
                 default: continue;
               }
           }
@@ -675,8 +1057,10 @@ public class Database {
 
       }
 
+      super.closeBulkScans();
       super.deleteAllTempTables();
       this.active = false;
+      Database.this.sync();
     }
 
     //stores the operation for execution in the future
@@ -690,6 +1074,21 @@ public class Database {
     }
 
 
+    //stores the operation for execution in the future. The rows are copied out of values now,
+    //since the iterator may not outlive the call.
+    public List<RecordId> addRecords(String tableName, Iterator<List<DataBox>> values)  throws DatabaseException {
+        Operation op = new Operation();
+        op.tableName = tableName;
+        op.rows = new ArrayList<List<DataBox>>();
+        while (values.hasNext()) {
+          op.rows.add(values.next());
+        }
+        op.type = Operation.ADD_ALL;
+        this.operationList.add(op);
+        return null;
+    }
+
+
     //stores the operation for execution in the future
     public RecordId deleteRecord(String tableName, RecordId rid)  throws DatabaseException {
         Operation op = new Operation();
@@ -28,9 +28,11 @@ public class Bits {
    *   - getBit(new byte[]{0b00000000, 0b00000001}, 15) == ONE
    */
   public static Bit getBit(byte[] bytes, int i) {
-    String err = String.format("bytes.length = %d; i = %d.", bytes.length, i);
-    assert (bytes.length > 0) : err;
-    assert (0 <= i && i < bytes.length * 8) : err;
+    // The message is only built if an assertion fails, since this is called
+    // once per bit.
+    assert (bytes.length > 0) : String.format("bytes.length = %d; i = %d.", bytes.length, i);
+    assert (0 <= i && i < bytes.length * 8)
+      : String.format("bytes.length = %d; i = %d.", bytes.length, i);
     return getBit(bytes[i/8], i % 8);
   }
 
@@ -84,4 +86,120 @@ public class Bits {
     b = setBit(b, i % 8, bit);
     buf.put(buf.position() + (i / 8), b);
   }
+
+  // Word-at-a-time operations /////////////////////////////////////////////////
+  // The methods below treat numBits bits starting at byte offset of a buffer
+  // as a bitmap, numbered as above: bit 0 is the most significant bit of the
+  // first byte. Since that is also the order of the bits of a big-endian long,
+  // they read the bitmap 64 bits at a time and find bits with
+  // Long.numberOfLeadingZeros. Buffers must be big-endian, as ByteBuffers are
+  // unless told otherwise. Absolute gets are used throughout, so the position
+  // of the buffer is neither used nor changed.
+
+  /**
+   * Counts the set bits of the bitmap of numBits bits at offset in buf.
+   */
+  public static int countSetBits(ByteBuffer buf, int offset, int numBits) {
+    int count = 0;
+    int numWords = (numBits + 63) / 64;
+    for (int w = 0; w < numWords; w++) {
+      count += Long.bitCount(word(buf, offset, numBits, w));
+    }
+    return count;
+  }
+
+  /**
+   * Counts the set bits of bytes.
+   */
+  public static int countSetBits(byte[] bytes) {
+    return countSetBits(ByteBuffer.wrap(bytes), 0, bytes.length * 8);
+  }
+
+  /**
+   * Finds the first set bit at or after bit from of the bitmap of numBits bits
+   * at offset in buf. For example:
+   *
+   *   - nextSetBit(ByteBuffer.wrap(new byte[]{0b00100000}), 0, 8, 0) == 2
+   *   - nextSetBit(ByteBuffer.wrap(new byte[]{0b00100000}), 0, 8, 3) == -1
+   *
+   * @return the index of the bit, or -1 if there is none
+   */
+  public static int nextSetBit(ByteBuffer buf, int offset, int numBits, int from) {
+    return nextBit(buf, offset, numBits, from, false);
+  }
+
+  /**
+   * Finds the first set bit of bytes at or after bit from.
+   *
+   * @return the index of the bit, or -1 if there is none
+   */
+  public static int nextSetBit(byte[] bytes, int from) {
+    return nextSetBit(ByteBuffer.wrap(bytes), 0, bytes.length * 8, from);
+  }
+
+  /**
+   * Finds the first clear bit at or after bit from of the bitmap of numBits
+   * bits at offset in buf.
+   *
+   * @return the index of the bit, or -1 if there is none
+   */
+  public static int nextClearBit(ByteBuffer buf, int offset, int numBits, int from) {
+    return nextBit(buf, offset, numBits, from, true);
+  }
+
+  /**
+   * Finds the first clear bit of bytes at or after bit from.
+   *
+   * @return the index of the bit, or -1 if there is none
+   */
+  public static int nextClearBit(byte[] bytes, int from) {
+    return nextClearBit(ByteBuffer.wrap(bytes), 0, bytes.length * 8, from);
+  }
+
+  private static int nextBit(ByteBuffer buf, int offset, int numBits, int from, boolean clear) {
+    if (from < 0) {
+      from = 0;
+    }
+    if (from >= numBits) {
+      return -1;
+    }
+    int w = from / 64;
+    // Inverting a word turns clear bits into set ones; the bits past numBits
+    // become set too, which the bound check below takes care of.
+    long bits = (clear ? ~word(buf, offset, numBits, w) : word(buf, offset, numBits, w))
+                & (-1L >>> (from % 64));
+    while (bits == 0) {
+      w++;
+      if ((long) w * 64 >= numBits) {
+        return -1;
+      }
+      bits = clear ? ~word(buf, offset, numBits, w) : word(buf, offset, numBits, w);
+    }
+    int i = w * 64 + Long.numberOfLeadingZeros(bits);
+    return i < numBits ? i : -1;
+  }
+
+  /**
+   * Returns bits [64 * w, 64 * w + 64) of the bitmap of numBits bits at offset
+   * in buf as a long, most significant bit first, with the bits past numBits
+   * cleared.
+   */
+  private static long word(ByteBuffer buf, int offset, int numBits, int w) {
+    int start = w * 8;
+    int numBytes = (numBits + 7) / 8;
+    long bits;
+    if (start + 8 <= numBytes) {
+      bits = buf.getLong(offset + start);
+    } else {
+      bits = 0;
+      for (int i = 0; i < 8; i++) {
+        bits <<= 8;
+        if (start + i < numBytes) {
+          bits |= buf.get(offset + start + i) & 0xFF;
+        }
+      }
+    }
+    int end = numBits - w * 64;
+    return end >= 64 ? bits : bits & ~(-1L >>> end);
+  }
 }
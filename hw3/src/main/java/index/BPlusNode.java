@@ -136,6 +136,29 @@ abstract class BPlusNode {
   public abstract Optional<Pair<DataBox, Integer>> put(DataBox key, RecordId rid)
     throws BPlusTreeException;
 
+  /**
+   * n.checkAbsent(entries) raises an exception naming the first key of
+   * entries that is already in the subtree rooted by n. entries must be
+   * sorted by key. Every node the keys lead to is read once, and none is
+   * changed.
+   */
+  abstract void checkAbsent(List<Pair<DataBox, RecordId>> entries)
+    throws BPlusTreeException;
+
+  /**
+   * n.putAll(entries) inserts every (key, rid) pair of entries into the
+   * subtree rooted by n. entries must be sorted by key, and none of its keys
+   * may be in the subtree already (see checkAbsent). Every node the keys lead
+   * to is written once, however many of them land in it.
+   *
+   * Where put splits an overflowing node in two, putAll splits an overflowing
+   * node into as few nodes as can hold its entries, spreading the entries
+   * evenly and keeping n as the leftmost. One entry more than fits splits
+   * exactly like put. The split keys and page numbers of the new nodes are
+   * returned in order, and are empty if n did not overflow.
+   */
+  abstract List<Pair<DataBox, Integer>> putAll(List<Pair<DataBox, RecordId>> entries);
+
   /**
    * n.remove(k) removes the key k and its corresponding record id from the
    * subtree rooted by n, or does nothing if the key k is not in the subtree.
@@ -230,7 +253,7 @@ abstract class BPlusNode {
    */
   public static BPlusNode fromBytes(BPlusTreeMetadata metadata, int pageNum) {
     Page p = metadata.getAllocator().fetchPage(pageNum);
-    ByteBuffer buf = p.getByteBuffer();
+    ByteBuffer buf = p.getReadOnlyByteBuffer();
     byte b = buf.get();
     if (b == 1) {
       return LeafNode.fromBytes(metadata, pageNum);
@@ -10,6 +10,9 @@ import java.util.Optional;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.AllocatorClass;
+import edu.berkeley.cs186.database.io.EvictionPolicy;
+import edu.berkeley.cs186.database.io.IOMode;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator;
 import edu.berkeley.cs186.database.table.RecordId;
@@ -54,7 +57,6 @@ public class BPlusTree {
     public static final String FILENAME_EXTENSION = ".index";
 
     private BPlusTreeMetadata metadata;
-    private Page headerPage;
     private BPlusNode root;
 
     // Constructors ////////////////////////////////////////////////////////////
@@ -82,6 +84,25 @@ public class BPlusTree {
      */
     public BPlusTree(String filename, Type keySchema, int order)
         throws BPlusTreeException {
+      this(filename, keySchema, order, EvictionPolicy.CLOCK);
+    }
+
+    /**
+     * Construct a new B+ tree like above, whose pages are cached under the
+     * eviction policy `policy`.
+     */
+    public BPlusTree(String filename, Type keySchema, int order, EvictionPolicy policy)
+        throws BPlusTreeException {
+      this(filename, keySchema, order, policy, Page.pageSize);
+    }
+
+    /**
+     * Construct a new B+ tree like above, whose nodes are serialized into
+     * pages of `pageSize` bytes. The order may be at most
+     * BPlusTree.maxOrder(pageSize, keySchema).
+     */
+    public BPlusTree(String filename, Type keySchema, int order, EvictionPolicy policy,
+                     int pageSize) throws BPlusTreeException {
       // Sanity checks.
       if (order < 0) {
         String msg = String.format(
@@ -90,7 +111,7 @@ public class BPlusTree {
         throw new BPlusTreeException(msg);
       }
 
-      int maxOrder = BPlusTree.maxOrder(Page.pageSize, keySchema);
+      int maxOrder = BPlusTree.maxOrder(pageSize, keySchema);
       if (order > maxOrder) {
         String msg = String.format(
             "You cannot construct a B+ tree with order %d greater than the " +
@@ -100,13 +121,16 @@ public class BPlusTree {
       }
 
       // Initialize the page allocator.
-      PageAllocator allocator = new PageAllocator(filename, true /* wipe */);
+      PageAllocator allocator = new PageAllocator(filename, true /* wipe */,
+                                                  true /* durable */, policy,
+                                                  IOMode.MMAP_PER_PAGE,
+                                                  AllocatorClass.INDEX, pageSize);
+      allocator.registerMetrics("BPlusTree", filename);
       this.metadata = new BPlusTreeMetadata(allocator, keySchema, order);
 
       // Allocate the header page.
       int headerPageNum = allocator.allocPage();
       assert(headerPageNum == 0);
-      this.headerPage = allocator.fetchPage(headerPageNum);
 
       // Construct the root.
       List<DataBox> keys = new ArrayList<>();
@@ -115,15 +139,27 @@ public class BPlusTree {
       this.root = new LeafNode(this.metadata, keys, rids, rightSibling);
 
       // Initialize the header page.
-      writeHeader(headerPage.getByteBuffer());
+      writeHeader();
     }
 
     /** Read a B+ tree that was previously serialized to filename. */
     public BPlusTree(String filename) {
+      this(filename, EvictionPolicy.CLOCK);
+    }
+
+    /**
+     * Read a B+ tree that was previously serialized to filename, caching its
+     * pages under the eviction policy `policy`.
+     */
+    public BPlusTree(String filename, EvictionPolicy policy) {
       // Initialize the page allocator and fetch the header page.
-      PageAllocator allocator = new PageAllocator(filename, false /* wipe */);
+      PageAllocator allocator = new PageAllocator(filename, false /* wipe */,
+                                                  true /* durable */, policy,
+                                                  IOMode.MMAP_PER_PAGE,
+                                                  AllocatorClass.INDEX);
+      allocator.registerMetrics("BPlusTree", filename);
       Page headerPage = allocator.fetchPage(0);
-      ByteBuffer buf = headerPage.getByteBuffer();
+      ByteBuffer buf = headerPage.getReadOnlyByteBuffer();
 
       // Read the contents of the header page. See writeHeader for information
       // on exactly what is written to the header page.
@@ -133,7 +169,6 @@ public class BPlusTree {
 
       // Initialize members.
       this.metadata = new BPlusTreeMetadata(allocator, keySchema, order);
-      this.headerPage = allocator.fetchPage(0);
       this.root = BPlusNode.fromBytes( this.metadata, rootPageNum);
     }
 
@@ -287,7 +322,180 @@ public class BPlusTree {
 
       InnerNode inner = new InnerNode(metadata, keys, children);
       this.root = inner;
-      writeHeader(headerPage.getByteBuffer());
+      writeHeader();
+    }
+
+    /**
+     * Inserts every (key, rid) pair of entries into the B+ tree. The entries
+     * are sorted and handed down the tree together, so that every node they
+     * lead to is read and written once, however many of them land in it, and
+     * a node they overflow is split once, into as many nodes as it takes (see
+     * BPlusNode.putAll). An empty tree is bulk loaded instead.
+     *
+     *   BPlusTree tree = new BPlusTree("t.txt", Type.intType(), 2);
+     *   tree.put(new IntDataBox(0), new RecordId(0, (short) 0));
+     *   List<Pair<DataBox, RecordId>> entries = new ArrayList<>();
+     *   for (int i = 1; i < 10; ++i) {
+     *     entries.add(new Pair<>(new IntDataBox(i), new RecordId(i, (short) i)));
+     *   }
+     *   tree.putAll(entries); // leaves [0 1 2] [3 4 5] [6 7 8 9]
+     *
+     * All or nothing: if a key has the wrong type, is repeated in entries, or
+     * is already in the tree, an exception is raised before any entry is
+     * inserted.
+     */
+    public void putAll(List<Pair<DataBox, RecordId>> entries) throws BPlusTreeException {
+      for (Pair<DataBox, RecordId> entry : entries) {
+        typecheck(entry.getFirst());
+      }
+      List<Pair<DataBox, RecordId>> sorted = new ArrayList<>(entries);
+      sorted.sort((a, b) -> a.getFirst().compareTo(b.getFirst()));
+      for (int i = 1; i < sorted.size(); ++i) {
+        DataBox key = sorted.get(i).getFirst();
+        if (sorted.get(i - 1).getFirst().equals(key)) {
+          String msg = String.format("Duplicate key %s inserted.", key);
+          throw new BPlusTreeException(msg);
+        }
+      }
+      if (sorted.isEmpty()) {
+        return;
+      }
+      if (root instanceof LeafNode && ((LeafNode) root).getKeys().isEmpty()) {
+        bulkLoad(sorted.iterator(), 1.0f);
+        return;
+      }
+      root.checkAbsent(sorted);
+      List<Pair<DataBox, Integer>> splits = root.putAll(sorted);
+
+      // If our root split, then we build new roots above it, as put does,
+      // until one holds all the nodes of the level below it.
+      if (splits.isEmpty()) {
+        return;
+      }
+      while (!splits.isEmpty()) {
+        List<Integer> children = new ArrayList<>();
+        children.add(root.getPage().getPageNum());
+        InnerNode inner = new InnerNode(metadata, new ArrayList<>(), children);
+        splits = inner.appendChildren(splits);
+        this.root = inner;
+      }
+      writeHeader();
+    }
+
+    /**
+     * Builds the B+ tree bottom-up from `data`, which must yield (key, rid)
+     * pairs in strictly increasing key order. Leaves are written left to
+     * right, each filled to `fillFactor` of its capacity of 2d entries, and
+     * then each level of inner nodes is built from the first keys of the
+     * level below it, with children spread evenly across its nodes. Every page
+     * is written once, rather than once per put that touches it.
+     *
+     *   BPlusTree tree = new BPlusTree("t.txt", Type.intType(), 2);
+     *   List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+     *   for (int i = 0; i < 10; ++i) {
+     *     data.add(new Pair<>(new IntDataBox(i), new RecordId(i, (short) i)));
+     *   }
+     *   tree.bulkLoad(data.iterator(), 1.0f); // leaves [0 1 2 3] [4 5 6 7] [8 9]
+     *
+     * The tree must be empty. A fill factor below 1 leaves room in every leaf
+     * for later puts, which would otherwise split the leaf they land in. If
+     * the keys are out of order or a key has the wrong type, an exception is
+     * raised and the tree is left empty.
+     */
+    public void bulkLoad(Iterator<Pair<DataBox, RecordId>> data, float fillFactor)
+        throws BPlusTreeException {
+      if (fillFactor <= 0 || fillFactor > 1) {
+        String msg = String.format("Fill factor %f is not in (0, 1].", fillFactor);
+        throw new IllegalArgumentException(msg);
+      }
+      if (!(root instanceof LeafNode) || !((LeafNode) root).getKeys().isEmpty()) {
+        throw new BPlusTreeException("You can only bulk load an empty B+ tree.");
+      }
+      int order = metadata.getOrder();
+      if (order < 1) {
+        throw new BPlusTreeException("You cannot bulk load a B+ tree of order 0.");
+      }
+      int leafSize = Math.max(1, (int) Math.ceil(2 * order * fillFactor));
+      PageAllocator allocator = metadata.getAllocator();
+
+      // The leaves reuse the page of the empty root as their first page. The
+      // first key and page number of every leaf but the last are collected
+      // for the level above.
+      int firstPageNum = root.getPage().getPageNum();
+      List<DataBox> levelKeys = new ArrayList<>();
+      List<Integer> levelPageNums = new ArrayList<>();
+      int pageNum = firstPageNum;
+      List<DataBox> keys = new ArrayList<>();
+      List<RecordId> rids = new ArrayList<>();
+      DataBox prev = null;
+      try {
+        while (data.hasNext()) {
+          Pair<DataBox, RecordId> entry = data.next();
+          DataBox key = entry.getFirst();
+          typecheck(key);
+          if (prev != null && prev.compareTo(key) >= 0) {
+            String msg = String.format(
+                "Bulk loaded keys must be strictly increasing, but %s follows %s.",
+                key, prev);
+            throw new BPlusTreeException(msg);
+          }
+          if (keys.size() == leafSize) {
+            int nextPageNum = metadata.allocPage();
+            new LeafNode(metadata, pageNum, keys, rids, Optional.of(nextPageNum));
+            levelKeys.add(keys.get(0));
+            levelPageNums.add(pageNum);
+            pageNum = nextPageNum;
+            keys = new ArrayList<>();
+            rids = new ArrayList<>();
+          }
+          keys.add(key);
+          rids.add(entry.getSecond());
+          prev = key;
+        }
+      } catch (BPlusTreeException | RuntimeException e) {
+        // Empty the tree again, giving back every page but the root's.
+        for (int p : levelPageNums) {
+          if (p != firstPageNum) {
+            allocator.freePage(p);
+          }
+        }
+        if (pageNum != firstPageNum) {
+          allocator.freePage(pageNum);
+        }
+        this.root = new LeafNode(metadata, firstPageNum, new ArrayList<>(),
+                                 new ArrayList<>(), Optional.empty());
+        throw e;
+      }
+      LeafNode lastLeaf = new LeafNode(metadata, pageNum, keys, rids, Optional.empty());
+      if (levelPageNums.isEmpty()) {
+        this.root = lastLeaf;
+        return;
+      }
+      levelKeys.add(keys.get(0));
+      levelPageNums.add(pageNum);
+
+      // Build the inner levels until a level has a single node, the root.
+      BPlusNode node = lastLeaf;
+      while (levelPageNums.size() > 1) {
+        int numChildren = levelPageNums.size();
+        int numNodes = (numChildren + 2 * order) / (2 * order + 1);
+        List<DataBox> upperKeys = new ArrayList<>();
+        List<Integer> upperPageNums = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < numNodes; ++i) {
+          int end = start + (numChildren - start) / (numNodes - i);
+          List<DataBox> innerKeys = new ArrayList<>(levelKeys.subList(start + 1, end));
+          List<Integer> children = new ArrayList<>(levelPageNums.subList(start, end));
+          node = new InnerNode(metadata, innerKeys, children);
+          upperKeys.add(levelKeys.get(start));
+          upperPageNums.add(node.getPage().getPageNum());
+          start = end;
+        }
+        levelKeys = upperKeys;
+        levelPageNums = upperPageNums;
+      }
+      this.root = node;
+      writeHeader();
     }
 
     /**
@@ -348,16 +556,40 @@ public class BPlusTree {
       return Math.min(leafOrder, innerOrder);
     }
 
+    /** Returns the page allocator the tree is persisted with. */
+    public PageAllocator getAllocator() {
+      return metadata.getAllocator();
+    }
+
+    /**
+     * Closes the page allocator the tree is persisted with, after giving back
+     * the pages it allocated for nodes that were never created.
+     */
+    public void close() {
+      metadata.freeReservedPages();
+      metadata.getAllocator().close();
+    }
+
     /** Returns the number of pages used to serialize the tree. */
     public int getNumPages() {
-      return metadata.getAllocator().getNumPages();
+      return metadata.getAllocator().getNumPages() - metadata.getNumReservedPages();
     }
 
-    /** Serializes the header page to buf. */
-    private void writeHeader(ByteBuffer buf) {
-      buf.put(metadata.getKeySchema().toBytes());
-      buf.putInt(metadata.getOrder());
-      buf.putInt(root.getPage().getPageNum());
+    /**
+     * Serializes the header page. The page is pinned while we write through
+     * its buffer, which is only valid as long as the page stays resident.
+     */
+    private void writeHeader() {
+      PageAllocator allocator = metadata.getAllocator();
+      Page headerPage = allocator.pinPage(0);
+      try {
+        ByteBuffer buf = headerPage.getByteBuffer();
+        buf.put(metadata.getKeySchema().toBytes());
+        buf.putInt(metadata.getOrder());
+        buf.putInt(root.getPage().getPageNum());
+      } finally {
+        allocator.unpinPage(headerPage, true);
+      }
     }
 
     private void typecheck(DataBox key) {
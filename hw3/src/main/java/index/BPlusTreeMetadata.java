@@ -20,10 +20,23 @@ class BPlusTreeMetadata {
   // may contain fewer than d entries.
   private final int order;
 
+  // New nodes get their pages from extents of extentSize consecutive pages,
+  // so that the nodes a run of splits or a bulk load creates sit next to each
+  // other in the file, and the allocator records a whole extent at once.
+  // extent holds the pages of the current extent and nextInExtent the index
+  // of the first one no node has taken yet. The pages no node has taken are
+  // given back when the tree is closed; a tree that is never closed only
+  // wastes their space.
+  private static final int extentSize = 16;
+  private int[] extent;
+  private int nextInExtent;
+
   public BPlusTreeMetadata(PageAllocator allocator, Type keySchema, int order) {
     this.allocator = allocator;
     this.keySchema = keySchema;
     this.order = order;
+    this.extent = new int[0];
+    this.nextInExtent = 0;
   }
 
   public PageAllocator getAllocator() {
@@ -37,4 +50,28 @@ class BPlusTreeMetadata {
   public int getOrder() {
     return order;
   }
+
+  /** Returns the number of a new page for a node. */
+  int allocPage() {
+    if (nextInExtent == extent.length) {
+      extent = allocator.allocPages(extentSize);
+      nextInExtent = 0;
+    }
+    return extent[nextInExtent++];
+  }
+
+  /**
+   * Returns the number of pages that are allocated for nodes but that no node
+   * has taken yet.
+   */
+  int getNumReservedPages() {
+    return extent.length - nextInExtent;
+  }
+
+  /** Frees the pages that are allocated for nodes but that no node has taken. */
+  void freeReservedPages() {
+    for (; nextInExtent < extent.length; ++nextInExtent) {
+      allocator.freePage(extent[nextInExtent]);
+    }
+  }
 }
@@ -10,6 +10,7 @@ import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
 import edu.berkeley.cs186.database.table.RecordId;
 
 /**
@@ -42,11 +43,11 @@ class InnerNode extends BPlusNode {
   // Constructors //////////////////////////////////////////////////////////////
   /**
    * Construct a brand new inner node. The inner node will be persisted on a
-   * brand new page allocated by metadata.getAllocator().
+   * brand new page handed out by metadata.allocPage().
    */
   public InnerNode(BPlusTreeMetadata metadata, List<DataBox> keys,
                    List<Integer> children) {
-    this(metadata, metadata.getAllocator().allocPage(), keys, children);
+    this(metadata, metadata.allocPage(), keys, children);
   }
 
   /**
@@ -157,6 +158,108 @@ class InnerNode extends BPlusNode {
     return Optional.of(new Pair<>(middleKey, n.getPage().getPageNum()));
   }
 
+  // See BPlusNode.checkAbsent.
+  @Override
+  void checkAbsent(List<Pair<DataBox, RecordId>> entries) throws BPlusTreeException {
+    List<List<Pair<DataBox, RecordId>>> parts = partition(entries);
+    for (int i = 0; i < parts.size(); ++i) {
+      if (!parts.get(i).isEmpty()) {
+        getChild(i).checkAbsent(parts.get(i));
+      }
+    }
+  }
+
+  // See BPlusNode.putAll.
+  @Override
+  List<Pair<DataBox, Integer>> putAll(List<Pair<DataBox, RecordId>> entries) {
+    // Hand every child its share of the entries, and slot the nodes each
+    // child splits off in right after it.
+    List<List<Pair<DataBox, RecordId>>> parts = partition(entries);
+    List<DataBox> allKeys = new ArrayList<>();
+    List<Integer> allChildren = new ArrayList<>();
+    for (int i = 0; i < children.size(); ++i) {
+      if (i > 0) {
+        allKeys.add(keys.get(i - 1));
+      }
+      allChildren.add(children.get(i));
+      if (!parts.get(i).isEmpty()) {
+        for (Pair<DataBox, Integer> p : getChild(i).putAll(parts.get(i))) {
+          allKeys.add(p.getFirst());
+          allChildren.add(p.getSecond());
+        }
+      }
+    }
+
+    // If no child split, then this node is unchanged.
+    if (allChildren.size() == children.size()) {
+      return new ArrayList<>();
+    }
+    return spread(allKeys, allChildren);
+  }
+
+  /**
+   * Adds the nodes of splits as the last children of this node, splitting it
+   * as BPlusNode.putAll does if they do not fit. BPlusTree.putAll uses this to
+   * build a new root above the nodes its old root split into.
+   */
+  List<Pair<DataBox, Integer>> appendChildren(List<Pair<DataBox, Integer>> splits) {
+    List<DataBox> allKeys = new ArrayList<>(keys);
+    List<Integer> allChildren = new ArrayList<>(children);
+    for (Pair<DataBox, Integer> p : splits) {
+      allKeys.add(p.getFirst());
+      allChildren.add(p.getSecond());
+    }
+    return spread(allKeys, allChildren);
+  }
+
+  /**
+   * Spreads allChildren, separated by allKeys, over this node and as few new
+   * inner nodes of at most 2d + 1 children as can hold them. Returns the split
+   * keys and page numbers of the new nodes.
+   */
+  private List<Pair<DataBox, Integer>> spread(List<DataBox> allKeys, List<Integer> allChildren) {
+    int n = allChildren.size();
+    int capacity = 2 * metadata.getOrder() + 1;
+    int numNodes = (n + capacity - 1) / capacity;
+    List<Pair<DataBox, Integer>> splits = new ArrayList<>();
+    int start = 0;
+    for (int i = 0; i < numNodes; ++i) {
+      int end = start + (n - start) / (numNodes - i);
+      List<DataBox> nodeKeys = new ArrayList<>(allKeys.subList(start, end - 1));
+      List<Integer> nodeChildren = new ArrayList<>(allChildren.subList(start, end));
+      if (i == 0) {
+        this.keys = nodeKeys;
+        this.children = nodeChildren;
+        sync();
+      } else {
+        // The key between the two nodes moves up, as in put.
+        InnerNode node = new InnerNode(metadata, nodeKeys, nodeChildren);
+        splits.add(new Pair<>(allKeys.get(start - 1), node.getPage().getPageNum()));
+      }
+      start = end;
+    }
+    return splits;
+  }
+
+  /**
+   * Splits entries, which are sorted by key, into the runs that belong to each
+   * child: entry (k, r) belongs to child numLessThanEqual(k, keys).
+   */
+  private List<List<Pair<DataBox, RecordId>>> partition(List<Pair<DataBox, RecordId>> entries) {
+    List<List<Pair<DataBox, RecordId>>> parts = new ArrayList<>(children.size());
+    int start = 0;
+    for (DataBox key : keys) {
+      int end = start;
+      while (end < entries.size() && entries.get(end).getFirst().compareTo(key) < 0) {
+        ++end;
+      }
+      parts.add(entries.subList(start, end));
+      start = end;
+    }
+    parts.add(entries.subList(start, entries.size()));
+    return parts;
+  }
+
   // See BPlusNode.remove.
   @Override
   public void remove(DataBox key) {
@@ -177,7 +280,13 @@ class InnerNode extends BPlusNode {
   }
 
   private void sync() {
-    page.getByteBuffer().put(toBytes());
+    PageAllocator allocator = metadata.getAllocator();
+    Page p = allocator.pinPage(page.getPageNum());
+    try {
+      p.getByteBuffer().put(toBytes());
+    } finally {
+      allocator.unpinPage(p, true);
+    }
   }
 
   // Just for testing.
@@ -378,7 +487,7 @@ class InnerNode extends BPlusNode {
    */
   public static InnerNode fromBytes(BPlusTreeMetadata metadata, int pageNum) {
     Page page = metadata.getAllocator().fetchPage(pageNum);
-    ByteBuffer buf = page.getByteBuffer();
+    ByteBuffer buf = page.getReadOnlyByteBuffer();
 
     assert(buf.get() == (byte) 0);
 
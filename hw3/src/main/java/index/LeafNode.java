@@ -11,6 +11,7 @@ import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
 import edu.berkeley.cs186.database.table.RecordId;
 
 /**
@@ -104,19 +105,20 @@ class LeafNode extends BPlusNode {
   // Constructors //////////////////////////////////////////////////////////////
   /**
    * Construct a brand new leaf node. The leaf will be persisted on a brand new
-   * page allocated by metadata.getAllocator().
+   * page handed out by metadata.allocPage().
    */
   public LeafNode(BPlusTreeMetadata metadata, List<DataBox> keys,
                   List<RecordId> rids, Optional<Integer> rightSibling) {
-    this(metadata, metadata.getAllocator().allocPage(), keys, rids,
+    this(metadata, metadata.allocPage(), keys, rids,
          rightSibling);
   }
 
   /**
    * Construct a leaf node that is persisted to page `pageNum` allocated by
-   * metadata.getAllocator().
+   * metadata.getAllocator(). BPlusTree.bulkLoad and putAll use this to
+   * allocate the page of a leaf's right sibling before writing the leaf.
    */
-  private LeafNode(BPlusTreeMetadata metadata, int pageNum, List<DataBox> keys,
+  LeafNode(BPlusTreeMetadata metadata, int pageNum, List<DataBox> keys,
                    List<RecordId> rids, Optional<Integer> rightSibling) {
     assert(keys.size() <= 2 * metadata.getOrder());
     assert(keys.size() == rids.size());
@@ -209,6 +211,75 @@ class LeafNode extends BPlusNode {
     return Optional.of(new Pair<>(rightKeys.get(0), pageNum));
   }
 
+  // See BPlusNode.checkAbsent.
+  @Override
+  void checkAbsent(List<Pair<DataBox, RecordId>> entries) throws BPlusTreeException {
+    int i = 0;
+    for (Pair<DataBox, RecordId> entry : entries) {
+      DataBox key = entry.getFirst();
+      while (i < keys.size() && keys.get(i).compareTo(key) < 0) {
+        ++i;
+      }
+      if (i < keys.size() && keys.get(i).equals(key)) {
+        String message = String.format("Duplicate key %s inserted.", key);
+        throw new BPlusTreeException(message);
+      }
+    }
+  }
+
+  // See BPlusNode.putAll.
+  @Override
+  List<Pair<DataBox, Integer>> putAll(List<Pair<DataBox, RecordId>> entries) {
+    // Merge the entries into the ones we already have.
+    List<DataBox> allKeys = new ArrayList<>(keys.size() + entries.size());
+    List<RecordId> allRids = new ArrayList<>(keys.size() + entries.size());
+    int i = 0;
+    for (Pair<DataBox, RecordId> entry : entries) {
+      while (i < keys.size() && keys.get(i).compareTo(entry.getFirst()) < 0) {
+        allKeys.add(keys.get(i));
+        allRids.add(rids.get(i));
+        ++i;
+      }
+      allKeys.add(entry.getFirst());
+      allRids.add(entry.getSecond());
+    }
+    allKeys.addAll(keys.subList(i, keys.size()));
+    allRids.addAll(rids.subList(i, rids.size()));
+
+    // Spread the entries over as few leaves of at most 2d entries as we can,
+    // this leaf first. The new leaves get consecutive pages and are chained
+    // between this leaf and its old right sibling.
+    int n = allKeys.size();
+    int capacity = Math.max(1, 2 * metadata.getOrder());
+    int numLeaves = (n + capacity - 1) / capacity;
+    int[] pageNums = new int[numLeaves];
+    pageNums[0] = page.getPageNum();
+    for (int j = 1; j < numLeaves; ++j) {
+      pageNums[j] = metadata.allocPage();
+    }
+
+    Optional<Integer> lastSibling = rightSibling;
+    List<Pair<DataBox, Integer>> splits = new ArrayList<>();
+    int start = 0;
+    for (int j = 0; j < numLeaves; ++j) {
+      int end = start + (n - start) / (numLeaves - j);
+      List<DataBox> leafKeys = new ArrayList<>(allKeys.subList(start, end));
+      List<RecordId> leafRids = new ArrayList<>(allRids.subList(start, end));
+      Optional<Integer> next = j + 1 < numLeaves ? Optional.of(pageNums[j + 1]) : lastSibling;
+      if (j == 0) {
+        this.keys = leafKeys;
+        this.rids = leafRids;
+        this.rightSibling = next;
+        sync();
+      } else {
+        new LeafNode(metadata, pageNums[j], leafKeys, leafRids, next);
+        splits.add(new Pair<>(leafKeys.get(0), pageNums[j]));
+      }
+      start = end;
+    }
+    return splits;
+  }
+
   // See BPlusNode.remove.
   @Override
   public void remove(DataBox key) {
@@ -261,9 +332,18 @@ class LeafNode extends BPlusNode {
     return Optional.of(LeafNode.fromBytes(metadata, pageNum));
   }
 
-  /** Serializes this leaf to its page. */
+  /**
+   * Serializes this leaf to its page, which is pinned while we write through
+   * its buffer.
+   */
   private void sync() {
-    page.getByteBuffer().put(toBytes());
+    PageAllocator allocator = metadata.getAllocator();
+    Page p = allocator.pinPage(page.getPageNum());
+    try {
+      p.getByteBuffer().put(toBytes());
+    } finally {
+      allocator.unpinPage(p, true);
+    }
   }
 
   /**
@@ -394,7 +474,7 @@ class LeafNode extends BPlusNode {
    */
   public static LeafNode fromBytes(BPlusTreeMetadata metadata, int pageNum) {
     Page page = metadata.getAllocator().fetchPage(pageNum);
-    ByteBuffer buf = page.getByteBuffer();
+    ByteBuffer buf = page.getReadOnlyByteBuffer();
 
     assert(buf.get() == (byte) 1);
 
@@ -0,0 +1,19 @@
+package edu.berkeley.cs186.database.io;
+
+/**
+ * How a PageIterator brings the pages it does not find in the buffer pool into memory.
+ *
+ *   - NORMAL puts them in the shared buffer pool, like any other fetch.
+ *   - BULK_READ keeps them in a small ring of pages private to the iterator instead, and lets the
+ *     oldest go whenever the ring is full, so that a scan of a large file does not evict the rest
+ *     of the pool's working set. Pages that are already resident are still served from the pool.
+ *     Files of up to a quarter of the pool are scanned as with NORMAL, since they fit anyway.
+ *     A BULK_READ iterator does not read ahead through the pool. It is meant for reading: a page
+ *     written through it is only written back once it leaves the ring. The ring is emptied when
+ *     the iterator is exhausted or closed (see PageAllocator.PageIterator#close), or else when
+ *     its allocator is closed.
+ */
+public enum AccessStrategy {
+  NORMAL,
+  BULK_READ
+}
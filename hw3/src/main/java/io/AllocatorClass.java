@@ -0,0 +1,29 @@
+package edu.berkeley.cs186.database.io;
+
+/**
+ * What a PageAllocator stores, which decides its share of the buffer pool.
+ *
+ * Every class has a quota of the pool, by default half of it for base tables and a quarter each
+ * for indices and temporary tables (see PageAllocator#setPoolQuota). Quotas are soft: a class may
+ * use pages that the other classes leave idle, but when the pool is full, a page of a class that
+ * is over its quota replaces a page of that same class, and a page of a class under its quota
+ * replaces a page of a class that is over. A large sort spilling to temporary tables therefore
+ * recycles its own pages once it has used up its quota instead of evicting base table and index
+ * pages.
+ */
+public enum AllocatorClass {
+  BASE_TABLE(2),
+  INDEX(1),
+  TEMP(1);
+
+  // The default quota, in quarters of the pool.
+  private final int defaultQuarters;
+
+  AllocatorClass(int defaultQuarters) {
+    this.defaultQuarters = defaultQuarters;
+  }
+
+  int defaultQuota(int capacity) {
+    return capacity / 4 * this.defaultQuarters;
+  }
+}
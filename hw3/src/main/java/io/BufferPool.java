@@ -0,0 +1,342 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * A buffer pool of Pages shared by PageAllocators. Pages are keyed by their translated virtual
+ * page number (see PageAllocator#translatePageNum).
+ *
+ * The pool is split into a power-of-two number of partitions, and a page always lives in the
+ * partition picked by hashing its virtual page number. Every partition has its own lock, its own
+ * share of the capacity, and its own ReplacementPolicy instance, so allocators and threads
+ * touching different pages rarely contend. Looking up a resident page never takes the partition
+ * lock: the partition's frames are kept in a ConcurrentHashMap, and a hit only notifies the
+ * policy (which, for CLOCK, just sets a reference bit). Inserts, removals, and evictions lock a
+ * single partition.
+ *
+ * Every page belongs to an AllocatorClass, and every class has a soft quota of the pool that
+ * steers which page a new page replaces (see AllocatorClass). Quotas are enforced per partition,
+ * on the partition's share of the quota. The pool counts hits and misses per class.
+ *
+ * Pinned pages are never chosen for eviction. If every page of a full partition is pinned, the
+ * partition temporarily grows past its capacity and shrinks back as pages are unpinned. Evicted
+ * pages are flushed, which only writes them back if they are dirty, and then release whatever
+ * memory holds their bytes.
+ */
+class BufferPool {
+  private static final Predicate<Frame> unpinned = f -> !f.page.isPinned();
+
+  private final Partition[] partitions;
+  private final int partitionMask;
+  private final int capacity;
+  private final LongAdder[] hits;
+  private final LongAdder[] misses;
+
+  /**
+   * @param capacity the total number of pages the pool may hold
+   * @param numPartitions the number of partitions; must be a power of two
+   * @param policy the replacement policy every partition uses
+   */
+  BufferPool(int capacity, int numPartitions, EvictionPolicy policy) {
+    if (numPartitions <= 0 || Integer.bitCount(numPartitions) != 1) {
+      throw new IllegalArgumentException("numPartitions must be a power of two");
+    }
+    if (capacity < numPartitions) {
+      throw new IllegalArgumentException("capacity must be at least numPartitions");
+    }
+    this.partitions = new Partition[numPartitions];
+    this.partitionMask = numPartitions - 1;
+    this.capacity = capacity;
+    for (int i = 0; i < numPartitions; i++) {
+      // Spread any remainder over the first few partitions.
+      int partCapacity = capacity / numPartitions + (i < capacity % numPartitions ? 1 : 0);
+      this.partitions[i] = new Partition(partCapacity, policy.newPolicy(partCapacity));
+    }
+    int numClasses = AllocatorClass.values().length;
+    this.hits = new LongAdder[numClasses];
+    this.misses = new LongAdder[numClasses];
+    for (AllocatorClass c : AllocatorClass.values()) {
+      this.hits[c.ordinal()] = new LongAdder();
+      this.misses[c.ordinal()] = new LongAdder();
+      setQuota(c, c.defaultQuota(capacity));
+    }
+  }
+
+  /**
+   * Sets the number of pages of the pool that pages of allocClass may use before they start
+   * replacing each other.
+   */
+  void setQuota(AllocatorClass allocClass, int quota) {
+    for (Partition p : this.partitions) {
+      // Each partition gets its share of the quota, rounded up so that no class is shut out of
+      // a partition entirely.
+      long share = ((long) quota * p.capacity + this.capacity - 1) / this.capacity;
+      p.setQuota(allocClass, (int) share);
+    }
+  }
+
+  /**
+   * Looks up vPageNum, counting a hit or a miss for allocClass.
+   *
+   * @return the resident page for vPageNum, or null if it is not in the pool
+   */
+  Page get(long vPageNum, AllocatorClass allocClass) {
+    Page page = partitionFor(vPageNum).get(vPageNum);
+    (page == null ? this.misses : this.hits)[allocClass.ordinal()].increment();
+    return page;
+  }
+
+  /**
+   * Adds page, a page of allocClass, to the pool unless another thread got there first, evicting
+   * a page from the same partition if the partition is full.
+   *
+   * @return the page now resident for vPageNum, which is not necessarily page
+   */
+  Page putIfAbsent(long vPageNum, Page page, AllocatorClass allocClass) {
+    return partitionFor(vPageNum).putIfAbsent(vPageNum, page, allocClass, false);
+  }
+
+  /**
+   * Like putIfAbsent, but for a page that was read ahead rather than asked for: if the page is
+   * already resident this is not an access, and the first fetch of a newly added page does not
+   * count as a second reference to it.
+   *
+   * @return the page now resident for vPageNum, which is not necessarily page
+   */
+  Page putReadAhead(long vPageNum, Page page, AllocatorClass allocClass) {
+    return partitionFor(vPageNum).putIfAbsent(vPageNum, page, allocClass, true);
+  }
+
+  /**
+   * @return whether vPageNum is resident, without counting as an access to it
+   */
+  boolean contains(long vPageNum) {
+    return partitionFor(vPageNum).frames.containsKey(vPageNum);
+  }
+
+  /**
+   * Returns whether page is the page resident for vPageNum, without counting as an access to it.
+   * This takes the partition lock, so it cannot see page in the middle of being evicted: a page
+   * that was pinned before this returns true stays resident until it is unpinned.
+   */
+  boolean isResident(long vPageNum, Page page) {
+    return partitionFor(vPageNum).isResident(vPageNum, page);
+  }
+
+  /**
+   * Drops vPageNum from the pool without flushing it.
+   *
+   * @return the page that was removed, or null if it was not resident
+   */
+  Page remove(long vPageNum) {
+    return partitionFor(vPageNum).remove(vPageNum);
+  }
+
+  /**
+   * Drops vPageNum from the pool without flushing it, but only if page is the page resident for
+   * it.
+   *
+   * @return whether page was removed
+   */
+  boolean remove(long vPageNum, Page page) {
+    return partitionFor(vPageNum).remove(vPageNum, page);
+  }
+
+  /**
+   * Drops every page belonging to allocator allocID from the pool without flushing them.
+   *
+   * @return the pages that were removed
+   */
+  List<Page> removeAllocator(int allocID) {
+    List<Page> removed = new ArrayList<Page>();
+    for (Partition p : this.partitions) {
+      p.removeAllocator(allocID, removed);
+    }
+    return removed;
+  }
+
+  /**
+   * @return the resident pages of allocator allocID that are dirty and not pinned
+   */
+  List<Page> dirtyPages(int allocID) {
+    List<Page> dirty = new ArrayList<Page>();
+    for (Partition p : this.partitions) {
+      // The frames map is concurrent, so a snapshot that may miss concurrent changes does not
+      // need the partition lock.
+      for (Frame f : p.frames.values()) {
+        if (PageAllocator.translateAllocator(f.vPageNum) == allocID && f.page.isDirty()
+            && !f.page.isPinned()) {
+          dirty.add(f.page);
+        }
+      }
+    }
+    return dirty;
+  }
+
+  /**
+   * @return the resident pages of allocator allocID
+   */
+  List<Page> residentPages(int allocID) {
+    List<Page> resident = new ArrayList<Page>();
+    for (Partition p : this.partitions) {
+      for (Frame f : p.frames.values()) {
+        if (PageAllocator.translateAllocator(f.vPageNum) == allocID) {
+          resident.add(f.page);
+        }
+      }
+    }
+    return resident;
+  }
+
+  /**
+   * @return the number of lookups of pages of allocClass that found the page resident
+   */
+  long getHits(AllocatorClass allocClass) {
+    return this.hits[allocClass.ordinal()].sum();
+  }
+
+  /**
+   * @return the number of lookups of pages of allocClass that did not find the page resident
+   */
+  long getMisses(AllocatorClass allocClass) {
+    return this.misses[allocClass.ordinal()].sum();
+  }
+
+  private Partition partitionFor(long vPageNum) {
+    int h = Long.hashCode(vPageNum);
+    h ^= (h >>> 16);
+    return this.partitions[h & this.partitionMask];
+  }
+
+  private static class Partition {
+    private final int capacity;
+    private final Map<Long, Frame> frames;
+    private final ReplacementPolicy policy;
+    // Indexed by AllocatorClass ordinal, and only touched with the partition lock held.
+    private final int[] quotas;
+    private final int[] resident;
+
+    Partition(int capacity, ReplacementPolicy policy) {
+      this.capacity = capacity;
+      this.frames = new ConcurrentHashMap<Long, Frame>(capacity * 2);
+      this.policy = policy;
+      this.quotas = new int[AllocatorClass.values().length];
+      this.resident = new int[AllocatorClass.values().length];
+    }
+
+    synchronized void setQuota(AllocatorClass allocClass, int quota) {
+      this.quotas[allocClass.ordinal()] = quota;
+    }
+
+    Page get(long vPageNum) {
+      Frame f = this.frames.get(vPageNum);
+      if (f == null) {
+        return null;
+      }
+      if (f.readAhead) {
+        f.readAhead = false;
+      } else {
+        this.policy.frameAccessed(f);
+      }
+      return f.page;
+    }
+
+    Page putIfAbsent(long vPageNum, Page page, AllocatorClass allocClass, boolean readAhead) {
+      List<Frame> victims = new ArrayList<Frame>();
+      synchronized (this) {
+        Frame existing = this.frames.get(vPageNum);
+        if (existing != null) {
+          if (!readAhead) {
+            this.policy.frameAccessed(existing);
+          }
+          return existing.page;
+        }
+        while (this.frames.size() >= this.capacity) {
+          Frame victim = chooseVictim(allocClass);
+          if (victim == null) {
+            break;
+          }
+          this.frames.remove(victim.vPageNum);
+          this.policy.frameRemoved(victim);
+          this.resident[victim.allocClass.ordinal()]--;
+          victims.add(victim);
+        }
+        Frame f = new Frame(vPageNum, page, allocClass);
+        f.readAhead = readAhead;
+        this.frames.put(vPageNum, f);
+        this.policy.frameAdded(f);
+        this.resident[allocClass.ordinal()]++;
+      }
+      // Write the victims back outside of the partition lock so that other threads can keep
+      // using the partition while we wait on the disk.
+      for (Frame victim : victims) {
+        if (victim.page.metrics != null) {
+          victim.page.metrics.recordEviction();
+        }
+        victim.page.flush();
+        victim.page.release();
+      }
+      return page;
+    }
+
+    /**
+     * Picks the frame to make room for a page of allocClass, following the quotas. Must be called
+     * with the partition lock held.
+     */
+    private Frame chooseVictim(AllocatorClass allocClass) {
+      Frame victim;
+      if (this.resident[allocClass.ordinal()] >= this.quotas[allocClass.ordinal()]) {
+        victim = this.policy.chooseVictim(f -> f.allocClass == allocClass && !f.page.isPinned());
+      } else {
+        victim = this.policy.chooseVictim(f -> this.resident[f.allocClass.ordinal()]
+                                                 > this.quotas[f.allocClass.ordinal()]
+                                               && !f.page.isPinned());
+      }
+      // Everything the quotas point at may be pinned, in which case anything unpinned will do.
+      return victim != null ? victim : this.policy.chooseVictim(unpinned);
+    }
+
+    synchronized Page remove(long vPageNum) {
+      Frame f = this.frames.remove(vPageNum);
+      if (f == null) {
+        return null;
+      }
+      this.policy.frameRemoved(f);
+      this.resident[f.allocClass.ordinal()]--;
+      return f.page;
+    }
+
+    synchronized boolean isResident(long vPageNum, Page page) {
+      Frame f = this.frames.get(vPageNum);
+      return f != null && f.page == page;
+    }
+
+    synchronized boolean remove(long vPageNum, Page page) {
+      Frame f = this.frames.get(vPageNum);
+      if (f == null || f.page != page) {
+        return false;
+      }
+      remove(vPageNum);
+      return true;
+    }
+
+    synchronized void removeAllocator(int allocID, List<Page> removed) {
+      Iterator<Frame> iter = this.frames.values().iterator();
+      while (iter.hasNext()) {
+        Frame f = iter.next();
+        if (PageAllocator.translateAllocator(f.vPageNum) == allocID) {
+          iter.remove();
+          this.policy.frameRemoved(f);
+          this.resident[f.allocClass.ordinal()]--;
+          removed.add(f.page);
+        }
+      }
+    }
+  }
+}
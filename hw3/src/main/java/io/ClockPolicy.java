@@ -0,0 +1,66 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * CLOCK (second chance) replacement. Frames sit in a ring; a hit sets the frame's reference bit,
+ * and the clock hand clears reference bits as it sweeps until it finds a frame whose bit is
+ * already clear.
+ */
+class ClockPolicy implements ReplacementPolicy {
+  private Frame[] ring;
+  private final ArrayDeque<Integer> freeSlots;
+  private int hand;
+
+  ClockPolicy(int capacity) {
+    this.ring = new Frame[Math.max(capacity, 1)];
+    this.freeSlots = new ArrayDeque<Integer>(this.ring.length);
+    for (int i = 0; i < this.ring.length; i++) {
+      this.freeSlots.add(i);
+    }
+    this.hand = 0;
+  }
+
+  public void frameAdded(Frame f) {
+    if (this.freeSlots.isEmpty()) {
+      // Only happens if the pool had to admit a frame without evicting one.
+      int oldLength = this.ring.length;
+      this.ring = Arrays.copyOf(this.ring, oldLength * 2);
+      for (int i = oldLength; i < this.ring.length; i++) {
+        this.freeSlots.add(i);
+      }
+    }
+    f.index = this.freeSlots.poll();
+    f.referenced = true;
+    this.ring[f.index] = f;
+  }
+
+  public void frameAccessed(Frame f) {
+    f.referenced = true;
+  }
+
+  public void frameRemoved(Frame f) {
+    this.ring[f.index] = null;
+    this.freeSlots.add(f.index);
+  }
+
+  public Frame chooseVictim(Predicate<Frame> evictable) {
+    // After one full sweep every reference bit is clear, so a second sweep finds a victim if
+    // there is any evictable frame at all.
+    for (int i = 0; i < 2 * this.ring.length; i++) {
+      Frame f = this.ring[this.hand];
+      this.hand = (this.hand + 1) % this.ring.length;
+      if (f == null) {
+        continue;
+      }
+      if (f.referenced) {
+        f.referenced = false;
+      } else if (evictable.test(f)) {
+        return f;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,159 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Keeps pages compressed with LZPageCodec, packed one after another in a data file next to the
+ * allocator's file, and finds them through a page translation table in a second file. This is
+ * the store of IOMode.COMPRESSED.
+ *
+ * The translation table has one 16 byte entry per block of the allocator's file: the offset of
+ * the page's slot in the data file, the compressed length of the page, and the size of the slot.
+ * A length of 0 means the page reads as zeros, and a length equal to the page size that the page
+ * did not compress and is stored as is. Slots are rounded up to slotAlignment bytes so that a page
+ * can grow a little and still be rewritten in place; a page that outgrows its slot moves to a
+ * new slot at the end of the data file, and its old slot is not reused.
+ */
+class CompressedFrameStore implements FrameStore {
+  static final String dataExtension = ".pages";
+  static final String tableExtension = ".ptt";
+
+  private static final int entrySize = 16;
+  private static final int slotAlignment = 128;
+
+  private final FileChannel data;
+  private final FileChannel table;
+  private final int pageSize;
+  private long dataEnd;
+
+  // Scratch space, only used with the store's monitor held.
+  private final byte[] raw;
+  private final byte[] packed;
+  private final ByteBuffer entry;
+
+  /**
+   * @param fName the name of the allocator's file, which the store's files are named after
+   * @param wipe whether to discard the pages already in the store
+   * @param pageSize the size of the allocator's pages
+   */
+  CompressedFrameStore(String fName, boolean wipe, int pageSize) throws IOException {
+    this.pageSize = pageSize;
+    this.data = new RandomAccessFile(fName + dataExtension, "rw").getChannel();
+    this.table = new RandomAccessFile(fName + tableExtension, "rw").getChannel();
+    if (wipe) {
+      this.data.truncate(0);
+      this.table.truncate(0);
+    }
+    this.dataEnd = this.data.size();
+    this.raw = new byte[pageSize];
+    // One byte short of a page, so that a compressed page is always shorter than a raw one.
+    this.packed = new byte[pageSize - 1];
+    this.entry = ByteBuffer.allocate(entrySize);
+  }
+
+  public synchronized void read(int blockNum, ByteBuffer frame) throws IOException {
+    readEntry(blockNum);
+    long offset = this.entry.getLong(0);
+    int length = this.entry.getInt(8);
+
+    frame.clear();
+    if (length == 0) {
+      while (frame.hasRemaining()) {
+        frame.put((byte) 0);
+      }
+    } else if (length == this.pageSize) {
+      readFully(ByteBuffer.wrap(this.raw), offset);
+      frame.put(this.raw);
+    } else {
+      readFully(ByteBuffer.wrap(this.packed, 0, length), offset);
+      LZPageCodec.decompress(this.packed, length, this.raw, this.pageSize);
+      frame.put(this.raw);
+    }
+    frame.clear();
+  }
+
+  public synchronized void write(int blockNum, ByteBuffer frame) throws IOException {
+    ByteBuffer src = frame.duplicate();
+    src.clear();
+    src.get(this.raw);
+    int length = LZPageCodec.compress(this.raw, this.pageSize, this.packed);
+    byte[] image = this.packed;
+    if (length < 0) {
+      length = this.pageSize;
+      image = this.raw;
+    }
+
+    readEntry(blockNum);
+    long offset = this.entry.getLong(0);
+    int capacity = this.entry.getInt(12);
+    if (capacity < length) {
+      offset = this.dataEnd;
+      capacity = (length + slotAlignment - 1) / slotAlignment * slotAlignment;
+      this.dataEnd += capacity;
+    }
+
+    ByteBuffer bytes = ByteBuffer.wrap(image, 0, length);
+    while (bytes.hasRemaining()) {
+      this.data.write(bytes, offset + bytes.position());
+    }
+    writeEntry(blockNum, offset, length, capacity);
+  }
+
+  public synchronized void zero(int firstBlockNum, int n) throws IOException {
+    for (int blockNum = firstBlockNum; blockNum < firstBlockNum + n; blockNum++) {
+      readEntry(blockNum);
+      if (this.entry.getInt(8) != 0) {
+        // Keep the slot, so that the page can be written back in place.
+        writeEntry(blockNum, this.entry.getLong(0), 0, this.entry.getInt(12));
+      }
+    }
+  }
+
+  public void force() throws IOException {
+    // The pages first, so that the table never points at bytes that are not on disk.
+    this.data.force(false);
+    this.table.force(false);
+  }
+
+  public void close() throws IOException {
+    this.data.close();
+    this.table.close();
+  }
+
+  /**
+   * Reads the translation table entry of blockNum into entry. Entries past the end of the table
+   * read as zeros.
+   */
+  private void readEntry(int blockNum) throws IOException {
+    long position = (long) blockNum * entrySize;
+    this.entry.clear();
+    while (this.entry.hasRemaining()) {
+      if (this.table.read(this.entry, position + this.entry.position()) < 0) {
+        while (this.entry.hasRemaining()) {
+          this.entry.put((byte) 0);
+        }
+      }
+    }
+  }
+
+  private void writeEntry(int blockNum, long offset, int length, int capacity) throws IOException {
+    long position = (long) blockNum * entrySize;
+    this.entry.clear();
+    this.entry.putLong(offset).putInt(length).putInt(capacity);
+    this.entry.flip();
+    while (this.entry.hasRemaining()) {
+      this.table.write(this.entry, position + this.entry.position());
+    }
+  }
+
+  private void readFully(ByteBuffer dst, long position) throws IOException {
+    while (dst.hasRemaining()) {
+      if (this.data.read(dst, position + dst.position()) < 0) {
+        throw new PageException("compressed page at offset " + position + " is truncated");
+      }
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package edu.berkeley.cs186.database.io;
+
+/**
+ * The replacement policies a PageAllocator can ask the buffer pool to use for its pages.
+ *
+ *   - CLOCK approximates LRU with a reference bit per frame. Hits never take a lock.
+ *   - LRU evicts the least recently used frame of a partition.
+ *   - TWO_Q (Johnson and Shasha's simplified 2Q) admits new pages into a small FIFO and only
+ *     promotes pages that are referenced again after falling out of it, so a single large scan
+ *     cannot flush the frequently used pages.
+ *   - LRU_K (O'Neil et al., with K = 2) evicts the frame whose second most recent reference is
+ *     oldest, which likewise keeps pages referenced only once from displacing hot pages.
+ */
+public enum EvictionPolicy {
+  CLOCK,
+  LRU,
+  TWO_Q,
+  LRU_K;
+
+  ReplacementPolicy newPolicy(int capacity) {
+    switch (this) {
+      case CLOCK: return new ClockPolicy(capacity);
+      case LRU: return new LRUPolicy();
+      case TWO_Q: return new TwoQueuePolicy(capacity);
+      case LRU_K: return new LRUKPolicy(2, capacity);
+      default: throw new IllegalArgumentException("Unreachable code.");
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package edu.berkeley.cs186.database.io;
+
+/**
+ * A page resident in a BufferPool partition, plus the bookkeeping its ReplacementPolicy keeps
+ * about it.
+ */
+class Frame {
+  final long vPageNum;
+  final Page page;
+  final AllocatorClass allocClass;
+
+  // CLOCK's reference bit. It is written on the lock-free hit path, hence volatile.
+  volatile boolean referenced;
+
+  // Set while a page brought in by read-ahead has not been asked for yet. Its insertion already
+  // told the policy about it, so the first real access is not reported again.
+  volatile boolean readAhead;
+
+  // The position of this frame in the policy's own structures (e.g. CLOCK's ring).
+  int index;
+
+  Frame(long vPageNum, Page page, AllocatorClass allocClass) {
+    this.vPageNum = vPageNum;
+    this.page = page;
+    this.allocClass = allocClass;
+    this.referenced = false;
+    this.readAhead = false;
+    this.index = -1;
+  }
+}
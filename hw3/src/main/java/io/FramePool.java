@@ -0,0 +1,74 @@
+package edu.berkeley.cs186.database.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A pool of page-sized direct ByteBuffers that FramedPages read their bytes into.
+ *
+ * Frames are carved out of large direct buffers, so that memory is allocated once up front rather
+ * than per page, and a frame given back by an evicted page is handed to the next page that needs
+ * one. The pool starts out with a fixed number of frames and grows a slab at a time when it runs
+ * out, e.g. when the buffer pool admits more pages than its capacity (see BufferPool). All frames
+ * of a pool have the same size, so there is one pool per page size in use.
+ */
+class FramePool {
+  private static final int framesPerSlab = 64;
+
+  private final int frameSize;
+  private final ArrayDeque<ByteBuffer> free;
+  private int numFrames;
+
+  /**
+   * @param frameSize the size of every frame in bytes
+   * @param initialFrames the number of frames to allocate up front
+   */
+  FramePool(int frameSize, int initialFrames) {
+    this.frameSize = frameSize;
+    this.free = new ArrayDeque<ByteBuffer>();
+    this.numFrames = 0;
+    addFrames(initialFrames);
+  }
+
+  /**
+   * @return a frame, positioned at 0, whose contents are unspecified
+   */
+  synchronized ByteBuffer acquire() {
+    if (this.free.isEmpty()) {
+      addFrames(framesPerSlab);
+    }
+    return this.free.pop();
+  }
+
+  /**
+   * Returns a frame acquired earlier to the pool.
+   */
+  synchronized void release(ByteBuffer frame) {
+    frame.clear();
+    this.free.push(frame);
+  }
+
+  /**
+   * @return the number of frames the pool has allocated, free or not
+   */
+  synchronized int getNumFrames() {
+    return this.numFrames;
+  }
+
+  /**
+   * @return the size of every frame in bytes
+   */
+  int getFrameSize() {
+    return this.frameSize;
+  }
+
+  private void addFrames(int n) {
+    ByteBuffer slab = ByteBuffer.allocateDirect(n * this.frameSize);
+    for (int i = 0; i < n; i++) {
+      slab.limit((i + 1) * this.frameSize);
+      slab.position(i * this.frameSize);
+      this.free.push(slab.slice());
+    }
+    this.numFrames += n;
+  }
+}
@@ -0,0 +1,34 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Where FramedPages read their bytes from and write them back to. Pages are identified by the
+ * number of the block they occupy in the allocator's file, whether or not the store actually
+ * keeps them there.
+ */
+interface FrameStore {
+  /**
+   * Fills frame, from position 0 to its limit, with the page in block blockNum. A page that was
+   * never written reads as zeros.
+   */
+  void read(int blockNum, ByteBuffer frame) throws IOException;
+
+  /**
+   * Writes frame, from position 0 to its limit, as the page in block blockNum.
+   */
+  void write(int blockNum, ByteBuffer frame) throws IOException;
+
+  /**
+   * Makes the n pages starting at block firstBlockNum read as zeros.
+   */
+  void zero(int firstBlockNum, int n) throws IOException;
+
+  /**
+   * Forces everything written so far to disk.
+   */
+  void force() throws IOException;
+
+  void close() throws IOException;
+}
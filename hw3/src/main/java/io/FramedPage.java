@@ -0,0 +1,219 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A Page whose bytes are read into a frame from a FramePool, and written back, through a
+ * FrameStore rather than mapped. Used by PageAllocators in IOMode.PREAD, IOMode.COMPRESSED and
+ * IOMode.MEMORY.
+ *
+ * The frame is given back to the FramePool when the buffer pool evicts the page, after writing
+ * the page back if it is dirty. A caller may still hold on to an evicted page, though, as B+ tree
+ * nodes and block iterators do; the next access through such a handle reads the page into a new
+ * frame and puts it back into the buffer pool. Since the allocator hands out a single FramedPage
+ * per page number, every handle to a page sees the same bytes.
+ *
+ * Accesses synchronize on the page so that an eviction never takes the frame away halfway
+ * through one. A buffer returned by getByteBuffer, however, is a view of the frame itself, and is
+ * only guaranteed to stay valid while the page is pinned.
+ */
+class FramedPage extends Page {
+  private final PageAllocator allocator;
+  private final FrameStore store;
+  private final int blockNum;
+  private final FramePool framePool;
+
+  /**
+   * @param allocator the allocator the page belongs to
+   * @param store where the allocator keeps its pages
+   * @param blockNum the block in the file for this page
+   * @param pageNum the virtual page number
+   * @param durable whether flush should force the page to disk
+   * @param framePool the pool to take frames from, whose frames are the size of the page
+   */
+  FramedPage(PageAllocator allocator, FrameStore store, int blockNum, int pageNum,
+             boolean durable, FramePool framePool) {
+    super(pageNum, durable, framePool.getFrameSize());
+    this.allocator = allocator;
+    this.store = store;
+    this.blockNum = blockNum;
+    this.framePool = framePool;
+  }
+
+  @Override
+  public ByteBuffer getByteBuffer() {
+    ByteBuffer buf;
+    boolean faulted;
+    synchronized (this) {
+      faulted = attach();
+      buf = super.getByteBuffer();
+    }
+    readmitIf(faulted);
+    return buf;
+  }
+
+  @Override
+  public ByteBuffer getReadOnlyByteBuffer() {
+    // The frame may be reused once the page is evicted, so readers get a copy of their own.
+    return ByteBuffer.wrap(readBytes()).asReadOnlyBuffer();
+  }
+
+  @Override
+  public void readBytes(int position, int num, byte[] buf) {
+    boolean faulted;
+    synchronized (this) {
+      faulted = attach();
+      super.readBytes(position, num, buf);
+    }
+    readmitIf(faulted);
+  }
+
+  @Override
+  public byte readByte(int position) {
+    byte b;
+    boolean faulted;
+    synchronized (this) {
+      faulted = attach();
+      b = super.readByte(position);
+    }
+    readmitIf(faulted);
+    return b;
+  }
+
+  @Override
+  public void writeBytes(int position, int num, byte[] buf) {
+    boolean faulted;
+    synchronized (this) {
+      faulted = attach();
+      super.writeBytes(position, num, buf);
+    }
+    readmitIf(faulted);
+  }
+
+  @Override
+  public void writeByte(int position, byte b) {
+    boolean faulted;
+    synchronized (this) {
+      faulted = attach();
+      super.writeByte(position, b);
+    }
+    readmitIf(faulted);
+  }
+
+  /**
+   * Writes the page back if it has been modified since it was last flushed, and forces it to
+   * disk if the page is durable. Unlike a mapped page, a non-durable page is still written back,
+   * since its frame is the only copy of the modification.
+   */
+  @Override
+  public synchronized void flush() {
+    if (this.pageData == null || !this.dirty) {
+      return;
+    }
+    long start = System.nanoTime();
+    writeBack();
+    if (this.durable) {
+      try {
+        this.store.force();
+      } catch (IOException e) {
+        throw new PageException("Can't force page: " + getPageNum() + " ; " + e.getMessage());
+      }
+    }
+    recordFlush(start);
+  }
+
+  /**
+   * Writes the page back if it is dirty, leaving it to the caller to force the store.
+   */
+  @Override
+  synchronized boolean writeBackUnforced() {
+    if (this.pageData == null || !this.dirty) {
+      return false;
+    }
+    writeBack();
+    return true;
+  }
+
+  /**
+   * @return the store the page is kept in
+   */
+  FrameStore getStore() {
+    return this.store;
+  }
+
+  @Override
+  void load() {
+    boolean faulted;
+    synchronized (this) {
+      faulted = attach();
+    }
+    readmitIf(faulted);
+  }
+
+  @Override
+  synchronized void release() {
+    if (this.pageData == null || isPinned()) {
+      // A pinned page was pinned after it was picked for eviction; it keeps its frame, and
+      // rejoins the buffer pool the next time it is fetched.
+      return;
+    }
+    if (this.dirty) {
+      long start = System.nanoTime();
+      writeBack();
+      recordFlush(start);
+    }
+    this.framePool.release(this.pageData);
+    this.pageData = null;
+  }
+
+  /**
+   * Reads the page into a frame if it does not have one. Must be called with the page's monitor
+   * held.
+   *
+   * @return whether the page had to be read in
+   */
+  boolean attach() {
+    if (this.pageData != null) {
+      return false;
+    }
+    ByteBuffer frame = this.framePool.acquire();
+    PageAllocator.incrementCacheMisses();
+    try {
+      this.store.read(this.blockNum, frame);
+    } catch (IOException | PageException e) {
+      this.framePool.release(frame);
+      throw new PageException("Can't read page: " + getPageNum() + " ; " + e.getMessage());
+    }
+    this.pageData = frame;
+    return true;
+  }
+
+  /**
+   * Puts a page that was read back in through a stale handle back into the buffer pool, so that
+   * its frame is accounted for. This happens outside of the page's monitor, since admitting the
+   * page may evict, and so lock, other pages.
+   */
+  private void readmitIf(boolean faulted) {
+    if (faulted) {
+      this.allocator.readmit(this);
+    }
+  }
+
+  private void recordFlush(long startNanos) {
+    if (this.metrics != null) {
+      this.metrics.recordFlush(startNanos);
+    }
+  }
+
+  private void writeBack() {
+    this.dirty = false;
+    PageAllocator.incrementCacheMisses();
+    try {
+      this.store.write(this.blockNum, this.pageData);
+    } catch (IOException e) {
+      this.dirty = true;
+      throw new PageException("Can't write page: " + getPageNum() + " ; " + e.getMessage());
+    }
+  }
+}
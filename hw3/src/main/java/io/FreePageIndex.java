@@ -0,0 +1,219 @@
+package edu.berkeley.cs186.database.io;
+
+/**
+ * An in-memory mirror of a PageAllocator's master and header pages, used to answer "which pages
+ * are allocated" and "where is a free page" without touching the mapped metadata.
+ *
+ * Every header page is mirrored by a bitmap of longs, one bit per data page it covers, and the
+ * master page by an array of per-header-page allocation counts. Bitmaps are only materialized
+ * for header pages that have ever held a page. To find a free page we skip full header pages
+ * using the counts and then scan the header page's bitmap a word at a time, so allocation costs
+ * a handful of word operations rather than a byte-by-byte scan of a 4 KB header page. A hint
+ * remembers the first header page that may have room, so repeated allocations do not rescan the
+ * full header pages in front of it. Finding the next allocated page, as page iterators do, works
+ * the same way, skipping empty header pages and then scanning for a set bit.
+ *
+ * The index is not thread-safe; PageAllocator changes it while holding its own monitor and the
+ * write lock of its index lock, and reads it while holding either.
+ */
+class FreePageIndex {
+  private final int pagesPerHeader;
+  private final int wordsPerHeader;
+  private final long[][] bitmaps;
+  private final int[] counts;
+  private int firstNonFullHint;
+
+  /**
+   * @param numHeaderPages the number of header pages
+   * @param pagesPerHeader the number of data pages tracked by each header page
+   */
+  FreePageIndex(int numHeaderPages, int pagesPerHeader) {
+    this.pagesPerHeader = pagesPerHeader;
+    this.wordsPerHeader = (pagesPerHeader + Long.SIZE - 1) / Long.SIZE;
+    this.bitmaps = new long[numHeaderPages][];
+    this.counts = new int[numHeaderPages];
+    this.firstNonFullHint = 0;
+  }
+
+  /**
+   * Loads the state of header page headerIndex from its on-disk flag bytes, where a nonzero byte
+   * marks an allocated page.
+   */
+  void loadHeader(int headerIndex, byte[] flags) {
+    long[] words = bitmap(headerIndex);
+    int count = 0;
+    for (int i = 0; i < this.pagesPerHeader; i++) {
+      if (flags[i] != 0) {
+        words[i / Long.SIZE] |= 1L << (i % Long.SIZE);
+        count++;
+      }
+    }
+    this.counts[headerIndex] = count;
+  }
+
+  /**
+   * Marks the lowest numbered free page as allocated.
+   *
+   * @return the virtual page number of the page, or -1 if every page is in use
+   */
+  int allocate() {
+    for (int h = this.firstNonFullHint; h < this.counts.length; h++) {
+      if (this.counts[h] == this.pagesPerHeader) {
+        continue;
+      }
+      this.firstNonFullHint = h;
+      long[] words = bitmap(h);
+      for (int w = 0; w < this.wordsPerHeader; w++) {
+        if (words[w] != -1L) {
+          int bit = Long.numberOfTrailingZeros(~words[w]);
+          int index = w * Long.SIZE + bit;
+          if (index >= this.pagesPerHeader) {
+            break;
+          }
+          words[w] |= 1L << bit;
+          this.counts[h]++;
+          return h * this.pagesPerHeader + index;
+        }
+      }
+      throw new PageException("Header page should have free page but doesnt");
+    }
+    this.firstNonFullHint = this.counts.length;
+    return -1;
+  }
+
+  /**
+   * Marks the lowest numbered run of n consecutive free pages within a single header page as
+   * allocated.
+   *
+   * @return the virtual page number of the first page of the run, or -1 if there is no such run
+   */
+  int allocateRun(int n) {
+    if (n <= 0 || n > this.pagesPerHeader) {
+      throw new PageException("cannot allocate a run of " + n + " pages");
+    }
+    for (int h = this.firstNonFullHint; h < this.counts.length; h++) {
+      if (this.pagesPerHeader - this.counts[h] < n) {
+        continue;
+      }
+      long[] words = bitmap(h);
+      int start = nextClear(words, 0);
+      while (start != -1 && start + n <= this.pagesPerHeader) {
+        int end = nextSet(words, start);
+        if (end == -1) {
+          end = this.pagesPerHeader;
+        }
+        if (end - start >= n) {
+          for (int i = start; i < start + n; i++) {
+            words[i / Long.SIZE] |= 1L << (i % Long.SIZE);
+          }
+          this.counts[h] += n;
+          return h * this.pagesPerHeader + start;
+        }
+        start = nextClear(words, end);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Marks pageNum as free.
+   *
+   * @return false if pageNum was not allocated
+   */
+  boolean free(int pageNum) {
+    if (!isAllocated(pageNum)) {
+      return false;
+    }
+    int h = pageNum / this.pagesPerHeader;
+    int index = pageNum % this.pagesPerHeader;
+    this.bitmaps[h][index / Long.SIZE] &= ~(1L << (index % Long.SIZE));
+    this.counts[h]--;
+    this.firstNonFullHint = Math.min(this.firstNonFullHint, h);
+    return true;
+  }
+
+  /**
+   * @return whether pageNum is currently allocated
+   */
+  boolean isAllocated(int pageNum) {
+    if (pageNum < 0) {
+      return false;
+    }
+    int h = pageNum / this.pagesPerHeader;
+    if (h >= this.counts.length || this.counts[h] == 0) {
+      return false;
+    }
+    int index = pageNum % this.pagesPerHeader;
+    return (this.bitmaps[h][index / Long.SIZE] & (1L << (index % Long.SIZE))) != 0;
+  }
+
+  /**
+   * @return the lowest numbered allocated page at or after pageNum, or -1 if there is none
+   */
+  int nextAllocated(int pageNum) {
+    if (pageNum < 0) {
+      pageNum = 0;
+    }
+    int from = pageNum % this.pagesPerHeader;
+    for (int h = pageNum / this.pagesPerHeader; h < this.counts.length; h++) {
+      if (this.counts[h] > 0) {
+        int index = nextSet(this.bitmaps[h], from);
+        if (index != -1) {
+          return h * this.pagesPerHeader + index;
+        }
+      }
+      from = 0;
+    }
+    return -1;
+  }
+
+  /**
+   * @return the number of allocated pages tracked by header page headerIndex
+   */
+  int getCount(int headerIndex) {
+    return this.counts[headerIndex];
+  }
+
+  /**
+   * @return the index of the first clear bit at or after from, or -1 if there is none
+   */
+  private int nextClear(long[] words, int from) {
+    for (int w = from / Long.SIZE; w < this.wordsPerHeader; w++) {
+      // Treat the bits below from as set so that they are skipped.
+      long word = words[w];
+      if (w == from / Long.SIZE) {
+        word |= (1L << (from % Long.SIZE)) - 1;
+      }
+      if (word != -1L) {
+        int index = w * Long.SIZE + Long.numberOfTrailingZeros(~word);
+        return index < this.pagesPerHeader ? index : -1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the index of the first set bit at or after from, or -1 if there is none
+   */
+  private int nextSet(long[] words, int from) {
+    for (int w = from / Long.SIZE; w < this.wordsPerHeader; w++) {
+      // Treat the bits below from as clear so that they are skipped.
+      long word = words[w];
+      if (w == from / Long.SIZE) {
+        word &= -1L << (from % Long.SIZE);
+      }
+      if (word != 0) {
+        int index = w * Long.SIZE + Long.numberOfTrailingZeros(word);
+        return index < this.pagesPerHeader ? index : -1;
+      }
+    }
+    return -1;
+  }
+
+  private long[] bitmap(int headerIndex) {
+    if (this.bitmaps[headerIndex] == null) {
+      this.bitmaps[headerIndex] = new long[this.wordsPerHeader];
+    }
+    return this.bitmaps[headerIndex];
+  }
+}
@@ -0,0 +1,41 @@
+package edu.berkeley.cs186.database.io;
+
+/**
+ * How a PageAllocator gets at the bytes of its file.
+ *
+ *   - MMAP_PER_PAGE maps every page separately, with one FileChannel.map call per Page object.
+ *   - MMAP_SEGMENTS maps the file in large segments the first time any page in them is touched,
+ *     and hands out Pages that are slices of those segments. A cache miss then costs no system
+ *     call and allocates no new mapping. The file is extended to a whole number of segments
+ *     (sparsely on file systems that support it), and flushing a page forces its segment.
+ *   - PREAD does not map data pages at all. A cache miss reads the page with a positional read
+ *     into a direct buffer taken from a pool of preallocated frames, and evicting a dirty page
+ *     writes it back with a positional write before its frame is reused. Memory for data pages
+ *     is then bounded by the buffer pool's capacity rather than left to the OS page cache. See
+ *     FramedPage for how handles to evicted pages behave.
+ *   - COMPRESSED works like PREAD, except that data pages are compressed with a small LZ codec
+ *     on write-back and decompressed on a cache miss. They are packed into a file named after
+ *     the allocator's file plus ".pages" and located through a page translation table in a
+ *     file with ".ptt" appended, so only the master and header pages take space in the
+ *     allocator's file itself.
+ *   - MEMORY keeps the allocator entirely in memory, for pages that need not outlive it, such as
+ *     those of temporary tables. The master and header pages live on the heap, and data pages
+ *     work like PREAD's, except that they are written back to the heap. Only once the pages on
+ *     the heap reach PageAllocator.getMemorySpillThreshold do further pages go to the file,
+ *     which is created at that point and deleted when the allocator is closed. Nothing is ever
+ *     forced, and the allocator cannot be reopened.
+ *
+ * In every mode but MEMORY the master and header pages are mapped, since they are kept for the
+ * lifetime of the allocator. The master page records the mode the file was last opened in, which
+ * PageAllocator.getRecordedIOMode reads back. A file may be reopened in any mode that keeps data
+ * pages where it did: MMAP_PER_PAGE, MMAP_SEGMENTS and PREAD are interchangeable, while a
+ * COMPRESSED file can only be opened in COMPRESSED, and opening one in a mode of the other kind
+ * throws a PageException.
+ */
+public enum IOMode {
+  MMAP_PER_PAGE,
+  MMAP_SEGMENTS,
+  PREAD,
+  COMPRESSED,
+  MEMORY
+}
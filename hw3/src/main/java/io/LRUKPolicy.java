@@ -0,0 +1,92 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * The LRU-K replacement policy of O'Neil, O'Neil, and Weikum.
+ *
+ * The policy keeps the times of the last k references to every page, and evicts the resident
+ * page whose kth most recent reference is the oldest. Pages referenced fewer than k times count
+ * as infinitely old, and among those the least recently used one goes first, so pages touched
+ * once by a scan are evicted before pages that are referenced repeatedly. Reference histories
+ * outlive eviction for a while so that a page which comes straight back is recognized.
+ */
+class LRUKPolicy implements ReplacementPolicy {
+  private final int k;
+  private final int maxRetained;
+
+  // A logical clock, ticked on every reference.
+  private long now;
+
+  // Page number to its last k reference times, most recent first, for resident pages and for
+  // recently evicted ones. Ordered oldest first so retained histories can be trimmed.
+  private final LinkedHashMap<Long, long[]> history;
+  private final Map<Long, Frame> resident;
+
+  LRUKPolicy(int k, int capacity) {
+    this.k = k;
+    this.maxRetained = Math.max(capacity, 1);
+    this.now = 0;
+    this.history = new LinkedHashMap<Long, long[]>();
+    this.resident = new HashMap<Long, Frame>();
+  }
+
+  public synchronized void frameAdded(Frame f) {
+    this.resident.put(f.vPageNum, f);
+    reference(f.vPageNum);
+  }
+
+  public synchronized void frameAccessed(Frame f) {
+    if (this.resident.get(f.vPageNum) == f) {
+      reference(f.vPageNum);
+    }
+  }
+
+  public synchronized void frameRemoved(Frame f) {
+    this.resident.remove(f.vPageNum);
+    int retained = this.history.size() - this.resident.size();
+    if (retained > this.maxRetained) {
+      // Drop the oldest history that does not belong to a resident page.
+      for (Map.Entry<Long, long[]> e : this.history.entrySet()) {
+        if (!this.resident.containsKey(e.getKey())) {
+          this.history.remove(e.getKey());
+          break;
+        }
+      }
+    }
+  }
+
+  public synchronized Frame chooseVictim(Predicate<Frame> evictable) {
+    Frame victim = null;
+    long victimKth = Long.MAX_VALUE;
+    long victimLast = Long.MAX_VALUE;
+    for (Frame f : this.resident.values()) {
+      if (!evictable.test(f)) {
+        continue;
+      }
+      long[] times = this.history.get(f.vPageNum);
+      long kth = times[this.k - 1];
+      long last = times[0];
+      if (kth < victimKth || (kth == victimKth && last < victimLast)) {
+        victim = f;
+        victimKth = kth;
+        victimLast = last;
+      }
+    }
+    return victim;
+  }
+
+  private void reference(long vPageNum) {
+    long[] times = this.history.remove(vPageNum);
+    if (times == null) {
+      // Zero stands for "never", which sorts before every real reference time.
+      times = new long[this.k];
+    }
+    System.arraycopy(times, 0, times, 1, this.k - 1);
+    times[0] = ++this.now;
+    this.history.put(vPageNum, times);
+  }
+}
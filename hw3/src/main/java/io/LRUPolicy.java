@@ -0,0 +1,41 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.LinkedHashSet;
+import java.util.function.Predicate;
+
+/**
+ * Least-recently used replacement. Unlike CLOCK, every hit reorders the recency list, so hits
+ * synchronize on the policy.
+ */
+class LRUPolicy implements ReplacementPolicy {
+  // Ordered from least to most recently used.
+  private final LinkedHashSet<Frame> recency;
+
+  LRUPolicy() {
+    this.recency = new LinkedHashSet<Frame>();
+  }
+
+  public synchronized void frameAdded(Frame f) {
+    this.recency.add(f);
+  }
+
+  public synchronized void frameAccessed(Frame f) {
+    // A concurrent eviction may already have dropped f, in which case there is nothing to do.
+    if (this.recency.remove(f)) {
+      this.recency.add(f);
+    }
+  }
+
+  public synchronized void frameRemoved(Frame f) {
+    this.recency.remove(f);
+  }
+
+  public synchronized Frame chooseVictim(Predicate<Frame> evictable) {
+    for (Frame f : this.recency) {
+      if (evictable.test(f)) {
+        return f;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,179 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.Arrays;
+
+/**
+ * A small LZ77 codec, in the style of LZ4, for compressing single pages.
+ *
+ * The compressed form is a series of sequences. Each starts with a token byte whose high nibble
+ * is the number of literal bytes that follow and whose low nibble is the length of the match
+ * after them minus minMatch. A nibble of 15 means the length continues in the bytes after the
+ * token (for the literal length) or after the offset (for the match length), each adding up to
+ * 255, with a byte below 255 ending it. The literals come next, and then, unless the input ends
+ * right after them, the offset of the match back into the output, as two little-endian bytes.
+ * The last sequence is thus literals only.
+ *
+ * Runs of padding and the zeroed tails of sparsely filled pages compress to a few bytes.
+ */
+final class LZPageCodec {
+  private static final int minMatch = 4;
+  private static final int hashBits = 12;
+  private static final int maxOffset = 0xFFFF;
+
+  private LZPageCodec() {
+  }
+
+  /**
+   * Compresses the first srcLen bytes of src into dst.
+   *
+   * @return the compressed length, or -1 if it would not fit in dst
+   */
+  static int compress(byte[] src, int srcLen, byte[] dst) {
+    // The position of the last occurrence of every (hashed) 4-byte sequence.
+    int[] table = new int[1 << hashBits];
+    Arrays.fill(table, -1);
+
+    int anchor = 0;
+    int out = 0;
+    int i = 0;
+    while (i + minMatch <= srcLen) {
+      int seq = readInt(src, i);
+      int h = (seq * -1640531535) >>> (Integer.SIZE - hashBits);
+      int ref = table[h];
+      table[h] = i;
+      if (ref < 0 || i - ref > maxOffset || readInt(src, ref) != seq) {
+        i++;
+        continue;
+      }
+      int matchLen = minMatch;
+      while (i + matchLen < srcLen && src[ref + matchLen] == src[i + matchLen]) {
+        matchLen++;
+      }
+      out = writeSequence(src, anchor, i - anchor, i - ref, matchLen, dst, out);
+      if (out < 0) {
+        return -1;
+      }
+      i += matchLen;
+      anchor = i;
+    }
+    return writeSequence(src, anchor, srcLen - anchor, 0, 0, dst, out);
+  }
+
+  /**
+   * Decompresses the first srcLen bytes of src, which must decompress to exactly dstLen bytes,
+   * into dst.
+   */
+  static void decompress(byte[] src, int srcLen, byte[] dst, int dstLen) {
+    int in = 0;
+    int out = 0;
+    while (true) {
+      if (in >= srcLen) {
+        throw new PageException("corrupt compressed page: truncated");
+      }
+      int token = src[in++] & 0xFF;
+
+      int litLen = token >>> 4;
+      if (litLen == 15) {
+        int b;
+        do {
+          if (in >= srcLen) {
+            throw new PageException("corrupt compressed page: truncated");
+          }
+          b = src[in++] & 0xFF;
+          litLen += b;
+        } while (b == 255);
+      }
+      if (in + litLen > srcLen || out + litLen > dstLen) {
+        throw new PageException("corrupt compressed page: literals out of bounds");
+      }
+      System.arraycopy(src, in, dst, out, litLen);
+      in += litLen;
+      out += litLen;
+      if (in == srcLen) {
+        break;
+      }
+
+      if (in + 2 > srcLen) {
+        throw new PageException("corrupt compressed page: truncated");
+      }
+      int offset = (src[in] & 0xFF) | ((src[in + 1] & 0xFF) << 8);
+      in += 2;
+      int matchLen = token & 0xF;
+      if (matchLen == 15) {
+        int b;
+        do {
+          if (in >= srcLen) {
+            throw new PageException("corrupt compressed page: truncated");
+          }
+          b = src[in++] & 0xFF;
+          matchLen += b;
+        } while (b == 255);
+      }
+      matchLen += minMatch;
+      if (offset == 0 || offset > out || out + matchLen > dstLen) {
+        throw new PageException("corrupt compressed page: match out of bounds");
+      }
+      // Byte by byte, since a match may overlap the bytes it produces.
+      for (int k = 0; k < matchLen; k++, out++) {
+        dst[out] = dst[out - offset];
+      }
+    }
+    if (out != dstLen) {
+      throw new PageException("corrupt compressed page: decompressed to " + out + " bytes");
+    }
+  }
+
+  /**
+   * Writes a sequence of litLen literals starting at src[litStart] followed by a match of
+   * matchLen bytes at distance offset, or by nothing if matchLen is 0.
+   *
+   * @return the new end of the output, or -1 if the sequence does not fit in dst
+   */
+  private static int writeSequence(byte[] src, int litStart, int litLen, int offset,
+                                   int matchLen, byte[] dst, int out) {
+    int matchCode = matchLen - minMatch;
+    int maxSize = 1 + litLen / 255 + 1 + litLen;
+    if (matchLen > 0) {
+      maxSize += 2 + matchCode / 255 + 1;
+    }
+    if (out + maxSize > dst.length) {
+      return -1;
+    }
+
+    int token = Math.min(litLen, 15) << 4;
+    if (matchLen > 0) {
+      token |= Math.min(matchCode, 15);
+    }
+    dst[out++] = (byte) token;
+    out = writeLength(litLen, dst, out);
+    System.arraycopy(src, litStart, dst, out, litLen);
+    out += litLen;
+    if (matchLen > 0) {
+      dst[out++] = (byte) offset;
+      dst[out++] = (byte) (offset >>> 8);
+      out = writeLength(matchCode, dst, out);
+    }
+    return out;
+  }
+
+  /**
+   * Writes the continuation bytes of a length whose nibble in the token is 15.
+   */
+  private static int writeLength(int length, byte[] dst, int out) {
+    if (length < 15) {
+      return out;
+    }
+    length -= 15;
+    while (length >= 255) {
+      dst[out++] = (byte) 255;
+      length -= 255;
+    }
+    dst[out++] = (byte) length;
+    return out;
+  }
+
+  private static int readInt(byte[] b, int i) {
+    return (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8) | ((b[i + 2] & 0xFF) << 16)
+           | ((b[i + 3] & 0xFF) << 24);
+  }
+}
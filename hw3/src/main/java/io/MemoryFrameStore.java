@@ -0,0 +1,101 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps pages on the heap, for allocators whose pages need not outlive them. This is the store of
+ * IOMode.MEMORY. Once the pages kept on the heap reach the spill threshold, pages that are not on
+ * the heap yet are written to a spill file instead, laid out as in IOMode.PREAD. The spill file
+ * is only created when the first page spills, and is deleted when the store is closed.
+ */
+class MemoryFrameStore implements FrameStore {
+  private final String fName;
+  private final int pageSize;
+  private final int maxHeapPages;
+  private final Map<Integer, byte[]> heapPages;
+  // The spill file, once a page has spilled.
+  private FileChannel spillChannel;
+  private PositionalFrameStore spill;
+
+  /**
+   * @param fName the name of the spill file
+   * @param pageSize the size of the allocator's pages
+   * @param spillThreshold the number of bytes of pages to keep on the heap before spilling
+   */
+  MemoryFrameStore(String fName, int pageSize, long spillThreshold) {
+    this.fName = fName;
+    this.pageSize = pageSize;
+    this.maxHeapPages = (int) Math.min(spillThreshold / pageSize, Integer.MAX_VALUE);
+    this.heapPages = new HashMap<Integer, byte[]>();
+    this.spillChannel = null;
+    this.spill = null;
+  }
+
+  public synchronized void read(int blockNum, ByteBuffer frame) throws IOException {
+    byte[] page = this.heapPages.get(blockNum);
+    if (page != null) {
+      frame.clear();
+      frame.put(page);
+      frame.clear();
+    } else if (this.spill != null) {
+      this.spill.read(blockNum, frame);
+    } else {
+      // Never written, which reads as zeros.
+      frame.clear();
+      frame.put(new byte[this.pageSize]);
+      frame.clear();
+    }
+  }
+
+  public synchronized void write(int blockNum, ByteBuffer frame) throws IOException {
+    byte[] page = this.heapPages.get(blockNum);
+    if (page == null && this.heapPages.size() >= this.maxHeapPages) {
+      getSpill().write(blockNum, frame);
+      return;
+    }
+    if (page == null) {
+      page = new byte[this.pageSize];
+      this.heapPages.put(blockNum, page);
+    }
+    ByteBuffer src = frame.duplicate();
+    src.clear();
+    src.get(page);
+  }
+
+  public synchronized void zero(int firstBlockNum, int n) throws IOException {
+    for (int i = 0; i < n; i++) {
+      this.heapPages.remove(firstBlockNum + i);
+    }
+    if (this.spill != null) {
+      this.spill.zero(firstBlockNum, n);
+    }
+  }
+
+  public void force() {
+    // Nothing here is meant to survive the allocator.
+  }
+
+  public synchronized void close() throws IOException {
+    this.heapPages.clear();
+    if (this.spillChannel != null) {
+      this.spillChannel.close();
+      this.spillChannel = null;
+      this.spill = null;
+      new File(this.fName).delete();
+    }
+  }
+
+  private PositionalFrameStore getSpill() throws IOException {
+    if (this.spill == null) {
+      this.spillChannel = new RandomAccessFile(this.fName, "rw").getChannel();
+      this.spill = new PositionalFrameStore(this.spillChannel, this.pageSize);
+    }
+    return this.spill;
+  }
+}
@@ -4,18 +4,53 @@ import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * General-purpose wrapper for interacting with the memory-mapped bytes on a page.
  *
- * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ * A page tracks whether it has been modified since it was last flushed, and flush only forces
+ * modified pages to disk. Writes through the write methods below and through getByteBuffer mark
+ * the page dirty; reads should go through getReadOnlyByteBuffer so that they do not. The write
+ * methods mark the page once the bytes are written, so that a concurrent write-back that cleans
+ * the page halfway through cannot lose the write. getByteBuffer can only mark the page before
+ * the caller writes, so callers that write through it should pin the page and unpin it with
+ * PageAllocator#unpinPage(p, true) when they are done. A page also carries a pin count, and the
+ * buffer pool never evicts a pinned page.
+ *
+ * Every accessor takes an absolute offset into the page and never moves a position that another
+ * thread could see: getByteBuffer and getReadOnlyByteBuffer return views with a position of their
+ * own, and the read and write methods work on views of their own. Threads can therefore use the
+ * same page at once, as long as they latch it: a reader holds the page's latch in shared mode
+ * (latchShared) and a writer in exclusive mode (latchExclusive) while they touch the page. Latches
+ * are short-term and do not keep the page in the buffer pool; pin the page for that. Pages of an
+ * allocator may share latches, so a thread should not latch a second page while it holds one.
  */
 public class Page {
+  // The size of the master page, and of every other page of a file unless the file was created
+  // with a different page size (see PageAllocator).
   public static final int pageSize = 4096;
 
-  private MappedByteBuffer pageData;
+  // Package-private so that FramedPage can swap the buffer out from under the accessors below.
+  ByteBuffer pageData;
+  // The mapping that pageData lives in, which is what gets forced to disk on flush. This is
+  // pageData itself unless the page is a slice of a larger mapping.
+  private MappedByteBuffer mapping;
   private int pageNum;
-  private boolean durable;
+  private final int size;
+  final boolean durable;
+  volatile boolean dirty;
+  private final AtomicInteger pinCount;
+  // The metrics of the allocator the page belongs to, if any.
+  PageAllocatorMetrics metrics;
+  // Set by the allocator the page belongs to, so that every Page object for a page number shares
+  // one latch, even once the page has been evicted and brought back in as a new object.
+  volatile ReadWriteLock latch;
+
+  // Written by load so that its reads cannot be optimized away.
+  private static volatile byte loadSink;
 
   /**
    * Create a new page using fc with at offset blockNum with virtual page number pageNum
@@ -29,19 +64,91 @@ public class Page {
   }
 
   public Page(FileChannel fc, int blockNum, int pageNum, boolean durable) {
+    this(fc, blockNum, pageNum, durable, Page.pageSize);
+  }
+
+  /**
+   * Create a new page of size bytes using fc at offset blockNum, where blocks are size bytes
+   * long, with virtual page number pageNum.
+   *
+   * @param fc the file channel for this Page
+   * @param blockNum the block in the file for this page
+   * @param pageNum the virtual page number
+   * @param durable whether flush should force the page to disk
+   * @param size the size of the page in bytes
+   */
+  public Page(FileChannel fc, int blockNum, int pageNum, boolean durable, int size) {
     this.pageNum = pageNum;
+    this.size = size;
     this.durable = durable;
+    this.dirty = false;
+    this.pinCount = new AtomicInteger(0);
     PageAllocator.incrementCacheMisses();
     try {
-      this.pageData = fc.map(FileChannel.MapMode.READ_WRITE, blockNum*Page.pageSize, Page.pageSize);
+      this.mapping = fc.map(FileChannel.MapMode.READ_WRITE, (long) blockNum * size, size);
+      this.pageData = this.mapping;
     } catch (IOException e) {
       throw new PageException("Can't mmap page: " + pageNum + "at block: " + blockNum + " ; " + e.getMessage());
     }
   }
 
+  /**
+   * Create a new page over pageData, a page-sized slice of the already established mapping
+   * mapping, with virtual page number pageNum.
+   *
+   * @param pageData the bytes of this page
+   * @param mapping the mapping pageData was sliced from
+   * @param pageNum the virtual page number
+   * @param durable whether flush should force the page to disk
+   */
+  Page(ByteBuffer pageData, MappedByteBuffer mapping, int pageNum, boolean durable) {
+    this.pageNum = pageNum;
+    this.size = pageData.capacity();
+    this.durable = durable;
+    this.dirty = false;
+    this.pinCount = new AtomicInteger(0);
+    PageAllocator.incrementCacheMisses();
+    this.pageData = pageData;
+    this.mapping = mapping;
+  }
+
+  /**
+   * Create a new page of size bytes with virtual page number pageNum whose bytes are supplied by
+   * a subclass.
+   */
+  Page(int pageNum, boolean durable, int size) {
+    this.pageNum = pageNum;
+    this.size = size;
+    this.durable = durable;
+    this.dirty = false;
+    this.pinCount = new AtomicInteger(0);
+    this.pageData = null;
+    this.mapping = null;
+  }
+
+  /**
+   * Returns the page's buffer, positioned at the start of the page, for reading and writing.
+   * Since anything may be written through it, the page is marked dirty.
+   *
+   * @return the page's buffer
+   */
   public ByteBuffer getByteBuffer() {
-    pageData.position(0);
-    return pageData;
+    this.dirty = true;
+    ByteBuffer view = pageData.duplicate();
+    view.position(0);
+    return view;
+  }
+
+  /**
+   * Returns a read-only view of the page's bytes, positioned at the start of the page. The view
+   * has its own position, and reading through it does not mark the page dirty.
+   *
+   * @return a read-only view of the page's buffer
+   */
+  public ByteBuffer getReadOnlyByteBuffer() {
+    ByteBuffer view = pageData.asReadOnlyBuffer();
+    view.position(0);
+    return view;
   }
 
   /**
@@ -52,14 +159,15 @@ public class Page {
    * @param buf the buffer to put the bytes into
    */
   public void readBytes(int position, int num, byte[] buf) {
-    if (Page.pageSize < position + num) {
+    if (this.size < position + num) {
       throw new PageException("readBytes is out of bounds");
     }
     if (buf.length < num) {
       throw new PageException("num bytes to read is longer than buffer");
     }
-    pageData.position(position);
-    pageData.get(buf, 0, num);
+    ByteBuffer view = pageData.duplicate();
+    view.position(position);
+    view.get(buf, 0, num);
   }
 
   /**
@@ -70,7 +178,7 @@ public class Page {
    * @return a new byte array with the bytes read
    */
   public byte[] readBytes(int position, int num) {
-    if (Page.pageSize < position + num) {
+    if (this.size < position + num) {
       throw new PageException("readBytes is out of bounds");
     }
     byte[] data = new byte[num];
@@ -84,7 +192,7 @@ public class Page {
    * @return a new byte array with all the bytes in the file
    */
   public byte[] readBytes() {
-    return readBytes(0, Page.pageSize);
+    return readBytes(0, this.size);
   }
 
   /**
@@ -94,7 +202,7 @@ public class Page {
    * @return the byte at offset position
    */
   public byte readByte(int position) {
-    if (position < 0 || position >= Page.pageSize) {
+    if (position < 0 || position >= this.size) {
       throw new PageException("readByte is out of bounds of page");
     }
     return pageData.get(position);
@@ -116,12 +224,14 @@ public class Page {
       throw new PageException("position or num can't be negative");
     }
 
-    if (Page.pageSize < num + position) {
+    if (this.size < num + position) {
       throw new PageException("writeBytes would go out of bounds");
     }
 
-    pageData.position(position);
-    pageData.put(buf, 0, num);
+    ByteBuffer view = pageData.duplicate();
+    view.position(position);
+    view.put(buf, 0, num);
+    this.dirty = true;
   }
 
   /**
@@ -131,10 +241,11 @@ public class Page {
    * @param b the byte to write
    */
   public void writeByte(int position, byte b) {
-    if (position < 0 || position >= Page.pageSize) {
+    if (position < 0 || position >= this.size) {
       throw new PageException("readByte is out of bounds of page");
     }
     pageData.put(position, b);
+    this.dirty = true;
   }
 
   /**
@@ -161,18 +272,163 @@ public class Page {
    * Completely wipe (zero out) the page.
    */
   public void wipe() {
-    byte[] zeros = new byte[Page.pageSize];
-    this.writeBytes(0, Page.pageSize, zeros);
+    byte[] zeros = new byte[this.size];
+    this.writeBytes(0, this.size, zeros);
   }
 
   /**
-   * Force the page to disk.
+   * Force the page to disk if it has been modified since it was last flushed.
    */
   public void flush() {
-    if (this.durable) {
+    if (this.durable && this.dirty) {
+      // Clear the flag first so that a write racing with the force is not forgotten.
+      this.dirty = false;
       PageAllocator.incrementCacheMisses();
-      this.pageData.force();
+      long start = System.nanoTime();
+      this.mapping.force();
+      if (this.metrics != null) {
+        this.metrics.recordFlush(start);
+      }
+    }
+  }
+
+  /**
+   * Marks the page clean and returns whether it was dirty, without forcing it to disk. The bytes
+   * of a mapped page are already in the mapping returned by getMapping, which the caller forces
+   * to make them durable. Used by the background writer, which forces the pages it cleans in
+   * batches (see PageAllocator#writeDirtyPages).
+   */
+  boolean writeBackUnforced() {
+    if (!this.dirty) {
+      return false;
+    }
+    this.dirty = false;
+    return true;
+  }
+
+  /**
+   * @return the mapping that holds the page's bytes, or null if the page is not mapped
+   */
+  MappedByteBuffer getMapping() {
+    return this.mapping;
+  }
+
+  /**
+   * Faults the page's bytes into memory, so that the next access to the page does not wait on
+   * the disk. Used by read-ahead.
+   */
+  void load() {
+    // Touch one byte of every OS page the page spans. Page.pageSize is a lower bound on the OS
+    // page size, and a page of the default size is exactly one OS page.
+    for (int i = 0; i < this.size; i += Page.pageSize) {
+      loadSink = this.pageData.get(i);
+    }
+  }
+
+  /**
+   * Gives up whatever memory holds the page's bytes, once the buffer pool has evicted the page.
+   * Mapped pages have nothing to give up: their bytes stay reachable through the mapping.
+   */
+  void release() {
+  }
+
+  /**
+   * Latches the page in shared mode, waiting while another thread holds it in exclusive mode.
+   * Shared latches may be taken by a thread that holds the page exclusively, but not the other
+   * way around.
+   */
+  public void latchShared() {
+    latch().readLock().lock();
+  }
+
+  /**
+   * Latches the page in shared mode unless another thread holds it in exclusive mode.
+   *
+   * @return whether the latch was taken
+   */
+  boolean tryLatchShared() {
+    return latch().readLock().tryLock();
+  }
+
+  /**
+   * Releases a latch taken with latchShared or tryLatchShared.
+   */
+  public void unlatchShared() {
+    latch().readLock().unlock();
+  }
+
+  /**
+   * Latches the page in exclusive mode, waiting while any other thread holds it.
+   */
+  public void latchExclusive() {
+    latch().writeLock().lock();
+  }
+
+  /**
+   * Releases a latch taken with latchExclusive.
+   */
+  public void unlatchExclusive() {
+    latch().writeLock().unlock();
+  }
+
+  private ReadWriteLock latch() {
+    ReadWriteLock l = this.latch;
+    if (l == null) {
+      // A page that was not created by an allocator gets a latch of its own.
+      synchronized (this) {
+        if (this.latch == null) {
+          this.latch = new ReentrantReadWriteLock();
+        }
+        l = this.latch;
+      }
     }
+    return l;
+  }
+
+  /**
+   * @return whether the page has been modified since it was last flushed
+   */
+  public boolean isDirty() {
+    return this.dirty;
+  }
+
+  /**
+   * Marks the page as modified, for callers that wrote to it through a buffer obtained earlier.
+   */
+  public void markDirty() {
+    this.dirty = true;
+  }
+
+  /**
+   * Pins the page, preventing the buffer pool from evicting it until it is unpinned. Pins nest:
+   * a page pinned twice must be unpinned twice.
+   */
+  public void pin() {
+    this.pinCount.incrementAndGet();
+  }
+
+  /**
+   * Releases one pin on the page.
+   */
+  public void unpin() {
+    if (this.pinCount.decrementAndGet() < 0) {
+      this.pinCount.incrementAndGet();
+      throw new PageException("unpin of page " + pageNum + " which is not pinned");
+    }
+  }
+
+  /**
+   * @return whether the page is pinned
+   */
+  public boolean isPinned() {
+    return this.pinCount.get() > 0;
+  }
+
+  /**
+   * @return the size of this page in bytes
+   */
+  public int getSize() {
+    return this.size;
   }
 
   /**
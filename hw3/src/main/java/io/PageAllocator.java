@@ -1,47 +1,180 @@
 package edu.berkeley.cs186.database.io;
 
+import java.io.File;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.nio.ByteOrder;
-import java.util.LinkedHashMap;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.lang.IllegalArgumentException;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.NoSuchElementException;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Set;
+import java.util.Map;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
 
 /**
- * A PageAllocation system for an OS paging system. Provides memory-mapped paging from the OS, an
- * interface to individual pages with the Page objects, an LRU cache for pages, 16GB worth of paging,
- * and virtual page translation.
+ * A PageAllocation system for an OS paging system. Provides paging of a file through the OS, an
+ * interface to individual pages with the Page objects, a buffer pool for pages shared by every
+ * allocator, and virtual page translation.
  *
- * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ * An allocator gets at the bytes of its file in one of the ways listed in IOMode, chosen when it
+ * is created (MMAP_PER_PAGE by default): by mapping each page or large segments of the file, by
+ * positional reads and writes into frames of its own, with those frames compressed, or on the
+ * heap for pages that need not outlive it. The choice only changes how pages are read and
+ * written back, not what the rest of this class does with them.
+ *
+ * A page returned by fetchPage may be evicted from the buffer pool at any time. A caller that
+ * holds on to a page, or writes to it through its ByteBuffer, should pin it with pinPage and
+ * release it with unpinPage, which keeps it resident in between.
+ * Pins are about residency; threads that use the same page at once also latch it (see Page).
+ * freePage drops a page from the pool even if it is pinned, so a page must not be used once it
+ * has been freed.
+ *
+ * Every file has a page size, chosen when the file is created or wiped (Page.pageSize unless
+ * given) and recorded in the file's master page, so that a file is always reopened with the size
+ * it was written with. The master page itself is always Page.pageSize bytes. Each header page is
+ * one page and tracks one data page per byte, so a file holds up to numHeaderPages times pageSize
+ * pages: 14 GB of 4 KB pages, or 3.5 TB of 64 KB pages. Buffer pool capacities and quotas are
+ * counted in pages whatever their size.
+ *
+ * An allocator whose file is full spills over into further segment files, which are created on
+ * demand, either next to the file or in the directories given to setSegmentDirectories, for
+ * instance to spread a large table over several disks. The paths of the segment files are kept
+ * in a segment directory in the master page of the allocator's file, so reopening the file finds
+ * them all. Every segment file is laid out like the allocator's file, with a master page and
+ * header pages of its own, and page number p lives in segment file p / (numHeaderPages *
+ * pageSize), where the allocator's own file is segment file 0.
+ *
+ * There is one buffer pool per EvictionPolicy, holding up to cacheSize pages, and every allocator
+ * caches its pages in the pool of the policy it was created with (CLOCK by default). Within a
+ * pool, every allocator's pages count against the quota of its AllocatorClass (BASE_TABLE by
+ * default), so that temporary tables cannot crowd base tables and indices out of the pool.
+ *
+ * A durable allocator normally forces the master page and a header page to disk on every
+ * allocPage and freePage. With group commit enabled (see setGroupCommitInterval), those changes
+ * are only made in memory and are forced together by sync(), which runs on a background thread
+ * at the configured interval and which callers can invoke as a barrier, e.g. at transaction
+ * commit.
+ *
+ * Besides the JVM-wide counters (getNumIOs and getNumCacheMisses), every allocator keeps its own
+ * PageAllocatorMetrics, which the owner of the allocator can publish over JMX with
+ * registerMetrics so that I/O can be attributed to individual tables and indices.
+ *
+ * Dirty data pages are normally written back when the buffer pool evicts them or the allocator is
+ * closed, in whichever thread caused that. With the background writer enabled (see
+ * setBackgroundWriteInterval), a background thread instead trickles them to disk at a fixed
+ * interval, so that evictions and close mostly find clean pages.
+ *
+ * A page iterator can read ahead: while pages are being consumed in order, a background thread
+ * brings the next few pages into the buffer pool and faults their bytes in, so that a scan
+ * overlaps its disk reads with its processing. Read-ahead is off unless asked for with
+ * iterator(int), since it only pays for a scan of a file that is not in the OS page cache
+ * already, and it takes up buffer pool frames ahead of time. A bulk scan can instead keep the
+ * pages it brings in out of the pool altogether (see AccessStrategy).
+ *
+ * With warm restart enabled (see setWarmRestart), close records which of the allocator's pages
+ * are in the buffer pool in a hot page manifest next to the file. The next time the file is
+ * opened, the read-ahead thread brings those pages back in file order, so that the pool warms up
+ * within moments of a restart rather than one miss at a time. The manifest is only a hint: it is
+ * consumed when the file is opened, and pages freed since are skipped.
  */
 public class PageAllocator implements Iterable<Page>, Closeable {
-  private static final int numHeaderPages = 1024;
+  // The master page holds the page counts of numHeaderPages header pages, then the segment
+  // directory, then the IOMode the file was written in, then layoutMarker, and in its last 4 bytes
+  // the page size. Files from before page sizes were recorded have a 0 there, and 4 KB pages, and
+  // files from before IOModes were recorded have a 0 in place of the mode (see recordedIOMode).
+  // Files from before the marker was written may have counts of further header pages where the
+  // directory and the marker are now (see checkLayout).
+  private static final int numHeaderPages = 896;
+  private static final int directoryOffset = numHeaderPages * 4;
+  private static final int pageSizeOffset = Page.pageSize - 4;
+  private static final int layoutOffset = pageSizeOffset - 4;
+  private static final int ioModeOffset = layoutOffset - 4;
+  private static final int directoryCapacity = ioModeOffset - directoryOffset;
+  private static final int layoutMarker = 0x4c41594f;
+  private static final int maxPageSize = 64 * 1024;
   private static final int cacheSize = 1024;
+  private static final int numPoolPartitions = 16;
+  private static final int segmentSize = 64 * 1024 * 1024;
+  private static final int numPageLatches = 4096;
+  private static final int ringSize = 32;
+  private static final String hotPagesExtension = ".hot";
+  private static final long defaultMemorySpillThreshold = 64L * 1024 * 1024;
 
   private static AtomicInteger pACounter = new AtomicInteger(0);
-  private static LRUCache<Long, Page> pageLRU = new LRUCache<Long, Page>(cacheSize);
+  private static Map<EvictionPolicy, BufferPool> pagePools =
+    new EnumMap<EvictionPolicy, BufferPool>(EvictionPolicy.class);
   private static AtomicLong numIOs = new AtomicLong(0);
   private static AtomicLong cacheMisses = new AtomicLong(0);
-
+  private static ScheduledExecutorService groupCommitter = null;
+  private static ScheduledExecutorService backgroundWriter = null;
+  private static Map<AllocatorClass, Integer> poolQuotas =
+    new EnumMap<AllocatorClass, Integer>(AllocatorClass.class);
+  private static ExecutorService readAheadExecutor = null;
+  private static Map<Integer, FramePool> framePools = new HashMap<Integer, FramePool>();
+  private static long memorySpillThreshold = defaultMemorySpillThreshold;
+  // Page latches, striped over every page of every allocator (see latchFor).
+  private static final ReadWriteLock[] pageLatches = newPageLatches();
+
+  private final String fName;
+  // The master page of segment file 0, which holds the segment directory. Null once the allocator
+  // is closed.
   private Page masterPage;
-  private FileChannel fc;
-  private int numPages;
-  private int allocID;
+  private volatile int numPages;
+  private final int allocID;
+  private final int pageSize;
+  private final int blocksPerSegment;
+  private final int pagesPerFile;
   private boolean durable;
+  private final BufferPool pagePool;
+  private final IOMode ioMode;
+  private final AllocatorClass allocClass;
+  private final PageAllocatorMetrics metrics;
+  private ObjectName metricsName;
+  private final List<SegmentFile> files;
+  // Guards the free page indexes of the segment files and the list of segment files. They only
+  // change with the allocator's monitor held as well, but page iterators read them under the read
+  // lock alone, so that concurrent scans do not serialize on the monitor.
+  private final ReadWriteLock indexLock;
+  private final List<String> segmentDirectories;
+  // The one FramedPage handed out per page number in the modes that do not map data pages.
+  private final Map<Integer, FramedPage> framedPages;
+  private long groupCommitMillis;
+  private ScheduledFuture<?> groupCommitTask;
+  private long backgroundWriteMillis;
+  private ScheduledFuture<?> backgroundWriteTask;
+  private boolean warmRestart;
+
   /**
    * Create a new PageAllocator that writes its bytes into a file named fName. If wipe is true, the
    * data in the page is completely removed.
@@ -54,152 +187,654 @@ public class PageAllocator implements Iterable<Page>, Closeable {
   }
 
   public PageAllocator(String fName, boolean wipe, boolean durable) {
-    this.durable = durable;
-    try {
-      this.fc = new RandomAccessFile(fName, "rw").getChannel();
-    } catch (IOException e) {
-      throw new PageException("Could not open File: " + e.getMessage());
-    }
+    this(fName, wipe, durable, EvictionPolicy.CLOCK);
+  }
 
-    this.masterPage = new Page(this.fc, 0, -1);
-    this.allocID = pACounter.getAndIncrement();
+  /**
+   * Create a new PageAllocator whose pages are cached in the buffer pool governed by policy.
+   *
+   * @param fName the name of the file for this PageAllocator
+   * @param wipe a boolean specifying whether to wipe the file
+   * @param durable whether writes should be forced to disk
+   * @param policy the replacement policy of the buffer pool to cache pages in
+   */
+  public PageAllocator(String fName, boolean wipe, boolean durable, EvictionPolicy policy) {
+    this(fName, wipe, durable, policy, IOMode.MMAP_PER_PAGE);
+  }
 
-    if (wipe) {
-      // Nukes masterPage and headerPages
-      byte[] masterBytes = this.masterPage.readBytes();
-      IntBuffer ib = ByteBuffer.wrap(masterBytes).asIntBuffer();
+  /**
+   * Create a new PageAllocator that accesses its file through ioMode.
+   *
+   * @param fName the name of the file for this PageAllocator
+   * @param wipe a boolean specifying whether to wipe the file
+   * @param durable whether writes should be forced to disk
+   * @param policy the replacement policy of the buffer pool to cache pages in
+   * @param ioMode how pages of the file are mapped into memory
+   */
+  public PageAllocator(String fName, boolean wipe, boolean durable, EvictionPolicy policy,
+                       IOMode ioMode) {
+    this(fName, wipe, durable, policy, ioMode, AllocatorClass.BASE_TABLE);
+  }
 
-      int[] pageCounts = new int[ib.capacity()];
-      ib.get(pageCounts);
+  /**
+   * Create a new PageAllocator whose pages count against the buffer pool quota of allocClass.
+   *
+   * @param fName the name of the file for this PageAllocator
+   * @param wipe a boolean specifying whether to wipe the file
+   * @param durable whether writes should be forced to disk
+   * @param policy the replacement policy of the buffer pool to cache pages in
+   * @param ioMode how pages of the file are mapped into memory
+   * @param allocClass what the allocator stores
+   */
+  public PageAllocator(String fName, boolean wipe, boolean durable, EvictionPolicy policy,
+                       IOMode ioMode, AllocatorClass allocClass) {
+    this(fName, wipe, durable, policy, ioMode, allocClass, Page.pageSize);
+  }
 
-      this.numPages = 0;
+  /**
+   * Create a new PageAllocator with pages of pageSize bytes. The page size only applies if the
+   * file is wiped or has never held a page; otherwise the file keeps the page size recorded in
+   * its master page, which getPageSize returns.
+   *
+   * @param fName the name of the file for this PageAllocator
+   * @param wipe a boolean specifying whether to wipe the file
+   * @param durable whether writes should be forced to disk
+   * @param policy the replacement policy of the buffer pool to cache pages in
+   * @param ioMode how pages of the file are mapped into memory
+   * @param allocClass what the allocator stores
+   * @param pageSize the page size in bytes: a power of two from Page.pageSize to 64 KB
+   */
+  public PageAllocator(String fName, boolean wipe, boolean durable, EvictionPolicy policy,
+                       IOMode ioMode, AllocatorClass allocClass, int pageSize) {
+    if (!isValidPageSize(pageSize)) {
+      throw new IllegalArgumentException("pageSize must be a power of two between "
+                                         + Page.pageSize + " and " + maxPageSize);
+    }
+    this.fName = fName;
+    // Nothing of an allocator in memory is meant to reach the disk.
+    this.durable = durable && ioMode != IOMode.MEMORY;
+    this.pagePool = getPagePool(policy);
+    this.ioMode = ioMode;
+    this.allocClass = allocClass;
+    this.metrics = new PageAllocatorMetrics();
+    this.metricsName = null;
+    this.files = new ArrayList<SegmentFile>();
+    this.indexLock = new ReentrantReadWriteLock();
+    this.segmentDirectories = new ArrayList<String>();
+    this.framedPages = new HashMap<Integer, FramedPage>();
+    this.groupCommitMillis = 0;
+    this.groupCommitTask = null;
+    this.backgroundWriteMillis = 0;
+    this.backgroundWriteTask = null;
+    this.warmRestart = false;
+    FileChannel fc = openChannel(fName);
+
+    this.masterPage = newMetadataPage(fc, 0, Page.pageSize);
+    this.allocID = pACounter.getAndIncrement();
 
+    if (wipe) {
+      // Nukes masterPage and headerPages, which are laid out according to the page size the file
+      // had until now, and the segment files altogether.
+      int[] pageCounts = readMasterInts(this.masterPage);
+      int oldPageSize = recordedPageSize(pageCounts);
       for (int i = 0; i < numHeaderPages; i++) {
         if (pageCounts[i] > 0) {
-          getHeadPage(i).wipe();
+          int headBlockID = 1 + i*(oldPageSize + 1);
+          newMetadataPage(fc, headBlockID, oldPageSize).wipe();
+        }
+      }
+      // A file without the layout marker has no segment directory.
+      if (pageCounts[layoutOffset / 4] == layoutMarker) {
+        for (String path : readDirectory(this.masterPage)) {
+          deleteSegmentFile(path);
         }
       }
 
       this.masterPage.wipe();
     }
+    checkLayout(this.masterPage, this.durable);
+    checkIOMode();
+
+    int[] pageCounts = readMasterInts(this.masterPage);
+    if (pageCounts[pageSizeOffset / 4] != 0 || hasPages(pageCounts)) {
+      this.pageSize = recordedPageSize(pageCounts);
+    } else {
+      this.pageSize = pageSize;
+      this.masterPage.writeInt(pageSizeOffset, pageSize);
+      if (durable) {
+        this.masterPage.flush();
+      }
+    }
+    this.blocksPerSegment = segmentSize / this.pageSize;
+    this.pagesPerFile = numHeaderPages * this.pageSize;
 
-    byte[] masterBytes = masterPage.readBytes();
-    IntBuffer ib = ByteBuffer.wrap(masterBytes).asIntBuffer();
-    int[] pageCounts = new int[ib.capacity()];
-    ib.get(pageCounts);
+    this.files.add(new SegmentFile(fName, fc, this.masterPage, wipe));
+    for (String path : readDirectory(this.masterPage)) {
+      this.files.add(openSegmentFile(path));
+    }
 
     this.numPages = 0;
-    for (int i = 0; i < numHeaderPages; i++) {
-      this.numPages += pageCounts[i];
+    for (SegmentFile file : this.files) {
+      this.numPages += file.getNumPages();
     }
+
+    preloadHotPages(wipe);
   }
 
   /**
-   * Allocates a new page in the file.
-   *
-   * @return the virtual page number of the page
+   * @return the ints of masterPage: the page counts of the header pages, followed by the segment
+   * directory and the recorded page size
    */
-  public synchronized int allocPage() {
-    byte[] masterBytes = this.masterPage.readBytes();
-    IntBuffer ib = ByteBuffer.wrap(masterBytes).asIntBuffer();
+  private static int[] readMasterInts(Page masterPage) {
+    IntBuffer ib = ByteBuffer.wrap(masterPage.readBytes()).asIntBuffer();
     int[] pageCounts = new int[ib.capacity()];
     ib.get(pageCounts);
+    return pageCounts;
+  }
 
-    Page headerPage = null;
-    int headerIndex = -1;
-    for (int i = 0; i < numHeaderPages; i++) {
-      if (pageCounts[i] < Page.pageSize) {
-        // Found header page with space
-        headerPage = getHeadPage(i);
-        headerIndex = i;
-        break;
+  /**
+   * Checks that masterPage is laid out the way this class lays out master pages, and writes the
+   * layout marker to it if it is not there yet. Master pages used to track up to 1024 header
+   * pages, with no segment directory; such a file reads the same as long as it never used more
+   * header pages than numHeaderPages, since the directory is then empty, and is upgraded in
+   * place.
+   *
+   * @throws PageException if masterPage has neither the marker nor the layout of an older file
+   * that fits in this one
+   */
+  private static void checkLayout(Page masterPage, boolean durable) {
+    int[] ints = readMasterInts(masterPage);
+    if (ints[layoutOffset / 4] == layoutMarker) {
+      return;
+    }
+    for (int i = numHeaderPages; i <= layoutOffset / 4; i++) {
+      if (ints[i] != 0) {
+        throw new PageException("master page uses more than " + numHeaderPages
+                                + " header pages, or an unknown layout");
       }
     }
+    masterPage.writeInt(layoutOffset, layoutMarker);
+    if (durable) {
+      masterPage.flush();
+    }
+  }
 
-    if (headerPage == null) {
-      throw new PageException("No free Pages Available");
+  /**
+   * Checks that the data pages of this allocator's file can be read in its IOMode, and records the
+   * IOMode in the master page. COMPRESSED keeps data pages in files of its own, while the other
+   * modes keep them in the allocator's file, so a file written in COMPRESSED can only be opened
+   * in COMPRESSED and vice versa; the other modes may be switched between freely.
+   *
+   * @throws PageException if the file was written in a mode whose data pages this mode cannot read
+   */
+  private void checkIOMode() {
+    IOMode recorded = recordedIOMode(readMasterInts(this.masterPage), this.fName);
+    if (recorded != null
+        && (recorded == IOMode.COMPRESSED) != (this.ioMode == IOMode.COMPRESSED)) {
+      throw new PageException(this.fName + " was written in IOMode." + recorded
+                              + " and cannot be opened in IOMode." + this.ioMode);
+    }
+    if (recorded != this.ioMode) {
+      this.masterPage.writeInt(ioModeOffset, this.ioMode.ordinal() + 1);
+      if (this.durable) {
+        this.masterPage.flush();
+      }
+    }
+  }
+
+  /**
+   * Returns the IOMode recorded in the master page ints of the file fName. A file from before
+   * modes were recorded is taken to be COMPRESSED if it holds pages and has the data file of a
+   * compressed frame store next to it, and MMAP_PER_PAGE if it holds pages and has none.
+   *
+   * @return the recorded IOMode, or null if the file has never held a page in any mode
+   */
+  private static IOMode recordedIOMode(int[] masterInts, String fName) {
+    int recorded = masterInts[ioModeOffset / 4];
+    if (recorded != 0) {
+      if (recorded < 0 || recorded > IOMode.values().length) {
+        throw new PageException("invalid IOMode in master page: " + recorded);
+      }
+      return IOMode.values()[recorded - 1];
+    }
+    if (!hasPages(masterInts)) {
+      return null;
+    }
+    return new File(fName + CompressedFrameStore.dataExtension).exists()
+           ? IOMode.COMPRESSED : IOMode.MMAP_PER_PAGE;
+  }
+
+  /**
+   * Reads the IOMode the allocator file fName was last opened in, without opening an allocator on
+   * it, so that a caller can open the file in a mode that reads it.
+   *
+   * @param fName the name of the file of a PageAllocator
+   * @return the recorded IOMode, or null if the file does not exist or has never held a page
+   */
+  public static IOMode getRecordedIOMode(String fName) {
+    if (!new File(fName).exists()) {
+      return null;
+    }
+    ByteBuffer buf = ByteBuffer.allocate(Page.pageSize);
+    try (FileChannel fc = new RandomAccessFile(fName, "r").getChannel()) {
+      while (buf.hasRemaining()) {
+        if (fc.read(buf, buf.position()) < 0) {
+          break;
+        }
+      }
+    } catch (IOException e) {
+      throw new PageException("Could not read File: " + e.getMessage());
+    }
+    int[] masterInts = new int[Page.pageSize / 4];
+    ((ByteBuffer) buf.rewind()).asIntBuffer().get(masterInts);
+    return recordedIOMode(masterInts, fName);
+  }
+
+  /**
+   * @return the page size recorded in the master page ints pageCounts
+   */
+  private static int recordedPageSize(int[] pageCounts) {
+    int recorded = pageCounts[pageSizeOffset / 4];
+    if (recorded == 0) {
+      return Page.pageSize;
     }
+    if (!isValidPageSize(recorded)) {
+      throw new PageException("invalid page size in master page: " + recorded);
+    }
+    return recorded;
+  }
+
+  private static boolean hasPages(int[] pageCounts) {
+    for (int i = 0; i < numHeaderPages; i++) {
+      if (pageCounts[i] > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isValidPageSize(int pageSize) {
+    return pageSize >= Page.pageSize && pageSize <= maxPageSize
+           && Integer.bitCount(pageSize) == 1;
+  }
 
-    byte[] headerBytes = headerPage.readBytes();
-    int pageIndex = -1;
+  /**
+   * @return the paths of the segment files past the first, as listed in the segment directory of
+   * masterPage. The directory is a count followed by the paths, each as a 2-byte length and that
+   * many bytes of UTF-8.
+   */
+  private static List<String> readDirectory(Page masterPage) {
+    ByteBuffer buf = ByteBuffer.wrap(masterPage.readBytes(directoryOffset, directoryCapacity));
+    int count = buf.getInt();
+    List<String> paths = new ArrayList<String>(count);
+    for (int i = 0; i < count; i++) {
+      byte[] path = new byte[buf.getShort()];
+      buf.get(path);
+      paths.add(new String(path, StandardCharsets.UTF_8));
+    }
+    return paths;
+  }
 
-    for (int i = 0; i < Page.pageSize; i++) {
-      if (headerBytes[i] == 0) {
-        pageIndex = i;
-        break;
+  /**
+   * Writes paths into the segment directory of masterPage.
+   *
+   * @throws PageException if the paths do not fit in the directory
+   */
+  private static void writeDirectory(Page masterPage, List<String> paths) {
+    ByteBuffer buf = ByteBuffer.allocate(directoryCapacity);
+    try {
+      buf.putInt(paths.size());
+      for (String path : paths) {
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        buf.putShort((short) bytes.length);
+        buf.put(bytes);
       }
+    } catch (java.nio.BufferOverflowException e) {
+      throw new PageException("segment directory is full");
     }
+    masterPage.writeBytes(directoryOffset, buf.position(), buf.array());
+  }
 
-    if (pageIndex == -1) {
-     throw new PageException("Header page should have free page but doesnt");
+  /**
+   * @return the open file fName, or null in IOMode.MEMORY, where the allocator has no file
+   */
+  private FileChannel openChannel(String fName) {
+    if (this.ioMode == IOMode.MEMORY) {
+      return null;
+    }
+    try {
+      return new RandomAccessFile(fName, "rw").getChannel();
+    } catch (IOException e) {
+      throw new PageException("Could not open File: " + e.getMessage());
     }
+  }
+
+  /**
+   * Opens the existing segment file at path.
+   */
+  private SegmentFile openSegmentFile(String path) {
+    FileChannel fc = openChannel(path);
+    Page master = newMetadataPage(fc, 0, Page.pageSize);
+    checkLayout(master, this.durable);
+    return new SegmentFile(path, fc, master, false);
+  }
+
+  /**
+   * Removes the segment file at path, and the files of its frame store if it has any.
+   */
+  private static void deleteSegmentFile(String path) {
+    new File(path).delete();
+    new File(path + CompressedFrameStore.dataExtension).delete();
+    new File(path + CompressedFrameStore.tableExtension).delete();
+  }
+
+  /**
+   * Sets the directories new segment files are created in, taking turns between them, so that an
+   * allocator that outgrows its file can spread its pages over several disks. With no
+   * directories, segment files are created next to the allocator's file. Segment files that
+   * already exist stay where they are.
+   *
+   * @param directories the directories to create segment files in
+   */
+  public synchronized void setSegmentDirectories(List<String> directories) {
+    this.segmentDirectories.clear();
+    this.segmentDirectories.addAll(directories);
+  }
 
-    int newCount = pageCounts[headerIndex] + 1;
-    byte[] newCountBytes = ByteBuffer.allocate(4).putInt(newCount).array();
-    this.masterPage.writeBytes(headerIndex*4, 4, newCountBytes);
-    headerPage.writeByte(pageIndex, (byte) 1);
+  /**
+   * @return the paths of the files of this allocator, starting with its own file
+   */
+  public synchronized List<String> getSegmentFiles() {
+    List<String> paths = new ArrayList<String>();
+    for (SegmentFile file : this.files) {
+      paths.add(file.fName);
+    }
+    return paths;
+  }
 
+  /**
+   * Creates the next segment file and records it in the segment directory.
+   *
+   * @throws PageException if the allocator cannot have another segment file
+   */
+  private SegmentFile addSegmentFile() {
+    int index = this.files.size();
+    if ((long) (index + 1) * this.pagesPerFile - 1 > Integer.MAX_VALUE) {
+      throw new PageException("No free Pages Available");
+    }
+    String name = new File(this.fName).getName() + ".seg" + index;
+    String path = this.segmentDirectories.isEmpty()
+                  ? this.fName + ".seg" + index
+                  : new File(this.segmentDirectories.get((index - 1) % this.segmentDirectories.size()),
+                             name).getPath();
+
+    // Record the file before creating it, so that a full directory leaves nothing behind.
+    List<String> directory = readDirectory(this.masterPage);
+    directory.add(path);
+    writeDirectory(this.masterPage, directory);
+    deleteSegmentFile(path);
+    FileChannel fc = openChannel(path);
+    Page master = newMetadataPage(fc, 0, Page.pageSize);
+    master.writeInt(layoutOffset, layoutMarker);
+    master.writeInt(pageSizeOffset, this.pageSize);
     if (this.durable) {
+      master.flush();
       this.masterPage.flush();
-      headerPage.flush();
+    }
+    SegmentFile file = new SegmentFile(path, fc, master, true);
+    this.files.add(file);
+    return file;
+  }
+
+  /**
+   * Allocates a new page in the file.
+   *
+   * @return the virtual page number of the page
+   */
+  public synchronized int allocPage() {
+    // The free page indexes mirror the master and header pages, so we find the free page in memory
+    // and only write the metadata pages to record the allocation.
+    int fileIndex = 0;
+    int localPageNum = -1;
+    this.indexLock.writeLock().lock();
+    try {
+      for (; fileIndex < this.files.size(); fileIndex++) {
+        localPageNum = this.files.get(fileIndex).freePages.allocate();
+        if (localPageNum != -1) {
+          break;
+        }
+      }
+      if (localPageNum == -1) {
+        localPageNum = addSegmentFile().freePages.allocate();
+      }
+    } finally {
+      this.indexLock.writeLock().unlock();
     }
 
-    int pageNum = headerIndex * Page.pageSize + pageIndex;
+    this.files.get(fileIndex).recordAllocation(localPageNum, 1);
+    int pageNum = fileIndex * this.pagesPerFile + localPageNum;
+
     fetchPage(pageNum).wipe();
     this.numPages += 1;
     return pageNum;
   }
 
+  /**
+   * Allocates n new pages in the file with consecutive virtual page numbers. The pages also sit
+   * next to each other in the file, so a later scan of them reads the file sequentially. The
+   * whole run is recorded with a single update of the master page and of one header page, which
+   * is why a run cannot span header pages (or segment files) and n may be at most the page size.
+   *
+   * @param n the number of pages to allocate
+   * @return the virtual page numbers of the pages, in increasing order
+   */
+  public synchronized int[] allocPages(int n) {
+    int fileIndex = 0;
+    int firstLocalPageNum = -1;
+    this.indexLock.writeLock().lock();
+    try {
+      for (; fileIndex < this.files.size(); fileIndex++) {
+        firstLocalPageNum = this.files.get(fileIndex).freePages.allocateRun(n);
+        if (firstLocalPageNum != -1) {
+          break;
+        }
+      }
+      if (firstLocalPageNum == -1) {
+        firstLocalPageNum = addSegmentFile().freePages.allocateRun(n);
+      }
+    } finally {
+      this.indexLock.writeLock().unlock();
+    }
+    if (firstLocalPageNum == -1) {
+      throw new PageException("No run of " + n + " free Pages Available");
+    }
+
+    SegmentFile file = this.files.get(fileIndex);
+    file.recordAllocation(firstLocalPageNum, n);
+    file.zero(firstLocalPageNum, n);
+
+    int firstPageNum = fileIndex * this.pagesPerFile + firstLocalPageNum;
+    int[] pageNums = new int[n];
+    for (int i = 0; i < n; i++) {
+      pageNums[i] = firstPageNum + i;
+    }
+    this.numPages += n;
+    return pageNums;
+  }
+
   /**
    * Fetches the page corresponding to virtual page number pageNum.
    *
    * @param pageNum the virtual page number
    * @return a Page object wrapping the page corresponding to pageNum
    */
-  public synchronized Page fetchPage(int pageNum) {
+  public Page fetchPage(int pageNum) {
     if (pageNum < 0) {
       throw new PageException("invalid page number -- out of bounds");
     }
 
     numIOs.getAndIncrement();
 
-    synchronized(PageAllocator.class) {
-      if (pageLRU.containsKey(translatePageNum(pageNum))) {
-        return pageLRU.get(translatePageNum(pageNum));
+    // Hits are served straight from the pool without taking the allocator's monitor.
+    long vPageNum = translatePageNum(pageNum);
+    Page cached = pagePool.get(vPageNum, this.allocClass);
+    this.metrics.recordFetch(cached != null);
+    if (cached != null) {
+      return cached;
+    }
+
+    while (true) {
+      Page p = pagePool.putIfAbsent(vPageNum, loadPage(pageNum), this.allocClass);
+      if (isCurrent(p)) {
+        return p;
+      }
+      // The page was freed between loadPage and the insert, so we put a page that no longer
+      // exists into the pool. Take it back out and try again, which fails unless the page number
+      // has been allocated again since.
+      pagePool.remove(vPageNum, p);
+    }
+  }
+
+  /**
+   * Fetches the page corresponding to virtual page number pageNum and pins it, so that it stays
+   * in the buffer pool until it is released with unpinPage.
+   *
+   * @param pageNum the virtual page number
+   * @return the pinned Page
+   */
+  public Page pinPage(int pageNum) {
+    long vPageNum = translatePageNum(pageNum);
+    while (true) {
+      Page p = fetchPage(pageNum);
+      p.pin();
+      // The pool may have picked p for eviction between the fetch and the pin. It never picks a
+      // pinned page, so if p is still resident now, it stays until it is unpinned.
+      if (pagePool.isResident(vPageNum, p)) {
+        return p;
       }
+      p.unpin();
+    }
+  }
+
+  /**
+   * Releases a pin taken with pinPage.
+   *
+   * @param p the pinned page
+   * @param dirty whether the caller modified the page
+   */
+  public void unpinPage(Page p, boolean dirty) {
+    if (dirty) {
+      p.markDirty();
     }
+    p.unpin();
+  }
 
-    int headPageIndex = pageNum/Page.pageSize;
+  /**
+   * Validates that pageNum is allocated and maps it in. Called on a buffer pool miss.
+   */
+  private synchronized Page loadPage(int pageNum) {
+    int fileIndex = pageNum / this.pagesPerFile;
 
-    if (headPageIndex >= numHeaderPages) {
+    if (fileIndex >= this.files.size()) {
       throw new PageException("invalid page number -- out of bounds");
     }
 
-    byte[] headCountBytes = this.masterPage.readBytes(headPageIndex*4, 4);
-    int headCount = ByteBuffer.wrap(headCountBytes).getInt();
-
-    if (headCount < 1) {
+    SegmentFile file = this.files.get(fileIndex);
+    int localPageNum = pageNum % this.pagesPerFile;
+    if (!file.freePages.isAllocated(localPageNum)) {
       throw new PageException("invalid page number -- page not allocated");
     }
 
-    Page headPage = getHeadPage(headPageIndex);
+    int headPageIndex = localPageNum / this.pageSize;
+    int dataPageIndex = localPageNum % this.pageSize;
 
-    int dataPageIndex = pageNum % Page.pageSize;
+    int dataBlockID = 2 + headPageIndex*(this.pageSize + 1) + dataPageIndex;
+    if (file.frameStore == null) {
+      return file.mapBlock(dataBlockID, pageNum, this.durable);
+    }
 
-    byte validByte = headPage.readByte(dataPageIndex);
+    // Handles to an evicted FramedPage stay usable, so we must hand that same object out again
+    // rather than a second copy of the page.
+    FramedPage p = this.framedPages.get(pageNum);
+    if (p == null) {
+      p = new FramedPage(this, file.frameStore, dataBlockID, pageNum, this.durable,
+                         getFramePool(this.pageSize));
+      track(p, 0);
+      this.framedPages.put(pageNum, p);
+    }
+    synchronized (p) {
+      p.attach();
+    }
+    return p;
+  }
 
-    if (validByte == 0) {
-      throw new PageException("invalid page number -- page not allocated");
+  /**
+   * @return the lowest numbered allocated page at or after pageNum, or -1 if there is none
+   */
+  private int nextAllocatedPage(int pageNum) {
+    int fileIndex = Math.max(pageNum, 0) / this.pagesPerFile;
+    int from = Math.max(pageNum, 0) % this.pagesPerFile;
+    this.indexLock.readLock().lock();
+    try {
+      for (; fileIndex < this.files.size(); fileIndex++) {
+        int localPageNum = this.files.get(fileIndex).freePages.nextAllocated(from);
+        if (localPageNum != -1) {
+          return fileIndex * this.pagesPerFile + localPageNum;
+        }
+        from = 0;
+      }
+      return -1;
+    } finally {
+      this.indexLock.readLock().unlock();
     }
+  }
 
-    int dataBlockID = 2 + headPageIndex*(Page.pageSize + 1) + dataPageIndex;
-    Page dataPage = new Page(this.fc, dataBlockID, pageNum, this.durable);
+  /**
+   * Returns whether p, a page that was just put into the buffer pool, is still the page for its
+   * page number. freePage takes the page out of the pool with the allocator's monitor held, so a
+   * page that passes this check is taken out by any later freePage.
+   */
+  private synchronized boolean isCurrent(Page p) {
+    int pageNum = p.getPageNum();
+    return isAllocated(pageNum)
+           && (!(p instanceof FramedPage) || this.framedPages.get(pageNum) == p);
+  }
 
-    synchronized(PageAllocator.class) {
-      pageLRU.put(translatePageNum(pageNum), dataPage);
+  /**
+   * @return whether pageNum is allocated
+   */
+  private boolean isAllocated(int pageNum) {
+    int fileIndex = pageNum / this.pagesPerFile;
+    this.indexLock.readLock().lock();
+    try {
+      return pageNum >= 0 && fileIndex < this.files.size()
+             && this.files.get(fileIndex).freePages.isAllocated(pageNum % this.pagesPerFile);
+    } finally {
+      this.indexLock.readLock().unlock();
     }
+  }
+
+  /**
+   * @return whether allocPage and freePage should force the metadata they change
+   */
+  private boolean forceMetadata() {
+    return this.durable && this.groupCommitMillis <= 0;
+  }
 
-    return dataPage;
+  /**
+   * Puts p, which was read back in through a handle held since it was evicted, back into the
+   * buffer pool.
+   */
+  void readmit(FramedPage p) {
+    long vPageNum = translatePageNum(p.getPageNum());
+    if (this.pagePool.contains(vPageNum)) {
+      return;
+    }
+    this.pagePool.putIfAbsent(vPageNum, p, this.allocClass);
+    if (!isCurrent(p)) {
+      // The page has been freed since.
+      this.pagePool.remove(vPageNum, p);
+    }
   }
 
   /**
@@ -210,37 +845,21 @@ public class PageAllocator implements Iterable<Page>, Closeable {
    * @return whether or not the page was freed
    */
   public synchronized boolean freePage(Page p) {
-    if (this.durable) {
+    if (forceMetadata()) {
       p.flush();
     }
     int pageNum = p.getPageNum();
-    int headPageIndex = pageNum/Page.pageSize;
-    int dataPageIndex = pageNum % Page.pageSize;
+    int fileIndex = pageNum / this.pagesPerFile;
 
-    Page headPage = getHeadPage(headPageIndex);
-
-    if (headPage.readByte(dataPageIndex) == 0) {
+    if (pageNum < 0 || fileIndex >= this.files.size()
+        || !this.files.get(fileIndex).free(pageNum % this.pagesPerFile)) {
       return false;
     }
 
-    headPage.writeByte(dataPageIndex, (byte) 0);
-    if (this.durable) {
-      headPage.flush();
-    }
-    byte[] countBytes = masterPage.readBytes(4*headPageIndex,4);
-    int oldCount = ByteBuffer.wrap(countBytes).getInt();
-
-    int newCount = oldCount - 1;
-    byte[] newCountBytes = ByteBuffer.allocate(4).putInt(newCount).array();
-    masterPage.writeBytes(headPageIndex*4, 4, newCountBytes);
-    if (this.durable) {
-      masterPage.flush();
-    }
-
-    synchronized(PageAllocator.class) {
-      if (pageLRU.containsKey(translatePageNum(pageNum))) {
-        pageLRU.remove(translatePageNum(pageNum));
-      }
+    pagePool.remove(translatePageNum(pageNum));
+    FramedPage framed = this.framedPages.remove(pageNum);
+    if (framed != null) {
+      framed.release();
     }
 
     this.numPages -= 1;
@@ -265,59 +884,509 @@ public class PageAllocator implements Iterable<Page>, Closeable {
   }
 
   /**
-   * Close this PageAllocator.
+   * Enables or disables group commit of allocation metadata. With a positive interval, allocPage
+   * and freePage no longer force the master and header pages themselves; instead, every
+   * intervalMillis milliseconds, and whenever sync is called, all of the metadata changes made
+   * since the last sync are forced at once. A nonpositive interval restores forcing on every
+   * change, after syncing whatever is pending. This has no effect on a non-durable allocator.
+   *
+   * @param intervalMillis the group commit interval in milliseconds, or 0 to disable it
    */
-  public synchronized void close() {
-    if (this.masterPage == null) {
-      return;
-    }
-    if (this.durable) {
-      this.masterPage.flush();
+  public synchronized void setGroupCommitInterval(long intervalMillis) {
+    if (this.groupCommitTask != null) {
+      this.groupCommitTask.cancel(false);
+      this.groupCommitTask = null;
     }
-    List<Long> toRemove = new ArrayList<Long>();
-    Set<Long> vPageNums = null;
-    List<Page> toFlush = new ArrayList<Page>();
-
-    synchronized(PageAllocator.class) {
-      vPageNums = pageLRU.keySet();
+    sync();
+    this.groupCommitMillis = intervalMillis;
+    if (intervalMillis > 0 && this.durable) {
+      this.groupCommitTask = getGroupCommitter().scheduleWithFixedDelay(
+          this::sync, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
     }
+  }
 
-    for (Long l : vPageNums) {
-      if (translateAllocator(l) == this.allocID) {
-        toRemove.add(l);
-      }
-    }
+  /**
+   * @return the group commit interval in milliseconds, or 0 if group commit is disabled
+   */
+  public synchronized long getGroupCommitInterval() {
+    return Math.max(this.groupCommitMillis, 0);
+  }
 
-    synchronized(PageAllocator.class) {
-      for (Long vPageNum : toRemove) {
-        if (pageLRU.containsKey(vPageNum)) {
-          toFlush.add(pageLRU.get(vPageNum));
-          pageLRU.remove(vPageNum);
-        }
-      }
-    }
-    if (this.durable) {
-      for (Page p : toFlush) {
-        p.flush();
-      }
+  /**
+   * Forces every allocation and free made so far to disk. Without group commit this is a no-op,
+   * since allocPage and freePage already force their changes.
+   */
+  public synchronized void sync() {
+    if (this.masterPage == null || !this.durable) {
+      return;
     }
-    this.masterPage = null;
-    try {
-      this.fc.close();
-    } catch (IOException e) {
-      throw new PageException("Could not close Page Alloc " + e.getMessage());
+    for (SegmentFile file : this.files) {
+      file.sync();
     }
   }
 
-  private synchronized Page getHeadPage(int headIndex) {
-    int headBlockID = 1 + headIndex*(Page.pageSize + 1);
-    return new Page(this.fc, headBlockID, -1);
+  /**
+   * Enables or disables the background writer. With a positive interval, every intervalMillis
+   * milliseconds a background thread calls writeDirtyPages, so that the pages the buffer pool
+   * evicts and the pages close writes back are mostly clean already. A nonpositive interval
+   * disables it, leaving write-back to eviction and close.
+   *
+   * @param intervalMillis the background write interval in milliseconds, or 0 to disable it
+   */
+  public synchronized void setBackgroundWriteInterval(long intervalMillis) {
+    if (this.backgroundWriteTask != null) {
+      this.backgroundWriteTask.cancel(false);
+      this.backgroundWriteTask = null;
+    }
+    this.backgroundWriteMillis = intervalMillis;
+    if (intervalMillis > 0) {
+      this.backgroundWriteTask = getBackgroundWriter().scheduleWithFixedDelay(
+          this::writeDirtyPages, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * @return the background write interval in milliseconds, or 0 if the background writer is
+   * disabled
+   */
+  public synchronized long getBackgroundWriteInterval() {
+    return Math.max(this.backgroundWriteMillis, 0);
+  }
+
+  /**
+   * Enables or disables warm restart. With warm restart enabled, close writes a manifest of the
+   * allocator's pages that are in the buffer pool, which the next PageAllocator to open the file
+   * preloads in the background.
+   *
+   * @param warmRestart whether close should write a hot page manifest
+   */
+  public synchronized void setWarmRestart(boolean warmRestart) {
+    this.warmRestart = warmRestart;
+  }
+
+  /**
+   * @return whether close writes a hot page manifest
+   */
+  public synchronized boolean getWarmRestart() {
+    return this.warmRestart;
+  }
+
+  /**
+   * Writes the page numbers of this allocator's resident data pages, in file order, to the hot
+   * page manifest: a count followed by the page numbers, as ints.
+   */
+  private void writeHotPages() {
+    List<Page> resident = this.pagePool.residentPages(this.allocID);
+    int[] pageNums = new int[resident.size()];
+    for (int i = 0; i < pageNums.length; i++) {
+      pageNums[i] = resident.get(i).getPageNum();
+    }
+    Arrays.sort(pageNums);
+
+    ByteBuffer buf = ByteBuffer.allocate(4 + pageNums.length * 4);
+    buf.putInt(pageNums.length);
+    buf.asIntBuffer().put(pageNums);
+    Path path = Paths.get(this.fName + hotPagesExtension);
+    try {
+      Files.write(path, buf.array());
+    } catch (IOException e) {
+      // The manifest is only a hint, and closing must not fail over it. A partial manifest
+      // would be worse than none.
+      path.toFile().delete();
+    }
+  }
+
+  /**
+   * Consumes the hot page manifest of the file, if there is one, and unless the file was wiped
+   * hands its pages to the read-ahead thread to bring into the buffer pool.
+   */
+  private void preloadHotPages(boolean wipe) {
+    Path path = Paths.get(this.fName + hotPagesExtension);
+    if (!Files.exists(path)) {
+      return;
+    }
+    int[] pageNums;
+    try {
+      ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(path));
+      // Once this allocator changes the file, the manifest describes a file that no longer
+      // exists, so it is only ever used once.
+      Files.delete(path);
+      if (wipe || buf.remaining() < 4 || buf.getInt() * 4L != buf.remaining()) {
+        return;
+      }
+      pageNums = new int[buf.remaining() / 4];
+      buf.asIntBuffer().get(pageNums);
+    } catch (IOException e) {
+      return;
+    }
+    getReadAheadExecutor().execute(() -> {
+      for (int pageNum : pageNums) {
+        if (!readAheadPage(pageNum, true)) {
+          return;
+        }
+      }
+    });
+  }
+
+  /**
+   * Writes back every dirty page of this allocator that is in the buffer pool, and forces them to
+   * disk together rather than one at a time: with one force per segment in MMAP_SEGMENTS mode,
+   * and a single force of the file in PREAD and COMPRESSED modes. Pages of a non-durable
+   * allocator are written back but not forced. Pages that are pinned or latched exclusively may
+   * be in the middle of a write, so they are left for the next call, or for eviction or close.
+   * The background writer calls this, but it may also be called directly, e.g. before a
+   * checkpoint.
+   */
+  public void writeDirtyPages() {
+    if (this.masterPage == null) {
+      return;
+    }
+    List<Page> dirty = this.pagePool.dirtyPages(this.allocID);
+    if (dirty.isEmpty()) {
+      return;
+    }
+    long start = System.nanoTime();
+    Set<MappedByteBuffer> mappings =
+      Collections.newSetFromMap(new IdentityHashMap<MappedByteBuffer, Boolean>());
+    Set<FrameStore> stores = Collections.newSetFromMap(new IdentityHashMap<FrameStore, Boolean>());
+    int numWritten = 0;
+    for (Page p : dirty) {
+      if (!p.tryLatchShared()) {
+        continue;
+      }
+      try {
+        // The page may have been pinned since the pool listed it.
+        if (p.isPinned() || !p.writeBackUnforced()) {
+          continue;
+        }
+      } finally {
+        p.unlatchShared();
+      }
+      numWritten++;
+      if (p.getMapping() != null) {
+        mappings.add(p.getMapping());
+      } else if (p instanceof FramedPage) {
+        stores.add(((FramedPage) p).getStore());
+      }
+    }
+    if (numWritten == 0) {
+      return;
+    }
+    if (this.durable) {
+      for (MappedByteBuffer mapping : mappings) {
+        incrementCacheMisses();
+        mapping.force();
+      }
+      for (FrameStore store : stores) {
+        incrementCacheMisses();
+        try {
+          store.force();
+        } catch (IOException e) {
+          throw new PageException("Can't force pages ; " + e.getMessage());
+        }
+      }
+    }
+    this.metrics.recordBackgroundWrite(numWritten, start);
+  }
+
+  /**
+   * Close this PageAllocator.
+   */
+  public synchronized void close() {
+    if (this.masterPage == null) {
+      return;
+    }
+    if (this.groupCommitTask != null) {
+      this.groupCommitTask.cancel(false);
+      this.groupCommitTask = null;
+    }
+    if (this.backgroundWriteTask != null) {
+      this.backgroundWriteTask.cancel(false);
+      this.backgroundWriteTask = null;
+    }
+    sync();
+    if (this.warmRestart && this.ioMode != IOMode.MEMORY) {
+      writeHotPages();
+    }
+    List<Page> toFlush = pagePool.removeAllocator(this.allocID);
+    for (Page p : toFlush) {
+      // Only durable pages and FramedPages have anything to write back.
+      p.flush();
+      p.release();
+    }
+    // FramedPages that are not in the pool, e.g. those in the ring of a BULK_READ iterator, may
+    // still be holding writes.
+    for (FramedPage p : this.framedPages.values()) {
+      p.flush();
+      p.release();
+    }
+    this.framedPages.clear();
+    unregisterMetrics();
+    this.masterPage = null;
+    for (SegmentFile file : this.files) {
+      file.close();
+    }
+  }
+
+  /**
+   * @return the I/O metrics of this allocator
+   */
+  public PageAllocatorMetrics getMetrics() {
+    return this.metrics;
+  }
+
+  /**
+   * Publishes this allocator's metrics through the platform MBean server, under the name
+   * edu.berkeley.cs186.database:type=type,name="name",allocator=ID, until the allocator is closed.
+   * The allocator ID keeps the name unique even if two allocators are registered with the same
+   * type and name, as temporary tables of different transactions may be.
+   *
+   * @param type what the allocator stores, e.g. Table or BPlusTree
+   * @param name the name of what the allocator stores
+   */
+  public synchronized void registerMetrics(String type, String name) {
+    unregisterMetrics();
+    try {
+      ObjectName objectName = new ObjectName("edu.berkeley.cs186.database:type=" + type
+                                             + ",name=" + ObjectName.quote(name)
+                                             + ",allocator=" + this.allocID);
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this.metrics, objectName);
+      this.metricsName = objectName;
+    } catch (JMException e) {
+      throw new PageException("Could not register metrics: " + e.getMessage());
+    }
+  }
+
+  private synchronized void unregisterMetrics() {
+    if (this.metricsName == null) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.metricsName);
+    } catch (JMException e) {
+      throw new PageException("Could not unregister metrics: " + e.getMessage());
+    } finally {
+      this.metricsName = null;
+    }
+  }
+
+  private static synchronized ScheduledExecutorService getGroupCommitter() {
+    if (groupCommitter == null) {
+      groupCommitter = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "PageAllocator group commit");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return groupCommitter;
+  }
+
+  private static synchronized ScheduledExecutorService getBackgroundWriter() {
+    if (backgroundWriter == null) {
+      backgroundWriter = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "PageAllocator background writer");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return backgroundWriter;
+  }
+
+  // Package-private for testing.
+  static synchronized ExecutorService getReadAheadExecutor() {
+    if (readAheadExecutor == null) {
+      readAheadExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "PageAllocator read-ahead");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return readAheadExecutor;
+  }
+
+  /**
+   * Brings pageNum into the buffer pool and faults it in, unless it is resident already or not
+   * allocated.
+   *
+   * @param preload whether pageNum comes from the hot page manifest, in which case loading it
+   * counts as a preload
+   * @return false if reading ahead should stop, e.g. because the allocator has been closed
+   */
+  private boolean readAheadPage(int pageNum, boolean preload) {
+    long vPageNum = translatePageNum(pageNum);
+    if (this.pagePool.contains(vPageNum)) {
+      return true;
+    }
+    try {
+      Page p;
+      synchronized (this) {
+        if (this.masterPage == null) {
+          // Closed while the read-ahead was queued.
+          return false;
+        }
+        if (!isAllocated(pageNum)) {
+          return true;
+        }
+        p = loadPage(pageNum);
+      }
+      p = this.pagePool.putReadAhead(vPageNum, p, this.allocClass);
+      if (!isCurrent(p)) {
+        // Freed since we loaded it; see fetchPage.
+        this.pagePool.remove(vPageNum, p);
+        return true;
+      }
+      p.load();
+      if (preload) {
+        this.metrics.recordPreload();
+      }
+      return true;
+    } catch (PageException e) {
+      // Read-ahead is only a hint, e.g. the allocator may have been closed under us. If the
+      // scan gets to the page, its own fetch reports the problem.
+      return false;
+    }
+  }
+
+  private static synchronized FramePool getFramePool(int pageSize) {
+    FramePool pool = framePools.get(pageSize);
+    if (pool == null) {
+      // Start every pool with the bytes of a pool's worth of default-sized pages; pools of larger
+      // pages grow as they are used.
+      pool = new FramePool(pageSize, (int) ((long) cacheSize * Page.pageSize / pageSize));
+      framePools.put(pageSize, pool);
+    }
+    return pool;
+  }
+
+  private static synchronized BufferPool getPagePool(EvictionPolicy policy) {
+    BufferPool pool = pagePools.get(policy);
+    if (pool == null) {
+      pool = new BufferPool(cacheSize, numPoolPartitions, policy);
+      for (Map.Entry<AllocatorClass, Integer> e : poolQuotas.entrySet()) {
+        pool.setQuota(e.getKey(), e.getValue());
+      }
+      pagePools.put(policy, pool);
+    }
+    return pool;
+  }
+
+  /**
+   * Sets how many bytes of pages an allocator in IOMode.MEMORY keeps on the heap before it spills
+   * further pages to its file. Applies to allocators created afterwards.
+   *
+   * @param numBytes the spill threshold in bytes
+   */
+  public static synchronized void setMemorySpillThreshold(long numBytes) {
+    if (numBytes < 0) {
+      throw new IllegalArgumentException("numBytes must be nonnegative");
+    }
+    memorySpillThreshold = numBytes;
+  }
+
+  /**
+   * @return how many bytes of pages an allocator in IOMode.MEMORY keeps on the heap
+   */
+  public static synchronized long getMemorySpillThreshold() {
+    return memorySpillThreshold;
+  }
+
+  /**
+   * Sets how many pages of each buffer pool the pages of allocators of class allocClass may
+   * occupy before they start replacing each other rather than pages of other classes. Quotas
+   * need not add up to the size of the pool.
+   *
+   * @param allocClass the class of allocators
+   * @param quota the number of pages, between 0 and the size of the pool
+   */
+  public static synchronized void setPoolQuota(AllocatorClass allocClass, int quota) {
+    if (quota < 0 || quota > cacheSize) {
+      throw new IllegalArgumentException("quota must be between 0 and " + cacheSize);
+    }
+    poolQuotas.put(allocClass, quota);
+    for (BufferPool pool : pagePools.values()) {
+      pool.setQuota(allocClass, quota);
+    }
+  }
+
+  /**
+   * @return the buffer pool quota of allocators of class allocClass, in pages
+   */
+  public static synchronized int getPoolQuota(AllocatorClass allocClass) {
+    Integer quota = poolQuotas.get(allocClass);
+    return quota != null ? quota : allocClass.defaultQuota(cacheSize);
+  }
+
+  /**
+   * @return the number of fetches of pages of allocators of class allocClass that were served
+   * from a buffer pool
+   */
+  public static synchronized long getNumPoolHits(AllocatorClass allocClass) {
+    long hits = 0;
+    for (BufferPool pool : pagePools.values()) {
+      hits += pool.getHits(allocClass);
+    }
+    return hits;
   }
 
-  public synchronized int getNumPages() {
+  /**
+   * @return the number of fetches of pages of allocators of class allocClass that missed in
+   * their buffer pool
+   */
+  public static synchronized long getNumPoolMisses(AllocatorClass allocClass) {
+    long misses = 0;
+    for (BufferPool pool : pagePools.values()) {
+      misses += pool.getMisses(allocClass);
+    }
+    return misses;
+  }
+
+  /**
+   * @return the size of this allocator's pages in bytes
+   */
+  public int getPageSize() {
+    return this.pageSize;
+  }
+
+  /**
+   * @return the class of this allocator
+   */
+  public AllocatorClass getAllocatorClass() {
+    return this.allocClass;
+  }
+
+  /**
+   * @return a master or header page of size bytes over block blockNum of fc, or on the heap if fc
+   * is null
+   */
+  private Page newMetadataPage(FileChannel fc, int blockNum, int size) {
+    if (fc == null) {
+      return track(new Page(ByteBuffer.allocate(size), null, -1, false), 0);
+    }
+    return track(new Page(fc, blockNum, -1, true, size), size);
+  }
+
+  /**
+   * Points p at this allocator's metrics and at the latch of its page number, and counts the
+   * bytesMapped bytes mapped for it.
+   */
+  private Page track(Page p, long bytesMapped) {
+    p.metrics = this.metrics;
+    p.latch = latchFor(translatePageNum(p.getPageNum()));
+    this.metrics.recordMapping(bytesMapped);
+    return p;
+  }
+
+  public int getNumPages() {
     return this.numPages;
   }
 
+  /**
+   * @return how many of this allocator's pages are in its buffer pool
+   */
+  public int getNumResidentPages() {
+    return this.pagePool.residentPages(this.allocID).size();
+  }
+
   public synchronized static long getNumIOs() {
     return PageAllocator.numIOs.get();
   }
@@ -334,50 +1403,363 @@ public class PageAllocator implements Iterable<Page>, Closeable {
     return PageAllocator.cacheMisses.get();
   }
 
-  private synchronized long translatePageNum(int pageNum) {
+  /**
+   * Returns the latch of the page with virtual page number vPageNum. Rather than keep a latch for
+   * every page that was ever fetched, pages share a fixed set of latches by hash, which only
+   * costs concurrency when two pages in use at the same time happen to share a latch.
+   */
+  private static ReadWriteLock latchFor(long vPageNum) {
+    int h = Long.hashCode(vPageNum * 0x9E3779B97F4A7C15L);
+    h ^= (h >>> 16);
+    return pageLatches[h & (numPageLatches - 1)];
+  }
+
+  private static ReadWriteLock[] newPageLatches() {
+    ReadWriteLock[] latches = new ReadWriteLock[numPageLatches];
+    for (int i = 0; i < numPageLatches; i++) {
+      latches[i] = new ReentrantReadWriteLock();
+    }
+    return latches;
+  }
+
+  private long translatePageNum(int pageNum) {
     return (((long) this.allocID) << 32) | (((long) pageNum) & 0xFFFFFFFFL);
   }
 
-  static synchronized private int translateAllocator(long vPageNum) {
+  static int translateAllocator(long vPageNum) {
     return (int) ((vPageNum & 0xFFFFFFFF00000000L) >> 32);
   }
 
   /**
-   * @return an iterator of the valid pages managed by this PageAllocator.
+   * @return an iterator of the valid pages managed by this PageAllocator, which does not read
+   * ahead.
    */
   public PageIterator iterator() {
       return new PageIterator();
   }
 
-  public class PageIterator implements BacktrackingIterator<Page> {
+  /**
+   * @param readAheadPages how many pages past the current one to read ahead, or 0 for none
+   * @return an iterator of the valid pages managed by this PageAllocator.
+   */
+  public PageIterator iterator(int readAheadPages) {
+      return new PageIterator(readAheadPages);
+  }
+
+  /**
+   * @param strategy how to bring in pages that are not in the buffer pool
+   * @return an iterator of the valid pages managed by this PageAllocator.
+   */
+  public PageIterator iterator(AccessStrategy strategy) {
+      return new PageIterator(0, strategy);
+  }
+
+  /**
+   * One file of the allocator: its master and header pages, the free page index that mirrors
+   * them, and whatever holds its data pages. Page numbers within a segment file are local to it.
+   * Only used with the allocator's monitor held, except that the free page index may be read
+   * under the read lock of indexLock instead.
+   */
+  private class SegmentFile {
+    private final String fName;
+    private final FileChannel fc;
+    private final Page masterPage;
+    private final Page[] headPages;
+    private final FreePageIndex freePages;
+    // The large mappings of the file in MMAP_SEGMENTS mode.
+    private final List<MappedByteBuffer> segments;
+    // Where data pages are kept in the modes that do not map them.
+    private final FrameStore frameStore;
+
+    /**
+     * @param fName the name of the file
+     * @param fc the open file
+     * @param masterPage the master page of the file, which already records the page size
+     * @param wipe whether the file was wiped
+     */
+    SegmentFile(String fName, FileChannel fc, Page masterPage, boolean wipe) {
+      this.fName = fName;
+      this.fc = fc;
+      this.masterPage = masterPage;
+      this.headPages = new Page[numHeaderPages];
+      this.freePages = new FreePageIndex(numHeaderPages, pageSize);
+      this.segments = new ArrayList<MappedByteBuffer>();
+      try {
+        if (ioMode == IOMode.PREAD) {
+          this.frameStore = new PositionalFrameStore(fc, pageSize);
+        } else if (ioMode == IOMode.COMPRESSED) {
+          this.frameStore = new CompressedFrameStore(fName, wipe, pageSize);
+        } else if (ioMode == IOMode.MEMORY) {
+          this.frameStore = new MemoryFrameStore(fName, pageSize, memorySpillThreshold);
+        } else {
+          this.frameStore = null;
+        }
+      } catch (IOException e) {
+        throw new PageException("Could not open File: " + e.getMessage());
+      }
+
+      int[] pageCounts = readMasterInts(masterPage);
+      for (int i = 0; i < numHeaderPages; i++) {
+        if (pageCounts[i] > 0) {
+          this.freePages.loadHeader(i, getHeadPage(i).readBytes());
+        }
+      }
+    }
+
+    int getNumPages() {
+      int n = 0;
+      for (int i = 0; i < numHeaderPages; i++) {
+        n += this.freePages.getCount(i);
+      }
+      return n;
+    }
+
+    /**
+     * Writes the allocation of the n pages starting at localPageNum, which the free page index
+     * already records, to the master and header pages.
+     */
+    void recordAllocation(int localPageNum, int n) {
+      int headerIndex = localPageNum / pageSize;
+      int firstPageIndex = localPageNum % pageSize;
+      Page headerPage = getHeadPage(headerIndex);
+
+      if (this.freePages.getCount(headerIndex) == n) {
+        // The header page was not in use, and after a wipe that changed the page size it may
+        // hold stale bytes of the old layout.
+        headerPage.wipe();
+      }
+      byte[] flags = new byte[n];
+      Arrays.fill(flags, (byte) 1);
+      this.masterPage.writeInt(headerIndex*4, this.freePages.getCount(headerIndex));
+      headerPage.writeBytes(firstPageIndex, n, flags);
+
+      if (forceMetadata()) {
+        this.masterPage.flush();
+        headerPage.flush();
+      }
+    }
+
+    /**
+     * Frees localPageNum in the free page index and in the master and header pages.
+     *
+     * @return false if the page was not allocated
+     */
+    boolean free(int localPageNum) {
+      indexLock.writeLock().lock();
+      try {
+        if (!this.freePages.free(localPageNum)) {
+          return false;
+        }
+      } finally {
+        indexLock.writeLock().unlock();
+      }
+      int headPageIndex = localPageNum / pageSize;
+      int dataPageIndex = localPageNum % pageSize;
+
+      Page headPage = getHeadPage(headPageIndex);
+      headPage.writeByte(dataPageIndex, (byte) 0);
+      if (forceMetadata()) {
+        headPage.flush();
+      }
+      this.masterPage.writeInt(headPageIndex*4, this.freePages.getCount(headPageIndex));
+      if (forceMetadata()) {
+        this.masterPage.flush();
+      }
+      return true;
+    }
+
+    /**
+     * Zeroes the n pages starting at localPageNum, which sit within one header page.
+     */
+    void zero(int localPageNum, int n) {
+      // Zero the whole run at once rather than bringing every page into the buffer pool just to
+      // wipe it. A run of large pages may be too long for one mapping, so we map at most a
+      // segment of it at a time.
+      int firstBlockID = 2 + (localPageNum / pageSize)*(pageSize + 1) + localPageNum % pageSize;
+      long position = (long) firstBlockID * pageSize;
+      long length = (long) n * pageSize;
+      try {
+        if (this.frameStore != null) {
+          this.frameStore.zero(firstBlockID, n);
+        } else {
+          byte[] zeros = new byte[pageSize];
+          for (long done = 0; done < length; done += segmentSize) {
+            long chunk = Math.min(segmentSize, length - done);
+            MappedByteBuffer run = this.fc.map(FileChannel.MapMode.READ_WRITE, position + done,
+                                               chunk);
+            metrics.recordMapping(chunk);
+            while (run.hasRemaining()) {
+              run.put(zeros);
+            }
+          }
+        }
+      } catch (IOException e) {
+        throw new PageException("Can't zero pages at block " + firstBlockID + " ; " + e.getMessage());
+      }
+    }
+
+    void sync() {
+      // Only the pages that were actually modified since the last sync are forced.
+      for (Page headPage : this.headPages) {
+        if (headPage != null) {
+          headPage.flush();
+        }
+      }
+      this.masterPage.flush();
+    }
+
+    void close() {
+      try {
+        if (this.frameStore != null) {
+          this.frameStore.close();
+        }
+        if (this.fc != null) {
+          this.fc.close();
+        }
+      } catch (IOException e) {
+        throw new PageException("Could not close Page Alloc " + e.getMessage());
+      }
+    }
+
+    Page getHeadPage(int headIndex) {
+      // Header pages are touched on every allocation and every miss, so we map each one once and
+      // keep it for the lifetime of the allocator rather than going through the buffer pool. Like
+      // the master page, they get a mapping of their own even in MMAP_SEGMENTS mode because they
+      // are forced far more often than data pages.
+      if (this.headPages[headIndex] == null) {
+        int headBlockID = 1 + headIndex*(pageSize + 1);
+        this.headPages[headIndex] = newMetadataPage(this.fc, headBlockID, pageSize);
+      }
+      return this.headPages[headIndex];
+    }
+
+    /**
+     * Creates a Page over block blockNum of the file, either by mapping the block on its own or
+     * by slicing it out of its segment, depending on the allocator's IOMode.
+     */
+    Page mapBlock(int blockNum, int pageNum, boolean durable) {
+      if (ioMode == IOMode.MMAP_PER_PAGE) {
+        return track(new Page(this.fc, blockNum, pageNum, durable, pageSize), pageSize);
+      }
+      MappedByteBuffer segment = getSegment(blockNum / blocksPerSegment);
+      int offset = (blockNum % blocksPerSegment) * pageSize;
+      ByteBuffer view = segment.duplicate();
+      view.position(offset);
+      view.limit(offset + pageSize);
+      return track(new Page(view.slice(), segment, pageNum, durable), 0);
+    }
+
+    private MappedByteBuffer getSegment(int segmentIndex) {
+      while (this.segments.size() <= segmentIndex) {
+        long position = (long) this.segments.size() * segmentSize;
+        try {
+          this.segments.add(this.fc.map(FileChannel.MapMode.READ_WRITE, position, segmentSize));
+          metrics.recordMapping(segmentSize);
+        } catch (IOException e) {
+          throw new PageException("Can't mmap segment at offset " + position + " ; " + e.getMessage());
+        }
+      }
+      return this.segments.get(segmentIndex);
+    }
+  }
+
+  /**
+   * An iterator over the allocated pages of the allocator, in page number order. A BULK_READ
+   * iterator lets go of the pages in its ring once it is exhausted; one that is abandoned before
+   * then should be closed, or its ring holds on to its pages until the allocator is closed.
+   * Closing an iterator that reads ahead also stops the read-ahead it has queued.
+   */
+  public class PageIterator implements BacktrackingIterator<Page>, Closeable {
     private int pageNum;
     private int cursor;
     private int markedPageNum;
     private int markedCursor;
+    private final int readAheadPages;
+    // Pages before readAheadEnd have already been handed to the read-ahead thread.
+    private int readAheadEnd;
+    // Bumped by close. Read-ahead queued under an older generation is dropped.
+    private volatile int generation;
+    // The pages this iterator brought in outside of the buffer pool, oldest first, or null if it
+    // uses the pool.
+    private final ArrayDeque<Page> ring;
 
     public PageIterator() {
+      this(0);
+    }
+
+    /**
+     * @param readAheadPages how many pages past the current one to read ahead, or 0 for none
+     */
+    public PageIterator(int readAheadPages) {
+      this(readAheadPages, AccessStrategy.NORMAL);
+    }
+
+    /**
+     * @param readAheadPages how many pages past the current one to read ahead, or 0 for none;
+     * ignored if the iterator keeps its pages in a ring
+     * @param strategy how to bring in pages that are not in the buffer pool
+     */
+    public PageIterator(int readAheadPages, AccessStrategy strategy) {
+      if (readAheadPages < 0) {
+        throw new IllegalArgumentException("readAheadPages must be nonnegative");
+      }
+      boolean useRing = strategy == AccessStrategy.BULK_READ
+                        && PageAllocator.this.numPages > cacheSize / 4;
       this.pageNum = 0;
       this.cursor = 0;
       this.markedPageNum = 0;
       this.markedCursor = 0;
+      this.readAheadPages = useRing ? 0 : readAheadPages;
+      this.readAheadEnd = 0;
+      this.generation = 0;
+      this.ring = useRing ? new ArrayDeque<Page>(ringSize) : null;
     }
 
     public boolean hasNext() {
-      return this.pageNum < PageAllocator.this.numPages;
+      if (this.pageNum < PageAllocator.this.numPages) {
+        return true;
+      }
+      close();
+      return false;
+    }
+
+    /**
+     * Stops the read-ahead the iterator has queued and lets go of the pages in the ring, if the
+     * iterator has one. Pages the iterator returned stay usable, and the iterator itself may
+     * still be reset and used, in which case it reads ahead and fills its ring again.
+     */
+    public void close() {
+      this.generation++;
+      this.readAheadEnd = this.cursor;
+      if (this.ring == null) {
+        return;
+      }
+      while (!this.ring.isEmpty()) {
+        releaseFromRing(this.ring.removeFirst());
+      }
     }
 
     public Page next() {
       if (this.hasNext()) {
         while (true) {
+          // Jump straight over freed pages using the free page index, rather than fetching
+          // every page number and failing on the holes.
+          int next = PageAllocator.this.nextAllocatedPage(cursor);
+          if (next == -1) {
+            break;
+          }
           Page p;
           try {
-            p = PageAllocator.this.fetchPage(cursor);
-            cursor++;
-            pageNum++;
-            return p;
+            p = this.ring == null ? PageAllocator.this.fetchPage(next) : fetchIntoRing(next);
           } catch (PageException e) {
-            cursor++;
+            // Freed since we looked it up.
+            cursor = next + 1;
+            continue;
           }
+          cursor = next + 1;
+          pageNum++;
+          readAhead();
+          return p;
         }
       }
       throw new NoSuchElementException();
@@ -387,6 +1769,76 @@ public class PageAllocator implements Iterable<Page>, Closeable {
       throw new UnsupportedOperationException();
     }
 
+    /**
+     * Fetches pageNum like fetchPage, except that on a miss the page goes into the ring rather
+     * than the buffer pool, and the oldest page of a full ring is let go.
+     */
+    private Page fetchIntoRing(int pageNum) {
+      numIOs.getAndIncrement();
+
+      long vPageNum = translatePageNum(pageNum);
+      Page cached = pagePool.get(vPageNum, allocClass);
+      metrics.recordFetch(cached != null);
+      if (cached != null) {
+        return cached;
+      }
+
+      Page p = loadPage(pageNum);
+      if (this.ring.size() == ringSize) {
+        releaseFromRing(this.ring.removeFirst());
+      }
+      this.ring.addLast(p);
+      return p;
+    }
+
+    private void releaseFromRing(Page p) {
+      // Someone else may have fetched the page into the pool since, in which case the pool takes
+      // care of it from now on.
+      if (!pagePool.contains(translatePageNum(p.getPageNum()))) {
+        p.flush();
+        p.release();
+      }
+    }
+
+    /**
+     * Keeps the next readAheadPages pages past the cursor queued for read-ahead. Requests are
+     * issued half a window at a time, so that the read-ahead thread sees a few large batches
+     * rather than one page per call to next.
+     */
+    private void readAhead() {
+      if (this.readAheadPages == 0) {
+        return;
+      }
+      if (this.pageNum >= PageAllocator.this.numPages) {
+        return;
+      }
+      if (this.readAheadEnd < this.cursor) {
+        // We skipped past the window (or went back before it, see reset); start a new one here.
+        this.readAheadEnd = this.cursor;
+      }
+      int windowEnd = this.cursor + this.readAheadPages;
+      if (windowEnd - this.readAheadEnd < (this.readAheadPages + 1) / 2) {
+        return;
+      }
+      int from = this.readAheadEnd;
+      int generation = this.generation;
+      this.readAheadEnd = windowEnd;
+      getReadAheadExecutor().execute(() -> readAhead(from, windowEnd, generation));
+    }
+
+    /**
+     * Brings pages [fromPageNum, toPageNum) into the buffer pool and faults them in, skipping
+     * pages that are not allocated, until the iterator is closed. Runs on the read-ahead thread.
+     * Unlike fetchPage, this does not count as an IO, since nobody asked for the pages yet.
+     */
+    private void readAhead(int fromPageNum, int toPageNum, int generation) {
+      for (int pageNum = fromPageNum; pageNum < toPageNum; pageNum++) {
+        if (this.generation != generation || !readAheadPage(pageNum, false)) {
+          return;
+        }
+      }
+    }
+
     /**
      * Marks a page to come back to later.
      *
@@ -416,6 +1868,8 @@ public class PageAllocator implements Iterable<Page>, Closeable {
      public void reset() {
       this.pageNum = this.markedPageNum - 1;
       this.cursor = this.markedCursor - 1;
+      // Read ahead again from the mark. Pages that are still resident are skipped cheaply.
+      this.readAheadEnd = Math.min(this.readAheadEnd, this.cursor);
     }
   }
 }
@@ -0,0 +1,125 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the buffer pool and I/O activity of a single PageAllocator.
+ *
+ * Fetches, hits and misses are counted by the allocator itself, evictions by the buffer pool,
+ * and flushes by the pages, which all point back to the metrics of the allocator they belong
+ * to, or by the background writer, which records each batch it forces as one flush. Flush
+ * latencies go into a histogram with power-of-two bucket bounds, from 1 microsecond to about a
+ * second.
+ */
+public class PageAllocatorMetrics implements PageAllocatorMetricsMXBean {
+  private static final int numBoundedBuckets = 21;
+
+  private final LongAdder fetches;
+  private final LongAdder hits;
+  private final LongAdder misses;
+  private final LongAdder evictions;
+  private final LongAdder flushes;
+  private final LongAdder bytesMapped;
+  private final LongAdder backgroundWrites;
+  private final LongAdder preloads;
+  // One more bucket than there are bounds, for flushes slower than the last bound.
+  private final AtomicLongArray flushLatencies;
+
+  PageAllocatorMetrics() {
+    this.fetches = new LongAdder();
+    this.hits = new LongAdder();
+    this.misses = new LongAdder();
+    this.evictions = new LongAdder();
+    this.flushes = new LongAdder();
+    this.bytesMapped = new LongAdder();
+    this.backgroundWrites = new LongAdder();
+    this.preloads = new LongAdder();
+    this.flushLatencies = new AtomicLongArray(numBoundedBuckets + 1);
+  }
+
+  void recordFetch(boolean hit) {
+    this.fetches.increment();
+    (hit ? this.hits : this.misses).increment();
+  }
+
+  void recordEviction() {
+    this.evictions.increment();
+  }
+
+  void recordMapping(long numBytes) {
+    this.bytesMapped.add(numBytes);
+  }
+
+  /**
+   * Records a flush that started at System.nanoTime() startNanos and has just finished.
+   */
+  void recordFlush(long startNanos) {
+    long micros = (System.nanoTime() - startNanos) / 1000;
+    this.flushes.increment();
+    // Bucket i holds latencies in (2^(i-1), 2^i] microseconds, and bucket 0 everything up to 1.
+    int bucket = micros <= 1 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(micros - 1);
+    this.flushLatencies.incrementAndGet(Math.min(bucket, numBoundedBuckets));
+  }
+
+  /**
+   * Records a batch of numPages pages that the background writer wrote back and forced together,
+   * starting at System.nanoTime() startNanos.
+   */
+  void recordBackgroundWrite(int numPages, long startNanos) {
+    this.backgroundWrites.add(numPages);
+    recordFlush(startNanos);
+  }
+
+  void recordPreload() {
+    this.preloads.increment();
+  }
+
+  public long getFetches() {
+    return this.fetches.sum();
+  }
+
+  public long getHits() {
+    return this.hits.sum();
+  }
+
+  public long getMisses() {
+    return this.misses.sum();
+  }
+
+  public long getEvictions() {
+    return this.evictions.sum();
+  }
+
+  public long getFlushes() {
+    return this.flushes.sum();
+  }
+
+  public long getBytesMapped() {
+    return this.bytesMapped.sum();
+  }
+
+  public long getBackgroundWrites() {
+    return this.backgroundWrites.sum();
+  }
+
+  public long getPreloads() {
+    return this.preloads.sum();
+  }
+
+  public long[] getFlushLatencyHistogram() {
+    long[] histogram = new long[this.flushLatencies.length()];
+    for (int i = 0; i < histogram.length; i++) {
+      histogram[i] = this.flushLatencies.get(i);
+    }
+    return histogram;
+  }
+
+  public long[] getFlushLatencyBucketBoundsMicros() {
+    long[] bounds = new long[numBoundedBuckets];
+    for (int i = 0; i < bounds.length; i++) {
+      bounds[i] = 1L << i;
+    }
+    return bounds;
+  }
+}
@@ -0,0 +1,62 @@
+package edu.berkeley.cs186.database.io;
+
+/**
+ * The management interface through which the buffer pool and I/O activity of a single
+ * PageAllocator is published over JMX. See PageAllocator#registerMetrics.
+ */
+public interface PageAllocatorMetricsMXBean {
+  /**
+   * @return the number of fetchPage calls, hit or not; the per-allocator share of
+   * PageAllocator.getNumIOs()
+   */
+  long getFetches();
+
+  /**
+   * @return the number of fetches served from the buffer pool
+   */
+  long getHits();
+
+  /**
+   * @return the number of fetches that had to bring the page into the buffer pool
+   */
+  long getMisses();
+
+  /**
+   * @return the number of this allocator's pages the buffer pool evicted
+   */
+  long getEvictions();
+
+  /**
+   * @return the number of times one of this allocator's pages, including its master and header
+   * pages, was written back to the file, where a batch of the background writer counts once
+   */
+  long getFlushes();
+
+  /**
+   * @return the number of bytes of the file this allocator has mapped into memory
+   */
+  long getBytesMapped();
+
+  /**
+   * @return the number of this allocator's pages the background writer wrote back
+   */
+  long getBackgroundWrites();
+
+  /**
+   * @return the number of pages of the hot page manifest brought into the buffer pool when the
+   * allocator was opened
+   */
+  long getPreloads();
+
+  /**
+   * @return the number of flushes that took at most the corresponding entry of
+   * getFlushLatencyBucketBoundsMicros (and more than the one before it); the last bucket counts
+   * everything slower than the last bound
+   */
+  long[] getFlushLatencyHistogram();
+
+  /**
+   * @return the upper bounds, in microseconds, of all but the last flush latency bucket
+   */
+  long[] getFlushLatencyBucketBoundsMicros();
+}
@@ -0,0 +1,68 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Keeps every page in its own block of the allocator's file, read and written with positional
+ * reads and writes. This is the store of IOMode.PREAD, and lays out the file exactly as the
+ * mapped modes do.
+ */
+class PositionalFrameStore implements FrameStore {
+  private final FileChannel fc;
+  private final int pageSize;
+
+  /**
+   * @param fc the allocator's file
+   * @param pageSize the size of the allocator's pages, and so of the blocks of its file
+   */
+  PositionalFrameStore(FileChannel fc, int pageSize) {
+    this.fc = fc;
+    this.pageSize = pageSize;
+  }
+
+  public void read(int blockNum, ByteBuffer frame) throws IOException {
+    long position = (long) blockNum * this.pageSize;
+    frame.clear();
+    while (frame.hasRemaining()) {
+      if (this.fc.read(frame, position + frame.position()) < 0) {
+        // Past the end of the file, which reads as zeros.
+        while (frame.hasRemaining()) {
+          frame.put((byte) 0);
+        }
+      }
+    }
+    frame.clear();
+  }
+
+  public void write(int blockNum, ByteBuffer frame) throws IOException {
+    long position = (long) blockNum * this.pageSize;
+    ByteBuffer src = frame.duplicate();
+    src.clear();
+    while (src.hasRemaining()) {
+      this.fc.write(src, position + src.position());
+    }
+  }
+
+  public void zero(int firstBlockNum, int n) throws IOException {
+    long position = (long) firstBlockNum * this.pageSize;
+    // One page of zeros, written n times, since a run of large pages may not fit in one buffer.
+    ByteBuffer zeros = ByteBuffer.allocate(this.pageSize);
+    for (int i = 0; i < n; i++) {
+      zeros.clear();
+      while (zeros.hasRemaining()) {
+        this.fc.write(zeros, position + zeros.position());
+      }
+      position += this.pageSize;
+    }
+  }
+
+  public void force() throws IOException {
+    this.fc.force(false);
+  }
+
+  public void close() {
+    // The channel belongs to the allocator, which closes it.
+  }
+}
@@ -0,0 +1,37 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.function.Predicate;
+
+/**
+ * Decides which frame a BufferPool partition gives up when it is full. Every partition has its
+ * own policy instance, sized to the partition's capacity.
+ *
+ * frameAccessed is called on the buffer pool's hit path without the partition lock held, so it
+ * must be safe to call concurrently with every other method. All other methods are called with
+ * the partition lock held.
+ */
+interface ReplacementPolicy {
+  /**
+   * Called when f has just been brought into the partition. This counts as an access.
+   */
+  void frameAdded(Frame f);
+
+  /**
+   * Called whenever a resident frame is returned by the buffer pool.
+   */
+  void frameAccessed(Frame f);
+
+  /**
+   * Called when f leaves the partition, either because it was chosen as a victim or because it
+   * was dropped explicitly.
+   */
+  void frameRemoved(Frame f);
+
+  /**
+   * Picks the frame to evict next among those for which evictable returns true. The victim is
+   * not removed from the policy; the caller follows up with frameRemoved.
+   *
+   * @return the victim, or null if no frame is evictable
+   */
+  Frame chooseVictim(Predicate<Frame> evictable);
+}
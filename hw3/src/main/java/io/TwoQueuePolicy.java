@@ -0,0 +1,77 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.LinkedHashSet;
+import java.util.function.Predicate;
+
+/**
+ * The simplified 2Q replacement policy of Johnson and Shasha.
+ *
+ * New pages enter A1in, a FIFO holding about a quarter of the frames; hits there do not reorder
+ * anything. Pages evicted from A1in leave their page number behind in A1out, a ghost FIFO
+ * holding no data. A page brought back in while it is still remembered by A1out has proven to be
+ * re-referenced and goes into Am, an LRU list holding the remaining frames. A sequential scan
+ * therefore only ever cycles through A1in and leaves the hot pages in Am alone.
+ */
+class TwoQueuePolicy implements ReplacementPolicy {
+  private final int maxA1in;
+  private final int maxA1out;
+
+  // All three are ordered oldest first.
+  private final LinkedHashSet<Frame> a1in;
+  private final LinkedHashSet<Frame> am;
+  private final LinkedHashSet<Long> a1out;
+
+  TwoQueuePolicy(int capacity) {
+    this.maxA1in = Math.max(capacity / 4, 1);
+    this.maxA1out = Math.max(capacity / 2, 1);
+    this.a1in = new LinkedHashSet<Frame>();
+    this.am = new LinkedHashSet<Frame>();
+    this.a1out = new LinkedHashSet<Long>();
+  }
+
+  public synchronized void frameAdded(Frame f) {
+    if (this.a1out.remove(f.vPageNum)) {
+      this.am.add(f);
+    } else {
+      this.a1in.add(f);
+    }
+  }
+
+  public synchronized void frameAccessed(Frame f) {
+    if (this.am.remove(f)) {
+      this.am.add(f);
+    }
+  }
+
+  public synchronized void frameRemoved(Frame f) {
+    if (this.a1in.remove(f)) {
+      // Remember the page so that a quick re-reference promotes it to Am.
+      this.a1out.add(f.vPageNum);
+      if (this.a1out.size() > this.maxA1out) {
+        this.a1out.remove(this.a1out.iterator().next());
+      }
+    } else {
+      this.am.remove(f);
+    }
+  }
+
+  public synchronized Frame chooseVictim(Predicate<Frame> evictable) {
+    // Prefer reclaiming from A1in once it exceeds its share, and fall back to the other queue if
+    // nothing in the preferred one can be evicted.
+    boolean preferA1in = this.a1in.size() > this.maxA1in || this.am.isEmpty();
+    Frame victim = firstEvictable(preferA1in ? this.a1in : this.am, evictable);
+    if (victim == null) {
+      victim = firstEvictable(preferA1in ? this.am : this.a1in, evictable);
+    }
+    return victim;
+  }
+
+  private static Frame firstEvictable(LinkedHashSet<Frame> queue, Predicate<Frame> evictable) {
+    for (Frame f : queue) {
+      if (evictable.test(f)) {
+        return f;
+      }
+    }
+    return null;
+  }
+}
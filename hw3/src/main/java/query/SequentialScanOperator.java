@@ -4,6 +4,7 @@ import java.util.Iterator;
 
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.io.AccessStrategy;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 
@@ -35,7 +36,10 @@ public class SequentialScanOperator extends QueryOperator {
   }
 
   public Iterator<Record> iterator() throws DatabaseException {
-    return this.transaction.getRecordIterator(tableName);
+    // A scan reads every page once, so it keeps its pages out of the buffer pool rather than
+    // evicting everything else to make room for them. It lets go of them once it is exhausted,
+    // and the transaction closes it when it ends in case it is abandoned before then.
+    return this.transaction.getRecordIterator(tableName, AccessStrategy.BULK_READ);
   }
 
   public Schema computeSchema() throws QueryPlanException {
@@ -7,6 +7,7 @@ import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.io.AccessStrategy;
 import edu.berkeley.cs186.database.io.Page;
 
 import java.util.*;
@@ -48,13 +49,36 @@ public class SortOperator  {
     }
 
     public void addRecords(List<Record> records) throws DatabaseException {
+      this.reserve(records.size());
+      List<List<DataBox>> values = new ArrayList<>(records.size());
       for (Record r: records) {
-        this.addRecord(r.getValues());
+        values.add(r.getValues());
+      }
+      SortOperator.this.transaction.addRecords(this.tempTableName, values.iterator());
+    }
+
+    /**
+     * Allocates the pages numRecords more records take up front, so that the
+     * run is written to consecutive pages of its file rather than one page at
+     * a time wherever the allocator finds room. Called before records are
+     * added, once it is known how many.
+     */
+    private void reserve(long numRecords) throws DatabaseException {
+      Database.Transaction t = SortOperator.this.transaction;
+      // Runs are only ever appended to, so their pages are full but the last.
+      long total = t.getNumRecords(this.tempTableName) + numRecords;
+      int perPage = t.getNumEntriesPerPage(this.tempTableName);
+      int needed = (int) ((total + perPage - 1) / perPage) - t.getNumDataPages(this.tempTableName);
+      if (needed > 0) {
+        t.addDataPages(this.tempTableName, needed);
       }
     }
 
     public Iterator<Record> iterator() throws DatabaseException {
-      return SortOperator.this.transaction.getRecordIterator(this.tempTableName);
+      // Every pass reads a run once from start to end, so a large run is read
+      // through a ring rather than the buffer pool.
+      return SortOperator.this.transaction.getRecordIterator(this.tempTableName,
+                                                             AccessStrategy.BULK_READ);
     }
 
     public String tableName() {
@@ -110,6 +134,11 @@ public class SortOperator  {
     }
 
     Run newRun = new Run();
+    long numRecords = 0;
+    for (Run run : runs) {
+      numRecords += SortOperator.this.transaction.getNumRecords(run.tableName());
+    }
+    newRun.reserve(numRecords);
     while (pQueue.size() > 0) {
       Pair<Record, Integer> next = pQueue.remove();
       List<DataBox> getVals = next.getFirst().getValues();
@@ -152,7 +181,12 @@ public class SortOperator  {
    * Returns the name of the table that backs the final run.
    */
   public String sort() throws DatabaseException {
-    BacktrackingIterator<Page> pIter = this.transaction.getPageIterator(this.tableName);
+    // The table is read once, a block at a time, so its pages bypass the
+    // buffer pool like those of a sequential scan. A block of more pages than
+    // the ring holds still reads correctly, but the pages that have left the
+    // ring by the time they are read go through the pool.
+    BacktrackingIterator<Page> pIter = this.transaction.getPageIterator(this.tableName,
+                                                                        AccessStrategy.BULK_READ);
     pIter.next();
     List<Run> sortRuns = new ArrayList<>();
     int numBufs = numBuffers - 1;
@@ -1,11 +1,15 @@
 package edu.berkeley.cs186.database.table;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
 
 /** A Record is just list of DataBoxes. */
 public class Record {
@@ -43,6 +47,77 @@ public class Record {
     return new Record(values);
   }
 
+  /**
+   * Encodes the record in the variable-length format of slotted tables. It is
+   * the fixed-length format, except that every string is written as a 2-byte
+   * length followed by the string without its trailing padding.
+   *
+   * @param schema the schema used for this record
+   * @return the encoded record
+   */
+  public byte[] toVariableBytes(Schema schema) {
+    List<Type> types = schema.getFieldTypes();
+    List<byte[]> fields = new ArrayList<byte[]>(values.size());
+    int size = 0;
+    for (int i = 0; i < values.size(); ++i) {
+      byte[] bytes = values.get(i).toBytes();
+      if (types.get(i).getTypeId() == TypeId.STRING) {
+        int length = bytes.length;
+        while (length > 0 && bytes[length - 1] == ' ') {
+          length--;
+        }
+        bytes = Arrays.copyOf(bytes, length);
+        size += Short.BYTES;
+      }
+      fields.add(bytes);
+      size += bytes.length;
+    }
+
+    ByteBuffer byteBuffer = ByteBuffer.allocate(size);
+    for (int i = 0; i < fields.size(); ++i) {
+      if (types.get(i).getTypeId() == TypeId.STRING) {
+        byteBuffer.putShort((short) fields.get(i).length);
+      }
+      byteBuffer.put(fields.get(i));
+    }
+    return byteBuffer.array();
+  }
+
+  /**
+   * Decodes a record written by toVariableBytes, padding its strings back to
+   * the lengths of their types.
+   *
+   * @param buf the buffer to decode, positioned at the start of the record
+   * @param schema the schema used for this record
+   * @return the decoded Record
+   */
+  public static Record fromVariableBytes(ByteBuffer buf, Schema schema) {
+    List<DataBox> values = new ArrayList<DataBox>();
+    for (Type t : schema.getFieldTypes()) {
+      if (t.getTypeId() == TypeId.STRING) {
+        byte[] bytes = new byte[buf.getShort() & 0xFFFF];
+        buf.get(bytes);
+        values.add(new StringDataBox(new String(bytes, StandardCharsets.UTF_8),
+                                     t.getSizeInBytes()));
+      } else {
+        values.add(DataBox.fromBytes(buf, t));
+      }
+    }
+    return new Record(values);
+  }
+
+  /**
+   * Returns the length of the shortest encoding toVariableBytes produces for
+   * records of schema, the one whose strings are all empty.
+   */
+  public static int minVariableSizeInBytes(Schema schema) {
+    int size = 0;
+    for (Type t : schema.getFieldTypes()) {
+      size += t.getTypeId() == TypeId.STRING ? Short.BYTES : t.getSizeInBytes();
+    }
+    return size;
+  }
+
   @Override
   public String toString() {
     return values.toString();
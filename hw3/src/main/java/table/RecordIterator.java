@@ -1,5 +1,7 @@
 package edu.berkeley.cs186.database.table;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.Iterator;
 
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
@@ -14,8 +16,15 @@ import edu.berkeley.cs186.database.DatabaseException;
  *   recordIterator.next(); // equivalent to t.getRecord(ridIterator.next())
  *   recordIterator.next(); // equivalent to t.getRecord(ridIterator.next())
  *   recordIterator.next(); // equivalent to t.getRecord(ridIterator.next())
+ *
+ * Over one of the table's own record id iterators, which go page by page,
+ * records are read out of the page the iterator is on rather than fetched by
+ * record id.
+ *
+ * Closing a RecordIterator closes its Iterator<RecordId> if that is Closeable,
+ * as a Table.TableIterator is.
  */
-public class RecordIterator implements BacktrackingIterator<Record> {
+public class RecordIterator implements BacktrackingIterator<Record>, Closeable {
   private Iterator<RecordId> ridIter;
   private Table table;
 
@@ -31,7 +40,14 @@ public class RecordIterator implements BacktrackingIterator<Record> {
 
   public Record next() {
     try {
-      return table.getRecord(ridIter.next());
+      RecordId rid = ridIter.next();
+      if (ridIter instanceof Table.RIDBlockIterator) {
+        // Read the record out of the page the block iterator already has, which
+        // for a BULK_READ scan is a page of its ring rather than of the buffer
+        // pool, instead of fetching that page again.
+        return table.readRecord(((Table.RIDBlockIterator) ridIter).getCurrentPage(), rid);
+      }
+      return table.getRecord(rid);
     } catch (DatabaseException e) {
       throw new IllegalStateException(e);
     }
@@ -52,5 +68,15 @@ public class RecordIterator implements BacktrackingIterator<Record> {
       throw new UnsupportedOperationException("Cannot reset using underlying iterator");
     }
   }
+
+  public void close() {
+    if (ridIter instanceof Closeable) {
+      try {
+        ((Closeable) ridIter).close();
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
 }
 
@@ -0,0 +1,259 @@
+package edu.berkeley.cs186.database.table;
+
+import java.nio.ByteBuffer;
+
+import edu.berkeley.cs186.database.common.Bits;
+
+/**
+ * The layout of a data page of a TableFormat.SLOTTED table. A slotted page
+ * begins with a 12-byte header and a directory of 4-byte slots, and packs its
+ * records at its end:
+ *
+ *   +-----------+-----------+-----------+--------+--------+-----+
+ *   | numSlots  | dataStart | usedBytes | slot 0 | slot 1 | ... |
+ *   +-----------+-----------+-----------+--------+--------+-----+
+ *   |                    free space                             |
+ *   +----------------------+-----------------------+------------+
+ *   |      ...             |       record 1        |  record 0  |
+ *   +----------------------+-----------------------+------------+
+ *                           ^ dataStart
+ *
+ *  - numSlots is the number of slots in the directory. Slot i holds the 2-byte
+ *    offset and 2-byte length of the record with entry number i, or a length
+ *    of EMPTY if the slot is unused. Deleting the last slot shrinks the
+ *    directory, but the entry numbers of other records never change, so their
+ *    record ids stay valid.
+ *  - Records are written just below dataStart, which is 0 on a fresh page,
+ *    meaning the end of the page.
+ *  - usedBytes is the total length of the records on the page. Deleting or
+ *    shrinking a record leaves a hole below dataStart, and when a record does
+ *    not fit in the space between the directory and dataStart but would fit
+ *    in the page's free space as a whole, the page is compacted first.
+ *
+ * All methods take the page's buffer and use absolute positions, so they do
+ * not disturb the buffer's position. Callers latch the page.
+ */
+final class SlottedPage {
+  static final int HEADER_SIZE = 12;
+  static final int SLOT_SIZE = 4;
+  // The length of an unused slot. No record is this long, since records must
+  // fit on a page after its header.
+  private static final int EMPTY = 0xFFFF;
+
+  private SlottedPage() {}
+
+  /**
+   * Returns the most slots a page of pageSize bytes can hold if every record
+   * is minRecordSize bytes long, which is also the number of entry numbers
+   * the page may use.
+   */
+  static int maxSlots(int pageSize, int minRecordSize) {
+    return Math.min((pageSize - HEADER_SIZE) / (SLOT_SIZE + minRecordSize), Short.MAX_VALUE);
+  }
+
+  static int numSlots(ByteBuffer buf) {
+    return buf.getInt(0);
+  }
+
+  /** Returns the number of records on the page. */
+  static int numRecords(ByteBuffer buf) {
+    int n = 0;
+    for (int slot = 0; slot < numSlots(buf); ++slot) {
+      if (length(buf, slot) != EMPTY) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Returns the number of bytes a new record could use, counting the holes
+   * left by deleted records, but not the slot the record would need.
+   */
+  static int freeSpace(ByteBuffer buf) {
+    return buf.capacity() - HEADER_SIZE - SLOT_SIZE * numSlots(buf) - buf.getInt(8);
+  }
+
+  /**
+   * Returns whether slot holds a record.
+   */
+  static boolean isOccupied(ByteBuffer buf, int slot) {
+    return slot < numSlots(buf) && length(buf, slot) != EMPTY;
+  }
+
+  /**
+   * Returns a read-only view of the record in slot, which must be occupied,
+   * positioned at the start of the record.
+   */
+  static ByteBuffer getRecord(ByteBuffer buf, int slot) {
+    ByteBuffer record = buf.asReadOnlyBuffer();
+    record.position(offset(buf, slot));
+    record.limit(offset(buf, slot) + length(buf, slot));
+    return record;
+  }
+
+  /**
+   * Writes record into the first unused slot among the first maxSlots,
+   * compacting the page if need be. Unless the page is empty, the record
+   * must leave at least reserve bytes of free space, which later updates
+   * can grow records into.
+   *
+   * @return the slot written, or -1 if the record does not fit
+   */
+  static int insert(ByteBuffer buf, int maxSlots, int reserve, byte[] record) {
+    int numSlots = numSlots(buf);
+    int slot = 0;
+    while (slot < numSlots && length(buf, slot) != EMPTY) {
+      slot++;
+    }
+    if (slot == maxSlots) {
+      return -1;
+    }
+    boolean newSlot = slot == numSlots;
+    if (numSlots == 0) {
+      reserve = 0;
+    }
+    if (freeSpace(buf) < record.length + (newSlot ? SLOT_SIZE : 0) + reserve) {
+      return -1;
+    }
+    place(buf, slot, record, newSlot);
+    return slot;
+  }
+
+  /**
+   * Overwrites the record in slot, which must be occupied, with record. A
+   * record no longer than the old one is written in place.
+   *
+   * @return whether the record fit; if not, the page is unchanged
+   */
+  static boolean update(ByteBuffer buf, int slot, byte[] record) {
+    int oldLength = length(buf, slot);
+    if (record.length <= oldLength) {
+      write(buf, offset(buf, slot), record, record.length);
+      setSlot(buf, slot, offset(buf, slot), record.length);
+      buf.putInt(8, buf.getInt(8) - oldLength + record.length);
+      return true;
+    }
+    if (freeSpace(buf) + oldLength < record.length) {
+      return false;
+    }
+    delete(buf, slot, false);
+    place(buf, slot, record, false);
+    return true;
+  }
+
+  /**
+   * Frees slot, which must be occupied, shrinking the directory if slot was
+   * its last.
+   */
+  static void delete(ByteBuffer buf, int slot) {
+    delete(buf, slot, true);
+  }
+
+  /**
+   * Returns a bitmap of the first numBits slots of the page, in which the
+   * bits of occupied slots are set, like the bitmap of a fixed-width page.
+   */
+  static byte[] bitmap(ByteBuffer buf, int numBits) {
+    ByteBuffer bitmap = ByteBuffer.allocate((numBits + 7) / 8);
+    int numSlots = Math.min(numSlots(buf), numBits);
+    for (int slot = 0; slot < numSlots; ++slot) {
+      if (length(buf, slot) != EMPTY) {
+        Bits.setBit(bitmap, slot, Bits.Bit.ONE);
+      }
+    }
+    return bitmap.array();
+  }
+
+  private static void delete(ByteBuffer buf, int slot, boolean shrink) {
+    buf.putInt(8, buf.getInt(8) - length(buf, slot));
+    setSlot(buf, slot, 0, EMPTY);
+    if (shrink) {
+      int numSlots = numSlots(buf);
+      while (numSlots > 0 && length(buf, numSlots - 1) == EMPTY) {
+        numSlots--;
+      }
+      buf.putInt(0, numSlots);
+      if (numSlots == 0) {
+        buf.putInt(4, 0);
+      }
+    }
+  }
+
+  /**
+   * Writes record below dataStart and points slot at it, appending slot to
+   * the directory if newSlot is set. The page is compacted first if the gap
+   * between the directory and dataStart is too small for the record and the
+   * new slot. The caller has checked that they fit.
+   */
+  private static void place(ByteBuffer buf, int slot, byte[] record, boolean newSlot) {
+    int numSlots = numSlots(buf);
+    int needed = record.length + (newSlot ? SLOT_SIZE : 0);
+    if (dataStart(buf) - (HEADER_SIZE + SLOT_SIZE * numSlots) < needed) {
+      compact(buf);
+    }
+    if (newSlot) {
+      buf.putInt(0, numSlots + 1);
+    }
+    int offset = dataStart(buf) - record.length;
+    write(buf, offset, record, record.length);
+    buf.putInt(4, offset);
+    buf.putInt(8, buf.getInt(8) + record.length);
+    setSlot(buf, slot, offset, record.length);
+  }
+
+  /**
+   * Moves every record to the end of the page, so that all the page's free
+   * space lies between the directory and dataStart.
+   */
+  private static void compact(ByteBuffer buf) {
+    int numSlots = numSlots(buf);
+    byte[] data = new byte[buf.getInt(8)];
+    int[] offsets = new int[numSlots];
+    int size = 0;
+    for (int slot = 0; slot < numSlots; ++slot) {
+      int length = length(buf, slot);
+      if (length != EMPTY) {
+        ByteBuffer src = buf.duplicate();
+        src.position(offset(buf, slot));
+        src.get(data, size, length);
+        offsets[slot] = size;
+        size += length;
+      }
+    }
+
+    int dataStart = buf.capacity() - size;
+    write(buf, dataStart, data, size);
+    buf.putInt(4, dataStart);
+    for (int slot = 0; slot < numSlots; ++slot) {
+      int length = length(buf, slot);
+      if (length != EMPTY) {
+        setSlot(buf, slot, dataStart + offsets[slot], length);
+      }
+    }
+  }
+
+  private static void write(ByteBuffer buf, int offset, byte[] bytes, int length) {
+    ByteBuffer dst = buf.duplicate();
+    dst.position(offset);
+    dst.put(bytes, 0, length);
+  }
+
+  private static int dataStart(ByteBuffer buf) {
+    int dataStart = buf.getInt(4);
+    return dataStart == 0 ? buf.capacity() : dataStart;
+  }
+
+  private static int offset(ByteBuffer buf, int slot) {
+    return buf.getShort(HEADER_SIZE + SLOT_SIZE * slot) & 0xFFFF;
+  }
+
+  private static int length(ByteBuffer buf, int slot) {
+    return buf.getShort(HEADER_SIZE + SLOT_SIZE * slot + 2) & 0xFFFF;
+  }
+
+  private static void setSlot(ByteBuffer buf, int slot, int offset, int length) {
+    buf.putShort(HEADER_SIZE + SLOT_SIZE * slot, (short) offset);
+    buf.putShort(HEADER_SIZE + SLOT_SIZE * slot + 2, (short) length);
+  }
+}
@@ -1,5 +1,6 @@
 package edu.berkeley.cs186.database.table;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.io.Closeable;
 import java.nio.ByteBuffer;
@@ -13,6 +14,10 @@ import edu.berkeley.cs186.database.common.ArrayBacktrackingIterator;
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
 import edu.berkeley.cs186.database.common.Bits;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.io.AccessStrategy;
+import edu.berkeley.cs186.database.io.AllocatorClass;
+import edu.berkeley.cs186.database.io.EvictionPolicy;
+import edu.berkeley.cs186.database.io.IOMode;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator;
 import edu.berkeley.cs186.database.io.PageAllocator.PageIterator;
@@ -56,7 +61,12 @@ import edu.berkeley.cs186.database.io.PageAllocator.PageIterator;
  * Now, we discuss how tables serialize their data into files.
  *
  *   1. Each file begins with a header page into which tables serialize their
- *      schema.
+ *      schema, followed by the table state: the number of records and the
+ *      page numbers of the data pages with room for more records. The state
+ *      is written when the table is closed and marked stale as soon as the
+ *      table is opened again, so a table that was not closed cleanly (or has
+ *      more free pages than fit in the header page) is recounted from the
+ *      bitmaps of its data pages when it is loaded.
  *   2. All remaining pages are data pages. Every data page begins with an
  *      n-byte bitmap followed by m records. The bitmap indicates which records
  *      in the page are valid. The values of n and m are set to maximize the
@@ -93,6 +103,19 @@ import edu.berkeley.cs186.database.io.PageAllocator.PageIterator;
  *
  *  When we add a record to a table, we add it to the very first free slot in
  *  the table. See addRecord for more information.
+ *
+ * The layout above is TableFormat.FIXED, which every table uses unless it is
+ * created with TableFormat.SLOTTED. The data pages of a slotted table instead
+ * hold a directory of slots and variable-length records (see SlottedPage), and
+ * its header page holds a marker between the schema and the table state. The
+ * bitmap of a slotted page, as returned by getBitMap, is computed from its
+ * directory.
+ *
+ * # Concurrency
+ * Methods that modify the table are synchronized on the table, and latch the
+ * page they modify exclusively. Reads (getRecord and the iterators) take no
+ * table-wide lock and only latch the page they read in shared mode, so
+ * concurrent scans of a table do not serialize on each other.
  */
 public class Table implements Iterable<Record>, Closeable {
   public static final String FILENAME_PREFIX = "db";
@@ -110,17 +133,51 @@ public class Table implements Iterable<Record>, Closeable {
   // The allocator used to persist the database.
   private PageAllocator allocator;
 
+  // How records are laid out on the data pages.
+  private TableFormat format;
+
   // The size (in bytes) of the bitmap found at the beginning of each data page.
+  // For a slotted table, the size of the bitmap getBitMap computes.
   private int bitmapSizeInBytes;
 
-  // The number of records on each data page.
+  // The number of records on each data page. For a slotted table, the most
+  // records a page can hold, which bounds the entry numbers of its records.
   private int numRecordsPerPage;
 
+  // For a slotted table, the length of the shortest encoded record.
+  private int minRecordSize;
+
+  // For a slotted table, the free space inserts leave on a page, so that its
+  // records can grow when they are updated.
+  private int slottedReserve;
+
   // The page numbers of all allocated pages which have room for more records.
   private TreeSet<Integer> freePageNums;
 
-  // The number of records in the table.
-  private long numRecords;
+  // The number of records in the table. Volatile since it is read without
+  // holding the table's lock.
+  private volatile long numRecords;
+
+  // The offset in the header page of the table state, just past the schema.
+  private int stateOffset;
+
+  // Marks the table state in the header page as up to date. The state is a
+  // flag, numRecords, the number of free pages and the number of spill pages,
+  // followed by the page numbers of the spill pages and then of the free
+  // pages. Free page numbers that do not fit in the header page continue in
+  // the spill pages.
+  private static final int cleanStateFlag = 0x54424c54;
+  private static final int stateHeaderSize = 20;
+
+  // The spill pages the table state was loaded from. A spill page is an empty
+  // data page whose free space holds page numbers, so a load that does not
+  // trust the state counts it as the empty page it is. These are free pages
+  // again once loaded, and are reused by the next close if still empty.
+  private List<Integer> spillPageNums;
+
+  // Marks a slotted table. It follows the schema in the header page, and
+  // the table state follows it.
+  private static final int slottedFormatFlag = 0x534c4f54;
 
   // Constructors //////////////////////////////////////////////////////////////
   /**
@@ -128,16 +185,74 @@ public class Table implements Iterable<Record>, Closeable {
    * file `filename`.
    */
   public Table(String name, Schema schema, String filename) {
+    this(name, schema, filename, EvictionPolicy.CLOCK);
+  }
+
+  /**
+   * Construct a brand new table named `name` with schema `schema` persisted in
+   * file `filename`, whose pages are cached under the eviction policy `policy`.
+   */
+  public Table(String name, Schema schema, String filename, EvictionPolicy policy) {
+    this(name, schema, filename, policy, AllocatorClass.BASE_TABLE);
+  }
+
+  /**
+   * Construct a brand new table named `name` with schema `schema` persisted in
+   * file `filename`, whose pages are cached under the eviction policy `policy`
+   * and count against the buffer pool quota of `allocClass`.
+   */
+  public Table(String name, Schema schema, String filename, EvictionPolicy policy,
+               AllocatorClass allocClass) {
+    this(name, schema, filename, policy, allocClass, Page.pageSize);
+  }
+
+  /**
+   * Construct a brand new table named `name` with schema `schema` persisted in
+   * file `filename` with pages of `pageSize` bytes, whose pages are cached
+   * under the eviction policy `policy` and count against the buffer pool quota
+   * of `allocClass`. Tables that are mostly scanned may prefer large pages.
+   */
+  public Table(String name, Schema schema, String filename, EvictionPolicy policy,
+               AllocatorClass allocClass, int pageSize) {
+    this(name, schema, filename, policy, allocClass, pageSize, IOMode.MMAP_PER_PAGE);
+  }
+
+  /**
+   * Construct a brand new table named `name` with schema `schema` whose pages
+   * of `pageSize` bytes are kept as `ioMode` says, in file `filename`, cached
+   * under the eviction policy `policy`, and counted against the buffer pool
+   * quota of `allocClass`. Temporary tables use IOMode.MEMORY, so that they
+   * only touch the disk if they grow large.
+   */
+  public Table(String name, Schema schema, String filename, EvictionPolicy policy,
+               AllocatorClass allocClass, int pageSize, IOMode ioMode) {
+    this(name, schema, filename, policy, allocClass, pageSize, ioMode, TableFormat.FIXED);
+  }
+
+  /**
+   * Construct a brand new table like above, whose data pages are laid out as
+   * `format` says. Tables with long string columns that mostly hold short
+   * values fit many more records on a page with TableFormat.SLOTTED.
+   */
+  public Table(String name, Schema schema, String filename, EvictionPolicy policy,
+               AllocatorClass allocClass, int pageSize, IOMode ioMode, TableFormat format) {
     this.name = name;
     this.filename = filename;
     this.schema = schema;
-    this.allocator = new PageAllocator(filename, true);
-    this.bitmapSizeInBytes = computeBitmapSizeInBytes(Page.pageSize, schema);
-    numRecordsPerPage = computeNumRecordsPerPage(Page.pageSize, schema);
+    this.format = format;
+    this.allocator = new PageAllocator(filename, true, true, policy, ioMode, allocClass,
+                                       pageSize);
+    this.allocator.registerMetrics("Table", name);
+    computeLayout(pageSize);
     this.freePageNums = new TreeSet<Integer>();
+    this.spillPageNums = new ArrayList<Integer>();
     this.numRecords = 0;
 
-    writeSchemaToHeaderPage(allocator, schema);
+    this.stateOffset = writeSchemaToHeaderPage(allocator, schema);
+    if (format == TableFormat.SLOTTED) {
+      allocator.fetchPage(0).writeInt(this.stateOffset, slottedFormatFlag);
+      this.stateOffset += 4;
+    }
   }
 
   /**
@@ -145,35 +260,68 @@ public class Table implements Iterable<Record>, Closeable {
    * table will be read from the header page of the file.
    */
   public Table(String name, String filename) throws DatabaseException {
+    this(name, filename, EvictionPolicy.CLOCK);
+  }
+
+  /**
+   * Load a table named `name` from the file `filename`, caching its pages
+   * under the eviction policy `policy`. The file is opened in the IOMode it
+   * was last written in.
+   */
+  public Table(String name, String filename, EvictionPolicy policy) throws DatabaseException {
+    this(name, filename, policy, recordedIOMode(filename));
+  }
+
+  /**
+   * Load a table named `name` from the file `filename`, accessing it through
+   * `ioMode`. Throws a PageException if the file was written in a mode whose
+   * pages `ioMode` cannot read, such as a COMPRESSED file opened in PREAD.
+   */
+  public Table(String name, String filename, EvictionPolicy policy, IOMode ioMode)
+      throws DatabaseException {
     this.name = name;
     this.filename = filename;
-    this.allocator = new PageAllocator(filename, false);
-    this.schema = readSchemaFromHeaderPage(this.allocator);
-    this.bitmapSizeInBytes = computeBitmapSizeInBytes(Page.pageSize, this.schema);
-    this.numRecordsPerPage = computeNumRecordsPerPage(Page.pageSize, this.schema);
+    this.allocator = new PageAllocator(filename, false, true, policy, ioMode);
+    this.allocator.registerMetrics("Table", name);
+    ByteBuffer headerBuf = this.allocator.fetchPage(0).getReadOnlyByteBuffer();
+    this.schema = Schema.fromBytes(headerBuf);
+    this.stateOffset = headerBuf.position();
+    this.format = TableFormat.FIXED;
+    if (headerBuf.remaining() >= 4 && headerBuf.getInt() == slottedFormatFlag) {
+      this.format = TableFormat.SLOTTED;
+      this.stateOffset += 4;
+    }
+    // The page size is read back from the file along with everything else.
+    computeLayout(this.allocator.getPageSize());
 
     this.freePageNums = new TreeSet<Integer>();
+    this.spillPageNums = new ArrayList<Integer>();
     this.numRecords = 0;
 
-    Iterator<Page> iter = this.allocator.iterator();
-    iter.next(); // Skip the header page.
-    while(iter.hasNext()) {
-      Page page = iter.next();
-      byte[] bitmap = getBitMap(page);
-
-      for (short i = 0; i < numRecordsPerPage; ++i) {
-        if (Bits.getBit(bitmap, i) == Bits.Bit.ONE) {
-          Record r = getRecord(new RecordId(page.getPageNum(), i));
-          numRecords++;
+    if (!readTableState()) {
+      // Recount the table from the bitmaps of its data pages. Every page is
+      // read once, so the scan keeps its pages out of the buffer pool.
+      Iterator<Page> iter = this.allocator.iterator(AccessStrategy.BULK_READ);
+      iter.next(); // Skip the header page.
+      while(iter.hasNext()) {
+        Page page = iter.next();
+        numRecords += numRecordsOnPage(page);
+        if (hasRoom(page)) {
+          freePageNums.add(page.getPageNum());
         }
       }
-
-      if (numRecordsOnPage(page) != numRecordsPerPage) {
-        freePageNums.add(page.getPageNum());
-      }
     }
   }
 
+  /**
+   * Returns the IOMode the table file `filename` was last written in, or
+   * MMAP_PER_PAGE for a file that does not record one.
+   */
+  private static IOMode recordedIOMode(String filename) {
+    IOMode ioMode = PageAllocator.getRecordedIOMode(filename);
+    return ioMode == null ? IOMode.MMAP_PER_PAGE : ioMode;
+  }
+
   // Accessors /////////////////////////////////////////////////////////////////
   public String getName() {
     return name;
@@ -187,6 +335,10 @@ public class Table implements Iterable<Record>, Closeable {
     return schema;
   }
 
+  public TableFormat getFormat() {
+    return format;
+  }
+
   public PageAllocator getAllocator() {
     return allocator;
   }
@@ -210,7 +362,15 @@ public class Table implements Iterable<Record>, Closeable {
 
   public byte[] getBitMap(Page page) {
     byte[] bytes = new byte[bitmapSizeInBytes];
-    page.getByteBuffer().get(bytes);
+    page.latchShared();
+    try {
+      if (format == TableFormat.SLOTTED) {
+        return SlottedPage.bitmap(page.getReadOnlyByteBuffer(), numRecordsPerPage);
+      }
+      page.readBytes(0, bitmapSizeInBytes, bytes);
+    } finally {
+      page.unlatchShared();
+    }
     return bytes;
   }
 
@@ -227,6 +387,8 @@ public class Table implements Iterable<Record>, Closeable {
   }
 
   // Modifiers /////////////////////////////////////////////////////////////////
+  // Writes through the page's buffer, so the caller must have the page pinned,
+  // as every method that writes to a page does until it is done with it.
   private synchronized void insertRecord(Page page, int entryNum, Record record) {
     int offset = bitmapSizeInBytes + (entryNum * schema.getSizeInBytes());
     byte[] bytes = record.toBytes(schema);
@@ -245,69 +407,195 @@ public class Table implements Iterable<Record>, Closeable {
    */
   public synchronized RecordId addRecord(List<DataBox> values) throws DatabaseException {
     Record record = schema.verify(values);
+    if (format == TableFormat.SLOTTED) {
+      return addSlottedRecord(encodeSlottedRecord(record));
+    }
 
     // Get a free page, allocating a new one if necessary.
     if (freePageNums.isEmpty()) {
       freePageNums.add(allocator.allocPage());
     }
-    Page page = allocator.fetchPage(freePageNums.first());
+    Page page = allocator.pinPage(freePageNums.first());
 
-    // Find the first empty slot in the bitmap.
-    // entry number of the first free slot and store it in entryNum; and (2) we
-    // count the total number of entries on this page.
-    byte[] bitmap = getBitMap(page);
-    int entryNum = 0;
-    for (; entryNum < numRecordsPerPage; ++entryNum) {
-      if (Bits.getBit(bitmap, entryNum) == Bits.Bit.ZERO) {
-        break;
-      }
-    }
-    assert(entryNum < numRecordsPerPage);
+    int entryNum;
+    page.latchExclusive();
+    try {
+      // Find the first empty slot in the bitmap, 64 slots at a time.
+      byte[] bitmap = getBitMap(page);
+      entryNum = Bits.nextClearBit(ByteBuffer.wrap(bitmap), 0, numRecordsPerPage, 0);
+      assert(entryNum != -1);
 
-    // Insert the record and update the bitmap.
-    insertRecord(page, entryNum, record);
-    Bits.setBit(page.getByteBuffer(), entryNum, Bits.Bit.ONE);
+      // Insert the record and update the bitmap.
+      insertRecord(page, entryNum, record);
+      Bits.setBit(page.getByteBuffer(), entryNum, Bits.Bit.ONE);
 
-    // Update the metadata.
-    if (numRecordsOnPage(page) == numRecordsPerPage) {
-      freePageNums.pollFirst();
+      // Update the metadata. The page is full if the slot we took was its
+      // last empty one.
+      if (Bits.nextClearBit(ByteBuffer.wrap(bitmap), 0, numRecordsPerPage, entryNum + 1) == -1) {
+        freePageNums.pollFirst();
+      }
+    } finally {
+      page.unlatchExclusive();
+      allocator.unpinPage(page, true);
     }
     numRecords++;
 
     return new RecordId(page.getPageNum(), (short) entryNum);
   }
 
+  /**
+   * addRecords adds every record of `values` to the table, in order, and
+   * returns their record ids. Records go into the same slots successive calls
+   * to addRecord would have put them in, but a page at a time: each page is
+   * fetched and latched once, its free slots are found 64 at a time, and its
+   * bitmap is written once. If a record does not match the schema, the
+   * records before it stay added and an exception is thrown.
+   */
+  public synchronized List<RecordId> addRecords(Iterator<List<DataBox>> values) throws DatabaseException {
+    if (format == TableFormat.SLOTTED) {
+      return addSlottedRecords(values);
+    }
+    List<RecordId> rids = new ArrayList<RecordId>();
+    int recordSize = schema.getSizeInBytes();
+    while (values.hasNext()) {
+      // Get a free page, allocating a new one if necessary.
+      if (freePageNums.isEmpty()) {
+        freePageNums.add(allocator.allocPage());
+      }
+      Page page = allocator.pinPage(freePageNums.first());
+
+      int numAdded = 0;
+      page.latchExclusive();
+      try {
+        ByteBuffer bitmap = ByteBuffer.wrap(getBitMap(page));
+        ByteBuffer buf = page.getByteBuffer();
+        try {
+          int entryNum = Bits.nextClearBit(bitmap, 0, numRecordsPerPage, 0);
+          while (entryNum != -1 && values.hasNext()) {
+            Record record = schema.verify(values.next());
+            buf.position(bitmapSizeInBytes + entryNum * recordSize);
+            buf.put(record.toBytes(schema));
+            Bits.setBit(bitmap, entryNum, Bits.Bit.ONE);
+            rids.add(new RecordId(page.getPageNum(), (short) entryNum));
+            numAdded++;
+            entryNum = Bits.nextClearBit(bitmap, 0, numRecordsPerPage, entryNum + 1);
+          }
+          if (entryNum == -1) {
+            freePageNums.pollFirst();
+          }
+        } finally {
+          // Whatever made it onto the page is recorded, even if a record
+          // failed to verify.
+          buf.position(0);
+          buf.put(bitmap.array());
+          numRecords += numAdded;
+        }
+      } finally {
+        page.unlatchExclusive();
+        allocator.unpinPage(page, true);
+      }
+    }
+    return rids;
+  }
+
+  /**
+   * Adds numPages empty data pages to the table, allocated a few thousand at
+   * a time as runs of consecutive pages, rather than one by one as addRecord
+   * needs them. The records added next fill them in page number order, so a
+   * writer that knows how many pages its records take, such as a run of an
+   * external sort, gets them onto consecutive pages of the file.
+   */
+  public synchronized void addDataPages(int numPages) {
+    while (numPages > 0) {
+      // A run of pages cannot be longer than a page, see PageAllocator#allocPages.
+      int n = Math.min(numPages, allocator.getPageSize());
+      for (int pageNum : allocator.allocPages(n)) {
+        freePageNums.add(pageNum);
+      }
+      numPages -= n;
+    }
+  }
+
   /**
    * Retrieves a record from the table, throwing an exception if no such record
    * exists.
+   *
+   * Unlike the methods that modify the table, getRecord does not lock the
+   * whole table: it only latches the record's page in shared mode, so any
+   * number of threads can read the table at once.
    */
-  public synchronized Record getRecord(RecordId rid) throws DatabaseException {
+  public Record getRecord(RecordId rid) throws DatabaseException {
     validateRecordId(rid);
-    Page page = allocator.fetchPage(rid.getPageNum());
-    byte[] bitmap = getBitMap(page);
-    if (Bits.getBit(bitmap, rid.getEntryNum()) == Bits.Bit.ZERO) {
-      String msg = String.format("Record %s does not exist.", rid);
-      throw new DatabaseException(msg);
-    }
+    return readRecord(allocator.fetchPage(rid.getPageNum()), rid);
+  }
 
-    int offset = bitmapSizeInBytes + (rid.getEntryNum() * schema.getSizeInBytes());
-    ByteBuffer buf = page.getByteBuffer();
-    buf.position(offset);
-    return Record.fromBytes(buf, schema);
+  /**
+   * Reads the record rid out of page, the page it is on, which the caller
+   * already holds. Iterators read their records this way, so that a page is
+   * not fetched again for every record on it.
+   */
+  Record readRecord(Page page, RecordId rid) throws DatabaseException {
+    int entryNum = rid.getEntryNum();
+    page.latchShared();
+    try {
+      if (format == TableFormat.SLOTTED) {
+        ByteBuffer buf = page.getReadOnlyByteBuffer();
+        if (!SlottedPage.isOccupied(buf, entryNum)) {
+          String msg = String.format("Record %s does not exist.", rid);
+          throw new DatabaseException(msg);
+        }
+        return Record.fromVariableBytes(SlottedPage.getRecord(buf, entryNum), schema);
+      }
+
+      if (Bits.getBit(page.readByte(entryNum / 8), entryNum % 8) == Bits.Bit.ZERO) {
+        String msg = String.format("Record %s does not exist.", rid);
+        throw new DatabaseException(msg);
+      }
+
+      int offset = bitmapSizeInBytes + (entryNum * schema.getSizeInBytes());
+      ByteBuffer buf = page.getReadOnlyByteBuffer();
+      buf.position(offset);
+      return Record.fromBytes(buf, schema);
+    } finally {
+      page.unlatchShared();
+    }
   }
 
   /**
    * Overwrites an existing record with new values and returns the existing
    * record. An exception is thrown if rid does
    * not correspond to an existing record in the table.
+   *
+   * A record of a slotted table stays on its page, so an exception is also
+   * thrown if the new record is longer than the old one and the rest of its
+   * page is too full to hold it.
    */
   public synchronized Record updateRecord(List<DataBox> values, RecordId rid) throws DatabaseException {
     validateRecordId(rid);
     Record newRecord = schema.verify(values);
     Record oldRecord = getRecord(rid);
 
-    Page page = allocator.fetchPage(rid.getPageNum());
-    insertRecord(page, rid.getEntryNum(), newRecord);
+    Page page = allocator.pinPage(rid.getPageNum());
+    page.latchExclusive();
+    try {
+      if (format == TableFormat.SLOTTED) {
+        ByteBuffer buf = page.getByteBuffer();
+        if (!SlottedPage.update(buf, rid.getEntryNum(), encodeSlottedRecord(newRecord))) {
+          String msg = String.format("Record %s does not fit on its page.", newRecord);
+          throw new DatabaseException(msg);
+        }
+        if (hasRoom(buf)) {
+          freePageNums.add(page.getPageNum());
+        } else {
+          freePageNums.remove(page.getPageNum());
+        }
+      } else {
+        insertRecord(page, rid.getEntryNum(), newRecord);
+      }
+    } finally {
+      page.unlatchExclusive();
+      allocator.unpinPage(page, true);
+    }
     return oldRecord;
   }
 
@@ -318,12 +606,26 @@ public class Table implements Iterable<Record>, Closeable {
    */
   public synchronized Record deleteRecord(RecordId rid) throws DatabaseException {
     validateRecordId(rid);
-    Page page = allocator.fetchPage(rid.getPageNum());
     Record record = getRecord(rid);
-    Bits.setBit(page.getByteBuffer(), rid.getEntryNum(), Bits.Bit.ZERO);
+    Page page = allocator.pinPage(rid.getPageNum());
+    page.latchExclusive();
+    try {
+      if (format == TableFormat.SLOTTED) {
+        ByteBuffer buf = page.getByteBuffer();
+        SlottedPage.delete(buf, rid.getEntryNum());
+        if (hasRoom(buf)) {
+          freePageNums.add(page.getPageNum());
+        }
+      } else {
+        Bits.setBit(page.getByteBuffer(), rid.getEntryNum(), Bits.Bit.ZERO);
 
-    if(numRecordsOnPage(page) == numRecordsPerPage - 1) {
-      freePageNums.add(page.getPageNum());
+        if(numRecordsOnPage(page) == numRecordsPerPage - 1) {
+          freePageNums.add(page.getPageNum());
+        }
+      }
+    } finally {
+      page.unlatchExclusive();
+      allocator.unpinPage(page, true);
     }
     numRecords--;
 
@@ -331,21 +633,277 @@ public class Table implements Iterable<Record>, Closeable {
   }
 
   public void close() {
+    writeTableState();
     allocator.close();
   }
 
   // Helpers ///////////////////////////////////////////////////////////////////
-  private static Schema readSchemaFromHeaderPage(PageAllocator allocator) {
+  /**
+   * Writes the schema to a newly allocated header page.
+   *
+   * @return the number of bytes the schema takes
+   */
+  private static int writeSchemaToHeaderPage(PageAllocator allocator, Schema schema) {
+    Page headerPage = allocator.pinPage(allocator.allocPage());
+    assert(0 == headerPage.getPageNum());
+    byte[] bytes = schema.toBytes();
+    try {
+      headerPage.getByteBuffer().put(bytes);
+    } finally {
+      allocator.unpinPage(headerPage, true);
+    }
+    return bytes.length;
+  }
+
+  /**
+   * Sets bitmapSizeInBytes, numRecordsPerPage, and minRecordSize for data
+   * pages of pageSize bytes in this table's format.
+   */
+  private void computeLayout(int pageSize) {
+    if (format == TableFormat.SLOTTED) {
+      this.minRecordSize = Record.minVariableSizeInBytes(schema);
+      this.numRecordsPerPage = SlottedPage.maxSlots(pageSize, minRecordSize);
+      this.bitmapSizeInBytes = (numRecordsPerPage + 7) / 8;
+      this.slottedReserve = pageSize / 10;
+    } else {
+      this.minRecordSize = schema.getSizeInBytes();
+      this.bitmapSizeInBytes = computeBitmapSizeInBytes(pageSize, schema);
+      this.numRecordsPerPage = computeNumRecordsPerPage(pageSize, schema);
+    }
+  }
+
+  /**
+   * Encodes a record of a slotted table, throwing an exception if it is too
+   * long for a page.
+   */
+  private byte[] encodeSlottedRecord(Record record) throws DatabaseException {
+    byte[] bytes = record.toVariableBytes(schema);
+    int maxSize = allocator.getPageSize() - SlottedPage.HEADER_SIZE - SlottedPage.SLOT_SIZE;
+    if (bytes.length > maxSize) {
+      String msg = String.format("Record %s takes %d bytes, but at most %d fit on a page.",
+                                 record, bytes.length, maxSize);
+      throw new DatabaseException(msg);
+    }
+    return bytes;
+  }
+
+  /**
+   * Adds an encoded record to the first page of a slotted table it fits on,
+   * allocating a page if there is none. Pages are tried in the order of
+   * freePageNums, and dropped from it once they cannot hold the shortest
+   * record.
+   */
+  private RecordId addSlottedRecord(byte[] bytes) {
+    Integer pageNum = freePageNums.isEmpty() ? null : freePageNums.first();
+    while (true) {
+      if (pageNum == null) {
+        pageNum = allocator.allocPage();
+        freePageNums.add(pageNum);
+      }
+      Page page = allocator.pinPage(pageNum);
+      int entryNum;
+      page.latchExclusive();
+      try {
+        ByteBuffer buf = page.getByteBuffer();
+        entryNum = SlottedPage.insert(buf, numRecordsPerPage, slottedReserve, bytes);
+        if (!hasRoom(buf)) {
+          freePageNums.remove(pageNum);
+        }
+      } finally {
+        page.unlatchExclusive();
+        allocator.unpinPage(page, true);
+      }
+      if (entryNum != -1) {
+        numRecords++;
+        return new RecordId(pageNum, (short) entryNum);
+      }
+      pageNum = freePageNums.higher(pageNum);
+    }
+  }
+
+  /**
+   * addRecords for slotted tables: like addSlottedRecord, but each page is
+   * fetched and latched once for all the records that go on it.
+   */
+  private List<RecordId> addSlottedRecords(Iterator<List<DataBox>> values) throws DatabaseException {
+    List<RecordId> rids = new ArrayList<RecordId>();
+    // The next record to add, once encoded.
+    byte[] bytes = null;
+    Integer pageNum = freePageNums.isEmpty() ? null : freePageNums.first();
+    while (bytes != null || values.hasNext()) {
+      if (pageNum == null) {
+        pageNum = allocator.allocPage();
+        freePageNums.add(pageNum);
+      }
+      Page page = allocator.pinPage(pageNum);
+      page.latchExclusive();
+      try {
+        ByteBuffer buf = page.getByteBuffer();
+        while (bytes != null || values.hasNext()) {
+          if (bytes == null) {
+            bytes = encodeSlottedRecord(schema.verify(values.next()));
+          }
+          int entryNum = SlottedPage.insert(buf, numRecordsPerPage, slottedReserve, bytes);
+          if (entryNum == -1) {
+            break;
+          }
+          rids.add(new RecordId(pageNum, (short) entryNum));
+          numRecords++;
+          bytes = null;
+        }
+        if (!hasRoom(buf)) {
+          freePageNums.remove(pageNum);
+        }
+      } finally {
+        page.unlatchExclusive();
+        allocator.unpinPage(page, true);
+      }
+      pageNum = freePageNums.higher(pageNum);
+    }
+    return rids;
+  }
+
+  /**
+   * Returns whether a data page of this table can take another record.
+   */
+  private boolean hasRoom(Page page) {
+    if (format == TableFormat.SLOTTED) {
+      page.latchShared();
+      try {
+        return hasRoom(page.getReadOnlyByteBuffer());
+      } finally {
+        page.unlatchShared();
+      }
+    }
+    return numRecordsOnPage(page) != numRecordsPerPage;
+  }
+
+  /**
+   * Returns whether a slotted page, given its buffer, can take a record of
+   * minRecordSize bytes and still keep its reserve.
+   */
+  private boolean hasRoom(ByteBuffer buf) {
+    return SlottedPage.numRecords(buf) < numRecordsPerPage
+        && SlottedPage.freeSpace(buf) >= minRecordSize + SlottedPage.SLOT_SIZE + slottedReserve;
+  }
+
+  /**
+   * Writes numRecords and freePageNums to the header page and marks them up
+   * to date. Free page numbers that do not fit in the header page are written
+   * to spill pages, which are taken from the last load's spill pages that are
+   * still empty and, if those are too few, allocated. If even the spill page
+   * numbers do not fit, the state is left stale and the next load recounts it.
+   */
+  private synchronized void writeTableState() {
+    int pageSize = allocator.getPageSize();
+    int headerCapacity = (pageSize - stateOffset - stateHeaderSize) / 4;
+    int spillCapacity = (pageSize - spillOffset()) / 4;
+    int numSpillPages = 0;
+    if (freePageNums.size() > headerCapacity) {
+      // Every spill page takes one page number's room in the header.
+      if (spillCapacity <= 1) {
+        return;
+      }
+      numSpillPages = (freePageNums.size() - headerCapacity + spillCapacity - 2)
+                      / (spillCapacity - 1);
+      if (numSpillPages > headerCapacity) {
+        return;
+      }
+    }
+
+    TreeSet<Integer> free = new TreeSet<Integer>(freePageNums);
+    List<Integer> spills = new ArrayList<Integer>();
+    for (int pageNum : spillPageNums) {
+      if (spills.size() < numSpillPages && free.contains(pageNum)
+          && numRecordsOnPage(allocator.fetchPage(pageNum)) == 0) {
+        spills.add(pageNum);
+        free.remove(pageNum);
+      }
+    }
+    if (spills.size() < numSpillPages) {
+      for (int pageNum : allocator.allocPages(numSpillPages - spills.size())) {
+        spills.add(pageNum);
+      }
+    }
+
+    Iterator<Integer> freeIter = free.iterator();
+    int numInHeader = Math.min(free.size(), headerCapacity - spills.size());
+    ByteBuffer buf = ByteBuffer.allocate(stateHeaderSize + 4 * (spills.size() + numInHeader));
+    buf.putInt(cleanStateFlag);
+    buf.putLong(numRecords);
+    buf.putInt(free.size());
+    buf.putInt(spills.size());
+    for (int pageNum : spills) {
+      buf.putInt(pageNum);
+    }
+    for (int i = 0; i < numInHeader; ++i) {
+      buf.putInt(freeIter.next());
+    }
+    for (int pageNum : spills) {
+      // Empty the page's bitmap or slotted header, in case it held records
+      // once, and fill its free space.
+      ByteBuffer spill = ByteBuffer.allocate(pageSize);
+      spill.position(spillOffset());
+      while (freeIter.hasNext() && spill.remaining() >= 4) {
+        spill.putInt(freeIter.next());
+      }
+      allocator.fetchPage(pageNum).writeBytes(0, pageSize, spill.array());
+    }
+    assert(!freeIter.hasNext());
     Page headerPage = allocator.fetchPage(0);
-    ByteBuffer buf = headerPage.getByteBuffer();
-    return Schema.fromBytes(buf);
+    headerPage.writeBytes(stateOffset, buf.capacity(), buf.array());
   }
 
-  private static void writeSchemaToHeaderPage(PageAllocator allocator, Schema schema) {
-    Page headerPage = allocator.fetchPage(allocator.allocPage());
-    assert(0 == headerPage.getPageNum());
-    ByteBuffer buf = headerPage.getByteBuffer();
-    buf.put(schema.toBytes());
+  /**
+   * Loads numRecords and freePageNums from the header page and any spill
+   * pages if they are up to date there, and marks them stale on disk until
+   * the table is closed again.
+   *
+   * @return whether the state was up to date
+   */
+  private boolean readTableState() {
+    int pageSize = allocator.getPageSize();
+    if (stateOffset + stateHeaderSize > pageSize) {
+      return false;
+    }
+    Page headerPage = allocator.fetchPage(0);
+    ByteBuffer buf = headerPage.getReadOnlyByteBuffer();
+    buf.position(stateOffset);
+    if (buf.getInt() != cleanStateFlag) {
+      return false;
+    }
+    numRecords = buf.getLong();
+    int numFreePages = buf.getInt();
+    int numSpillPages = buf.getInt();
+    for (int i = 0; i < numSpillPages; ++i) {
+      spillPageNums.add(buf.getInt());
+    }
+    int numRead = 0;
+    for (; numRead < numFreePages && buf.remaining() >= 4; ++numRead) {
+      freePageNums.add(buf.getInt());
+    }
+    for (int pageNum : spillPageNums) {
+      ByteBuffer spill = allocator.fetchPage(pageNum).getReadOnlyByteBuffer();
+      spill.position(spillOffset());
+      for (; numRead < numFreePages && spill.remaining() >= 4; ++numRead) {
+        freePageNums.add(spill.getInt());
+      }
+      freePageNums.add(pageNum);
+    }
+
+    // Any change from here on makes the state stale, and if we crash before
+    // the table is closed the next load must not trust it.
+    headerPage.writeInt(stateOffset, 0);
+    headerPage.flush();
+    return true;
+  }
+
+  /**
+   * Returns the offset of the free space of an empty data page: the end of
+   * its bitmap, or of its header for a slotted table.
+   */
+  private int spillOffset() {
+    return format == TableFormat.SLOTTED ? SlottedPage.HEADER_SIZE : bitmapSizeInBytes;
   }
 
   /**
@@ -371,18 +929,13 @@ public class Table implements Iterable<Record>, Closeable {
     // schema.getSizeInBytes() bits for the record.
     int recordOverheadInBits = 1 + 8 * schema.getSizeInBytes();
     int pageSizeInBits = pageSize * 8;
-    return pageSizeInBits / recordOverheadInBits;
+    // Record ids number the entries of a page with a short, which a large
+    // page of small records could otherwise overflow.
+    return Math.min(pageSizeInBits / recordOverheadInBits, Short.MAX_VALUE);
   }
 
   private int numRecordsOnPage(Page page) {
-    byte[] bitmap = getBitMap(page);
-    int numRecords = 0;
-    for (int i = 0; i < numRecordsPerPage; ++i) {
-      if (Bits.getBit(bitmap, i) == Bits.Bit.ONE) {
-        numRecords++;
-      }
-    }
-    return numRecords;
+    return Bits.countSetBits(ByteBuffer.wrap(getBitMap(page)), 0, numRecordsPerPage);
   }
 
   private void validateRecordId(RecordId rid) throws DatabaseException {
@@ -411,10 +964,27 @@ public class Table implements Iterable<Record>, Closeable {
       return new TableIterator();
   }
 
+  /**
+   * Returns an iterator over the record IDs of the table whose pages are
+   * brought in as `strategy` says. Large scans should use
+   * AccessStrategy.BULK_READ so as not to flush the buffer pool.
+   */
+  public TableIterator ridIterator(AccessStrategy strategy) {
+      return new TableIterator(strategy);
+  }
+
   public RecordIterator iterator() {
       return new RecordIterator(this, ridIterator());
   }
 
+  /**
+   * Returns an iterator over the records of the table whose pages are brought
+   * in as `strategy` says.
+   */
+  public RecordIterator iterator(AccessStrategy strategy) {
+      return new RecordIterator(this, ridIterator(strategy));
+  }
+
   public BacktrackingIterator<Record> blockIterator(Page[] block) {
     return new RecordIterator(this, new RIDBlockIterator(block));
   }
@@ -438,35 +1008,35 @@ public class Table implements Iterable<Record>, Closeable {
     //member variables go here
     private int currRid;
     private short markRid;
-    private byte[] bitMap;
+    private ByteBuffer bitMap;
+    private Page page;
     private int currPage;
+    // The first valid entry at or after currRid, or -1 if there is none. It is
+    // found once per move of currRid rather than on every call to hasNext.
+    private int nextRid;
     /**
      * The following method signature is provided for guidance, but not necessary. Feel free to
      * implement your own solution using whatever helper methods you would like.
      */
 
     public RIDPageIterator(Page page) {
-      bitMap = getBitMap(page);
+      bitMap = ByteBuffer.wrap(getBitMap(page));
+      this.page = page;
       currPage = page.getPageNum();
+      nextRid = Bits.nextSetBit(bitMap, 0, numRecordsPerPage, 0);
     }
 
     public boolean hasNext() {
-      Bits.Bit one = Bits.Bit.ONE;
-      for (int check = this.currRid; check < 8 * this.bitMap.length; check++) {
-        if (Bits.getBit(this.bitMap, check) == one) {
-          return true;
-        }
-      }
-      return false;
+      return this.nextRid != -1;
     }
 
     public RecordId next() {
-      Bits.Bit one = Bits.Bit.ONE;
-      while (Bits.getBit(this.bitMap, this.currRid) != one) {
-        this.currRid = this.currRid + 1;
+      if (this.nextRid == -1) {
+        throw new NoSuchElementException();
       }
-      short shortCast = (short)(this.currRid);
-      this.currRid = this.currRid + 1;
+      short shortCast = (short)(this.nextRid);
+      this.currRid = this.nextRid + 1;
+      this.nextRid = Bits.nextSetBit(this.bitMap, 0, numRecordsPerPage, this.currRid);
       return new RecordId(this.currPage, shortCast);
     }
 
@@ -477,6 +1047,7 @@ public class Table implements Iterable<Record>, Closeable {
 
     public void reset() {
       this.currRid = this.markRid;
+      this.nextRid = Bits.nextSetBit(this.bitMap, 0, numRecordsPerPage, this.currRid);
     }
   }
 
@@ -589,6 +1160,13 @@ public class Table implements Iterable<Record>, Closeable {
       return this.blockIter.next();
     }
 
+    /**
+     * Returns the page of the record id next() last returned.
+     */
+    Page getCurrentPage() {
+      return ((RIDPageIterator) this.blockIter).page;
+    }
+
     /**
      * Marks the last recordId returned by next().
      *
@@ -633,9 +1211,29 @@ public class Table implements Iterable<Record>, Closeable {
    * RIDBlockIterator is filled in, all tests on TableIterator should
    * automatically pass.
    */
-  public class TableIterator extends RIDBlockIterator {
+  public class TableIterator extends RIDBlockIterator implements Closeable {
+    private final PageIterator pageIter;
+
     public TableIterator() {
-      super((BacktrackingIterator<Page>) Table.iteratorSkipPage(Table.this.allocator.iterator()));
+      this(AccessStrategy.NORMAL);
+    }
+
+    public TableIterator(AccessStrategy strategy) {
+      this(Table.this.allocator.iterator(strategy));
+    }
+
+    private TableIterator(PageIterator pageIter) {
+      super((BacktrackingIterator<Page>) Table.iteratorSkipPage(pageIter));
+      this.pageIter = pageIter;
+    }
+
+    /**
+     * Lets go of the pages a BULK_READ scan keeps outside of the buffer pool.
+     * This happens by itself once the scan is exhausted, so only a scan that
+     * is abandoned early needs to be closed.
+     */
+    public void close() {
+      pageIter.close();
     }
   }
 }
@@ -0,0 +1,17 @@
+package edu.berkeley.cs186.database.table;
+
+/**
+ * How a Table lays out records on its data pages. The format is chosen when the table is created
+ * and recorded in its header page.
+ *
+ *   - FIXED pages begin with a bitmap of their slots, followed by fixed-width records of
+ *     Schema.getSizeInBytes() bytes each, with every string padded to the length of its type.
+ *   - SLOTTED pages begin with a directory of slots, each holding the offset and length of a
+ *     record packed at the end of the page. Strings are stored without their padding (see
+ *     Record.toVariableBytes), so tables of long string columns holding short values fit many
+ *     more records on a page.
+ */
+public enum TableFormat {
+  FIXED,
+  SLOTTED
+}
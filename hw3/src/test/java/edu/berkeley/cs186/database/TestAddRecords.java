@@ -0,0 +1,201 @@
+package edu.berkeley.cs186.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+
+import static org.junit.Assert.*;
+
+public class TestAddRecords {
+  private static final String TABLENAME = "t";
+
+  private Database db;
+  private Schema schema;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void beforeEach() throws IOException, DatabaseException {
+    File dir = tempFolder.newFolder("db");
+    this.db = new Database(dir.getAbsolutePath(), 32);
+    this.schema = new Schema(Arrays.asList("id", "name"),
+                             Arrays.asList(Type.intType(), Type.stringType(20)));
+    this.db.createTableWithIndices(this.schema, TABLENAME, Arrays.asList("id"));
+  }
+
+  @After
+  public void afterEach() {
+    this.db.close();
+  }
+
+  private static List<DataBox> row(int id) {
+    return Arrays.asList(new IntDataBox(id), new StringDataBox("row" + id, 20));
+  }
+
+  private static List<List<DataBox>> rows(int... ids) {
+    List<List<DataBox>> rows = new ArrayList<>();
+    for (int id : ids) {
+      rows.add(row(id));
+    }
+    return rows;
+  }
+
+  private static List<List<DataBox>> range(int from, int to) {
+    List<List<DataBox>> rows = new ArrayList<>();
+    for (int id = from; id < to; id++) {
+      rows.add(row(id));
+    }
+    return rows;
+  }
+
+  @Test
+  public void testTableAddRecordsMatchesAddRecord() throws DatabaseException {
+    Table one = new Table("one", this.schema, new File(tempFolder.getRoot(), "one").getPath());
+    Table many = new Table("many", this.schema, new File(tempFolder.getRoot(), "many").getPath());
+    try {
+      // Leave holes on the first pages for both tables to fill.
+      List<RecordId> oneRids = new ArrayList<>();
+      List<RecordId> manyRids = new ArrayList<>();
+      for (List<DataBox> values : range(0, 500)) {
+        oneRids.add(one.addRecord(values));
+        manyRids.add(many.addRecord(values));
+      }
+      for (int i = 0; i < 500; i += 7) {
+        one.deleteRecord(oneRids.get(i));
+        many.deleteRecord(manyRids.get(i));
+      }
+
+      List<RecordId> expected = new ArrayList<>();
+      for (List<DataBox> values : range(1000, 3000)) {
+        expected.add(one.addRecord(values));
+      }
+      List<RecordId> actual = many.addRecords(range(1000, 3000).iterator());
+      assertEquals(expected, actual);
+      assertEquals(one.getNumRecords(), many.getNumRecords());
+      for (int i = 0; i < actual.size(); i++) {
+        assertEquals(row(1000 + i), many.getRecord(actual.get(i)).getValues());
+      }
+    } finally {
+      one.close();
+      many.close();
+    }
+  }
+
+  @Test
+  public void testTableAddRecordsKeepsRecordsBeforeBadOne() throws DatabaseException {
+    Table table = new Table("bad", this.schema, new File(tempFolder.getRoot(), "bad").getPath());
+    try {
+      List<List<DataBox>> values = range(0, 10);
+      values.add(Arrays.<DataBox>asList(new IntDataBox(10)));
+      values.addAll(range(11, 20));
+      try {
+        table.addRecords(values.iterator());
+        fail();
+      } catch (DatabaseException e) {
+        // expected
+      }
+      assertEquals(10, table.getNumRecords());
+    } finally {
+      table.close();
+    }
+  }
+
+  @Test
+  public void testTransactionAddRecordsUpdatesIndex() throws DatabaseException {
+    Database.Transaction t = this.db.beginTransaction();
+    List<RecordId> rids = t.addRecords(TABLENAME, range(0, 5000).iterator());
+    assertEquals(5000, rids.size());
+    assertEquals(5000, t.getNumRecords(TABLENAME));
+    for (int id = 0; id < 5000; id += 37) {
+      Iterator<Record> iter = t.lookupKey(TABLENAME, "id", new IntDataBox(id));
+      assertEquals(row(id), iter.next().getValues());
+      assertFalse(iter.hasNext());
+      assertEquals(row(id), t.getRecord(TABLENAME, rids.get(id)).getValues());
+    }
+    t.end();
+  }
+
+  @Test
+  public void testDuplicateWithinBatchAddsNothing() throws DatabaseException {
+    Database.Transaction t = this.db.beginTransaction();
+    try {
+      t.addRecords(TABLENAME, rows(1, 2, 3, 2).iterator());
+      fail();
+    } catch (DatabaseException e) {
+      // expected
+    }
+    assertEquals(0, t.getNumRecords(TABLENAME));
+    assertFalse(t.contains(TABLENAME, "id", new IntDataBox(1)));
+    t.end();
+  }
+
+  @Test
+  public void testDuplicateOfExistingKeyAddsNothing() throws DatabaseException {
+    Database.Transaction t = this.db.beginTransaction();
+    t.addRecords(TABLENAME, rows(1, 2).iterator());
+    try {
+      t.addRecords(TABLENAME, rows(3, 4, 1).iterator());
+      fail();
+    } catch (DatabaseException e) {
+      // expected
+    }
+    assertEquals(2, t.getNumRecords(TABLENAME));
+    assertFalse(t.contains(TABLENAME, "id", new IntDataBox(3)));
+    // Every row of the table is still reachable through the index.
+    Iterator<Record> iter = t.getRecordIterator(TABLENAME);
+    while (iter.hasNext()) {
+      DataBox id = iter.next().getValues().get(0);
+      assertTrue(t.contains(TABLENAME, "id", id));
+    }
+    t.end();
+  }
+
+  @Test
+  public void testSchemaMismatchAddsNothingOfItsBatch() throws DatabaseException {
+    Database.Transaction t = this.db.beginTransaction();
+    List<List<DataBox>> values = rows(1, 2);
+    values.add(Arrays.<DataBox>asList(new IntDataBox(3)));
+    try {
+      t.addRecords(TABLENAME, values.iterator());
+      fail();
+    } catch (DatabaseException e) {
+      // expected
+    }
+    assertEquals(0, t.getNumRecords(TABLENAME));
+    t.end();
+  }
+
+  @Test
+  public void testAtomicTransactionDefersAddRecords() throws DatabaseException {
+    Database.AtomicTransaction t = this.db.createAtomicTransaction();
+    assertNull(t.addRecords(TABLENAME, range(0, 100).iterator()));
+    Database.Transaction check = this.db.beginTransaction();
+    assertEquals(0, check.getNumRecords(TABLENAME));
+    check.end();
+
+    t.run();
+    check = this.db.beginTransaction();
+    assertEquals(100, check.getNumRecords(TABLENAME));
+    assertTrue(check.contains(TABLENAME, "id", new IntDataBox(99)));
+    check.end();
+  }
+}
@@ -0,0 +1,219 @@
+package edu.berkeley.cs186.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+
+import static org.junit.Assert.*;
+
+public class TestLoadCsv {
+  private static final String TABLENAME = "csv";
+
+  private File dir;
+  private Database db;
+  private Schema schema;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void beforeEach() throws IOException, DatabaseException {
+    this.dir = tempFolder.newFolder("db");
+    this.db = new Database(this.dir.getAbsolutePath(), 32);
+    this.schema = new Schema(Arrays.asList("id", "name", "score", "ok"),
+                             Arrays.asList(Type.intType(), Type.stringType(16),
+                                           Type.floatType(), Type.boolType()));
+  }
+
+  @After
+  public void afterEach() {
+    this.db.close();
+  }
+
+  private String writeCsv(List<String> lines) throws IOException {
+    File file = tempFolder.newFile();
+    Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+    return file.getAbsolutePath();
+  }
+
+  private static List<DataBox> row(int id, String name, float score, boolean ok) {
+    return Arrays.asList(new IntDataBox(id), new StringDataBox(name, 16),
+                         new FloatDataBox(score), new BoolDataBox(ok));
+  }
+
+  @Test
+  public void testLoadWithHeaderAndQuotes() throws IOException, DatabaseException {
+    // Any field may be quoted, including an empty one.
+    String csv = writeCsv(Arrays.asList(
+      "id,name,score,ok",
+      "1,alice,1.5,true",
+      "2,\"bob smith\",\"2.25\",FALSE",
+      "\"3\",\"\",-3,true"
+    ));
+    assertEquals(3, this.db.loadCsv(csv, true, this.schema, TABLENAME, Arrays.asList("id")));
+
+    Database.Transaction t = this.db.beginTransaction();
+    Iterator<Record> iter = t.getRecordIterator(TABLENAME);
+    assertTrue(iter.hasNext());
+    assertEquals(row(1, "alice", 1.5f, true), iter.next().getValues());
+    assertTrue(iter.hasNext());
+    assertEquals(row(2, "bob smith", 2.25f, false), iter.next().getValues());
+    assertTrue(iter.hasNext());
+    assertEquals(row(3, "", -3f, true), iter.next().getValues());
+    assertFalse(iter.hasNext());
+    t.end();
+  }
+
+  @Test
+  public void testQuotedCommaIsOneField() throws IOException {
+    String csv = writeCsv(Arrays.asList("1,\"a,b\",1,true"));
+    try {
+      this.db.loadCsv(csv, false, this.schema, TABLENAME, Arrays.asList("id"));
+      fail();
+    } catch (DatabaseException e) {
+      // One field holding an illegal comma, rather than five fields.
+      assertFalse(e.getMessage(), e.getMessage().contains("fields"));
+    }
+  }
+
+  @Test
+  public void testLoadManyBatchesBuildsIndices() throws IOException, DatabaseException {
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      lines.add(String.format("%d,name%d,%d,%s", i, i, -i, i % 2 == 0));
+    }
+    String csv = writeCsv(lines);
+    assertEquals(20000, this.db.loadCsv(csv, false, this.schema, TABLENAME,
+                                        Arrays.asList("id", "name")));
+
+    Database.Transaction t = this.db.beginTransaction();
+    assertEquals(20000, t.getNumRecords(TABLENAME));
+    // The records are in file order, and the indices cover all of them.
+    Iterator<Record> iter = t.getRecordIterator(TABLENAME);
+    for (int i = 0; i < 20000; i++) {
+      assertTrue(iter.hasNext());
+      assertEquals(row(i, "name" + i, -i, i % 2 == 0), iter.next().getValues());
+    }
+    assertFalse(iter.hasNext());
+    for (int i = 0; i < 20000; i += 101) {
+      Iterator<Record> byId = t.lookupKey(TABLENAME, "id", new IntDataBox(i));
+      assertEquals(row(i, "name" + i, -i, i % 2 == 0), byId.next().getValues());
+      assertTrue(t.contains(TABLENAME, "name", new StringDataBox("name" + i, 16)));
+    }
+    Iterator<Record> sorted = t.sortedScan(TABLENAME, "id");
+    for (int i = 0; i < 20000; i++) {
+      assertTrue(sorted.hasNext());
+      assertEquals(new IntDataBox(i), sorted.next().getValues().get(0));
+    }
+    assertFalse(sorted.hasNext());
+    t.end();
+  }
+
+  @Test
+  public void testIndexKeysSortedInRuns() throws IOException, DatabaseException {
+    // Out of key order, so that every run holds keys from all over the range.
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      int id = (i * 7919) % 5000;
+      lines.add(String.format("%d,name%d,%d,%s", id, id, i, true));
+    }
+    String csv = writeCsv(lines);
+    assertEquals(5000, this.db.loadCsv(csv, false, this.schema, TABLENAME,
+                                       Arrays.asList("id", "name"), 300));
+
+    Database.Transaction t = this.db.beginTransaction();
+    Iterator<Record> sorted = t.sortedScan(TABLENAME, "id");
+    for (int i = 0; i < 5000; i++) {
+      assertTrue(sorted.hasNext());
+      List<DataBox> values = sorted.next().getValues();
+      assertEquals(new IntDataBox(i), values.get(0));
+      assertEquals(new StringDataBox("name" + i, 16), values.get(1));
+    }
+    assertFalse(sorted.hasNext());
+    for (int i = 0; i < 5000; i += 37) {
+      Iterator<Record> byName = t.lookupKey(TABLENAME, "name", new StringDataBox("name" + i, 16));
+      assertEquals(new IntDataBox(i), byName.next().getValues().get(0));
+    }
+    t.end();
+    // The runs went away with the load.
+    String[] temp = new File(this.dir, "temp").list();
+    assertTrue(temp == null || temp.length == 0);
+  }
+
+  @Test
+  public void testDuplicateKeyInAnotherRun() throws IOException {
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      lines.add(String.format("%d,a,1,true", i));
+    }
+    lines.add("17,b,2,false");
+    String csv = writeCsv(lines);
+    try {
+      this.db.loadCsv(csv, false, this.schema, TABLENAME, Arrays.asList("id"), 10);
+      fail();
+    } catch (DatabaseException e) {
+      // expected
+    }
+    assertNull(this.db.getTable(TABLENAME));
+    assertFalse(new File(this.dir, TABLENAME + Table.FILENAME_EXTENSION).exists());
+  }
+
+  @Test
+  public void testBadLineDropsTable() throws IOException {
+    String csv = writeCsv(Arrays.asList("1,a,1,true", "2,b,2,maybe", "3,c,3,false"));
+    try {
+      this.db.loadCsv(csv, false, this.schema, TABLENAME, Arrays.asList("id"));
+      fail();
+    } catch (DatabaseException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Line 2:"));
+    }
+    assertNull(this.db.getTable(TABLENAME));
+    assertFalse(new File(this.dir, TABLENAME + Table.FILENAME_EXTENSION).exists());
+    assertFalse(new File(this.dir, TABLENAME + ",id.index").exists());
+  }
+
+  @Test
+  public void testWrongNumberOfFields() throws IOException {
+    String csv = writeCsv(Arrays.asList("1,a,1,true", "2,b,2"));
+    try {
+      this.db.loadCsv(csv, false, this.schema, TABLENAME, Arrays.asList("id"));
+      fail();
+    } catch (DatabaseException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Line 2:"));
+    }
+    assertNull(this.db.getTable(TABLENAME));
+  }
+
+  @Test
+  public void testDuplicateKeyDropsTable() throws IOException {
+    String csv = writeCsv(Arrays.asList("1,a,1,true", "2,b,2,true", "1,c,3,false"));
+    try {
+      this.db.loadCsv(csv, false, this.schema, TABLENAME, Arrays.asList("id"));
+      fail();
+    } catch (DatabaseException e) {
+      // expected
+    }
+    assertNull(this.db.getTable(TABLENAME));
+  }
+}
@@ -0,0 +1,109 @@
+package edu.berkeley.cs186.database.common;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestBits {
+  // Sets bits of a bitmap one at a time, so that the word-at-a-time methods
+  // are checked against the bit-at-a-time ones.
+  private static byte[] bitmap(int numBytes, int... setBits) {
+    ByteBuffer buf = ByteBuffer.allocate(numBytes);
+    for (int i : setBits) {
+      Bits.setBit(buf, i, Bits.Bit.ONE);
+    }
+    return buf.array();
+  }
+
+  @Test
+  public void testNextSetBitAtWordBoundaries() {
+    byte[] bytes = bitmap(24, 0, 63, 64, 127, 191);
+    assertEquals(0, Bits.nextSetBit(bytes, 0));
+    assertEquals(63, Bits.nextSetBit(bytes, 1));
+    assertEquals(63, Bits.nextSetBit(bytes, 63));
+    assertEquals(64, Bits.nextSetBit(bytes, 64));
+    assertEquals(127, Bits.nextSetBit(bytes, 65));
+    assertEquals(191, Bits.nextSetBit(bytes, 128));
+    assertEquals(-1, Bits.nextSetBit(bytes, 192));
+    for (int i : new int[] {0, 63, 64, 127, 191}) {
+      assertEquals(Bits.Bit.ONE, Bits.getBit(bytes, i));
+    }
+  }
+
+  @Test
+  public void testNextClearBitAtWordBoundaries() {
+    byte[] bytes = new byte[24];
+    Arrays.fill(bytes, (byte) 0xFF);
+    ByteBuffer buf = ByteBuffer.wrap(bytes);
+    for (int i : new int[] {63, 64, 128}) {
+      Bits.setBit(buf, i, Bits.Bit.ZERO);
+    }
+    assertEquals(63, Bits.nextClearBit(bytes, 0));
+    assertEquals(64, Bits.nextClearBit(bytes, 64));
+    assertEquals(128, Bits.nextClearBit(bytes, 65));
+    assertEquals(-1, Bits.nextClearBit(bytes, 129));
+  }
+
+  @Test
+  public void testNumBitsNotAWholeWord() {
+    // 70 bits: one whole word and 6 bits of a second, in 9 bytes.
+    byte[] bytes = bitmap(9, 65);
+    ByteBuffer buf = ByteBuffer.wrap(bytes);
+    assertEquals(65, Bits.nextSetBit(buf, 0, 70, 0));
+    assertEquals(-1, Bits.nextSetBit(buf, 0, 70, 66));
+    assertEquals(-1, Bits.nextSetBit(buf, 0, 65, 0));
+
+    // The bits past numBits are not clear bits of the bitmap.
+    Arrays.fill(bytes, (byte) 0xFF);
+    assertEquals(-1, Bits.nextClearBit(buf, 0, 70, 0));
+    Bits.setBit(buf, 69, Bits.Bit.ZERO);
+    assertEquals(69, Bits.nextClearBit(buf, 0, 70, 0));
+    assertEquals(-1, Bits.nextClearBit(buf, 0, 69, 0));
+  }
+
+  @Test
+  public void testOffsetBitmap() {
+    // A bitmap that starts part way into the buffer and into a word.
+    ByteBuffer buf = ByteBuffer.allocate(32);
+    buf.put(0, (byte) 0xFF);
+    buf.put(31, (byte) 0xFF);
+    buf.position(3);
+    Bits.setBit(buf, 0, Bits.Bit.ONE);
+    Bits.setBit(buf, 64, Bits.Bit.ONE);
+    Bits.setBit(buf, 100, Bits.Bit.ONE);
+    buf.position(0);
+    assertEquals(0, Bits.nextSetBit(buf, 3, 128, 0));
+    assertEquals(64, Bits.nextSetBit(buf, 3, 128, 1));
+    assertEquals(100, Bits.nextSetBit(buf, 3, 128, 65));
+    assertEquals(-1, Bits.nextSetBit(buf, 3, 128, 101));
+    assertEquals(1, Bits.nextClearBit(buf, 3, 128, 0));
+    assertEquals(3, Bits.countSetBits(buf, 3, 128));
+    assertEquals(0, buf.position());
+  }
+
+  @Test
+  public void testCountSetBits() {
+    assertEquals(0, Bits.countSetBits(new byte[0]));
+    assertEquals(5, Bits.countSetBits(bitmap(24, 0, 63, 64, 127, 191)));
+
+    byte[] bytes = new byte[16];
+    Arrays.fill(bytes, (byte) 0xFF);
+    ByteBuffer buf = ByteBuffer.wrap(bytes);
+    assertEquals(128, Bits.countSetBits(bytes));
+    assertEquals(64, Bits.countSetBits(buf, 0, 64));
+    assertEquals(65, Bits.countSetBits(buf, 0, 65));
+    assertEquals(127, Bits.countSetBits(buf, 0, 127));
+    assertEquals(60, Bits.countSetBits(buf, 8, 60));
+  }
+
+  @Test
+  public void testFromOutOfRange() {
+    byte[] bytes = bitmap(8, 5);
+    assertEquals(5, Bits.nextSetBit(bytes, -3));
+    assertEquals(-1, Bits.nextSetBit(bytes, 64));
+    assertEquals(-1, Bits.nextClearBit(bytes, 1000));
+  }
+}
@@ -0,0 +1,149 @@
+package edu.berkeley.cs186.database.index;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.RecordId;
+
+import static org.junit.Assert.*;
+
+public class TestBulkLoad {
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private String filename() {
+    return new File(tempFolder.getRoot(), "index" + BPlusTree.FILENAME_EXTENSION).getPath();
+  }
+
+  private static RecordId rid(int i) {
+    return new RecordId(i, (short) (i % 100));
+  }
+
+  private static List<Pair<DataBox, RecordId>> data(int n) {
+    List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+    for (int i = 0; i < n; ++i) {
+      data.add(new Pair<>(new IntDataBox(i), rid(i)));
+    }
+    return data;
+  }
+
+  @Test
+  public void testFullLeaves() throws BPlusTreeException {
+    BPlusTree tree = new BPlusTree(filename(), Type.intType(), 2);
+    tree.bulkLoad(data(10).iterator(), 1.0f);
+    String leaf0 = "((0 (0 0)) (1 (1 1)) (2 (2 2)) (3 (3 3)))";
+    String leaf1 = "((4 (4 4)) (5 (5 5)) (6 (6 6)) (7 (7 7)))";
+    String leaf2 = "((8 (8 8)) (9 (9 9)))";
+    assertEquals(String.format("(%s 4 %s 8 %s)", leaf0, leaf1, leaf2), tree.toSexp());
+  }
+
+  @Test
+  public void testPartialLeavesBuildInnerLevels() throws BPlusTreeException {
+    // Leaves of one entry each, under inner nodes of at most three children.
+    BPlusTree tree = new BPlusTree(filename(), Type.intType(), 1);
+    tree.bulkLoad(data(7).iterator(), 0.5f);
+    String inner0 = "(((0 (0 0))) 1 ((1 (1 1))))";
+    String inner1 = "(((2 (2 2))) 3 ((3 (3 3))))";
+    String inner2 = "(((4 (4 4))) 5 ((5 (5 5))) 6 ((6 (6 6))))";
+    assertEquals(String.format("(%s 2 %s 4 %s)", inner0, inner1, inner2), tree.toSexp());
+  }
+
+  @Test
+  public void testLargeLoadThenPut() throws BPlusTreeException {
+    BPlusTree tree = new BPlusTree(filename(), Type.intType(), 5);
+    List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+    for (int i = 0; i < 10000; ++i) {
+      data.add(new Pair<>(new IntDataBox(2 * i), rid(i)));
+    }
+    tree.bulkLoad(data.iterator(), 0.75f);
+
+    for (int i = 0; i < 10000; ++i) {
+      assertEquals(rid(i), tree.get(new IntDataBox(2 * i)).get());
+      assertFalse(tree.get(new IntDataBox(2 * i + 1)).isPresent());
+    }
+    // The leaves have room for the odd keys in between.
+    for (int i = 0; i < 10000; i += 3) {
+      tree.put(new IntDataBox(2 * i + 1), rid(-i));
+    }
+    Iterator<RecordId> iter = tree.scanAll();
+    for (int i = 0; i < 10000; ++i) {
+      assertEquals(rid(i), iter.next());
+      if (i % 3 == 0) {
+        assertEquals(rid(-i), iter.next());
+      }
+    }
+    assertFalse(iter.hasNext());
+  }
+
+  @Test
+  public void testReopenAfterClose() throws BPlusTreeException {
+    BPlusTree tree = new BPlusTree(filename(), Type.intType(), 4);
+    tree.bulkLoad(data(5000).iterator(), 1.0f);
+    tree.close();
+
+    tree = new BPlusTree(filename());
+    for (int i = 0; i < 5000; i += 7) {
+      assertEquals(rid(i), tree.get(new IntDataBox(i)).get());
+    }
+    Iterator<RecordId> iter = tree.scanGreaterEqual(new IntDataBox(4990));
+    for (int i = 4990; i < 5000; ++i) {
+      assertEquals(rid(i), iter.next());
+    }
+    assertFalse(iter.hasNext());
+    tree.close();
+  }
+
+  @Test
+  public void testNumPagesCountsNodes() throws BPlusTreeException {
+    BPlusTree tree = new BPlusTree(filename(), Type.intType(), 2);
+    tree.bulkLoad(data(10).iterator(), 1.0f);
+    // The header page, three leaves and their parent. Nodes get their pages
+    // from extents, but pages no node has taken yet do not count.
+    assertEquals(5, tree.getNumPages());
+    tree.close();
+
+    tree = new BPlusTree(filename());
+    assertEquals(5, tree.getNumPages());
+    assertEquals(5, tree.getAllocator().getNumPages());
+    tree.close();
+  }
+
+  @Test
+  public void testOutOfOrderKeysLeaveTreeEmpty() throws BPlusTreeException {
+    BPlusTree tree = new BPlusTree(filename(), Type.intType(), 2);
+    List<Pair<DataBox, RecordId>> data = data(20);
+    data.add(new Pair<>(new IntDataBox(5), rid(5)));
+    try {
+      tree.bulkLoad(data.iterator(), 1.0f);
+      fail();
+    } catch (BPlusTreeException e) {
+      // expected
+    }
+    assertFalse(tree.scanAll().hasNext());
+    tree.put(new IntDataBox(1), rid(1));
+    assertEquals(rid(1), tree.get(new IntDataBox(1)).get());
+  }
+
+  @Test(expected = BPlusTreeException.class)
+  public void testNonEmptyTree() throws BPlusTreeException {
+    BPlusTree tree = new BPlusTree(filename(), Type.intType(), 2);
+    tree.put(new IntDataBox(100), rid(100));
+    tree.bulkLoad(data(10).iterator(), 1.0f);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadFillFactor() throws BPlusTreeException {
+    BPlusTree tree = new BPlusTree(filename(), Type.intType(), 2);
+    tree.bulkLoad(data(10).iterator(), 1.5f);
+  }
+}
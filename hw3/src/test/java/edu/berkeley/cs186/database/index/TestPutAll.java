@@ -0,0 +1,161 @@
+package edu.berkeley.cs186.database.index;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.RecordId;
+
+import static org.junit.Assert.*;
+
+public class TestPutAll {
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private String filename(String name) {
+    return new File(tempFolder.getRoot(), name + BPlusTree.FILENAME_EXTENSION).getPath();
+  }
+
+  private static RecordId rid(int i) {
+    return new RecordId(i, (short) (i % 100));
+  }
+
+  private static Pair<DataBox, RecordId> entry(int i) {
+    return new Pair<>(new IntDataBox(i), rid(i));
+  }
+
+  private static List<Pair<DataBox, RecordId>> range(int from, int to) {
+    List<Pair<DataBox, RecordId>> entries = new ArrayList<>();
+    for (int i = from; i < to; ++i) {
+      entries.add(entry(i));
+    }
+    return entries;
+  }
+
+  @Test
+  public void testBatchIntoOneLeaf() throws BPlusTreeException {
+    BPlusTree tree = new BPlusTree(filename("t"), Type.intType(), 2);
+    tree.put(new IntDataBox(0), rid(0));
+    List<Pair<DataBox, RecordId>> entries = range(1, 10);
+    Collections.reverse(entries);
+    tree.putAll(entries);
+    String leaf0 = "((0 (0 0)) (1 (1 1)) (2 (2 2)))";
+    String leaf1 = "((3 (3 3)) (4 (4 4)) (5 (5 5)))";
+    String leaf2 = "((6 (6 6)) (7 (7 7)) (8 (8 8)) (9 (9 9)))";
+    assertEquals(String.format("(%s 3 %s 6 %s)", leaf0, leaf1, leaf2), tree.toSexp());
+  }
+
+  @Test
+  public void testOneOverflowSplitsLikePut() throws BPlusTreeException {
+    BPlusTree single = new BPlusTree(filename("single"), Type.intType(), 2);
+    BPlusTree batch = new BPlusTree(filename("batch"), Type.intType(), 2);
+    // Full leaves [0 2 4 6] [8 10 12 14] [16 18 20 22].
+    List<Pair<DataBox, RecordId>> evens = new ArrayList<>();
+    for (int i = 0; i < 24; i += 2) {
+      evens.add(entry(i));
+    }
+    single.bulkLoad(evens.iterator(), 1.0f);
+    batch.bulkLoad(evens.iterator(), 1.0f);
+    // Each of 1, 9 and 17 overflows a different leaf by one, and the three
+    // splits overflow the root.
+    List<Pair<DataBox, RecordId>> entries = new ArrayList<>();
+    for (int i : new int[] {1, 9, 17}) {
+      single.put(new IntDataBox(i), rid(i));
+      entries.add(entry(i));
+    }
+    batch.putAll(entries);
+    assertEquals(single.toSexp(), batch.toSexp());
+  }
+
+  @Test
+  public void testEmptyTreeIsBulkLoaded() throws BPlusTreeException {
+    BPlusTree loaded = new BPlusTree(filename("loaded"), Type.intType(), 2);
+    loaded.bulkLoad(range(0, 50).iterator(), 1.0f);
+    BPlusTree tree = new BPlusTree(filename("t"), Type.intType(), 2);
+    List<Pair<DataBox, RecordId>> entries = range(0, 50);
+    Collections.shuffle(entries, new Random(186));
+    tree.putAll(entries);
+    assertEquals(loaded.toSexp(), tree.toSexp());
+  }
+
+  @Test
+  public void testRootSplitsIntoManyNodes() throws BPlusTreeException {
+    BPlusTree tree = new BPlusTree(filename("t"), Type.intType(), 1);
+    tree.put(new IntDataBox(-1), rid(-1));
+    tree.put(new IntDataBox(1000), rid(1000));
+    List<Pair<DataBox, RecordId>> entries = range(0, 1000);
+    Collections.shuffle(entries, new Random(186));
+    tree.putAll(entries);
+    tree.close();
+
+    tree = new BPlusTree(filename("t"));
+    Iterator<RecordId> iter = tree.scanAll();
+    for (int i = -1; i <= 1000; ++i) {
+      assertEquals(rid(i), tree.get(new IntDataBox(i)).get());
+      assertEquals(rid(i), iter.next());
+    }
+    assertFalse(iter.hasNext());
+    // The tree still grows with single puts.
+    tree.put(new IntDataBox(1001), rid(1001));
+    assertEquals(rid(1001), tree.get(new IntDataBox(1001)).get());
+    tree.close();
+  }
+
+  @Test
+  public void testBatchesIntoLargeTree() throws BPlusTreeException {
+    BPlusTree tree = new BPlusTree(filename("t"), Type.intType(), 3);
+    List<Pair<DataBox, RecordId>> entries = range(0, 5000);
+    Collections.shuffle(entries, new Random(186));
+    for (int i = 0; i < entries.size(); i += 250) {
+      tree.putAll(entries.subList(i, i + 250));
+    }
+    Iterator<RecordId> iter = tree.scanAll();
+    for (int i = 0; i < 5000; ++i) {
+      assertEquals(rid(i), iter.next());
+    }
+    assertFalse(iter.hasNext());
+  }
+
+  @Test
+  public void testKeyInTreeLeavesTreeUnchanged() throws BPlusTreeException {
+    BPlusTree tree = new BPlusTree(filename("t"), Type.intType(), 2);
+    tree.putAll(range(0, 40));
+    String before = tree.toSexp();
+    List<Pair<DataBox, RecordId>> entries = range(40, 80);
+    entries.add(entry(17));
+    try {
+      tree.putAll(entries);
+      fail();
+    } catch (BPlusTreeException e) {
+      // expected
+    }
+    assertEquals(before, tree.toSexp());
+    assertFalse(tree.get(new IntDataBox(40)).isPresent());
+  }
+
+  @Test
+  public void testKeyRepeatedInBatch() throws BPlusTreeException {
+    BPlusTree tree = new BPlusTree(filename("t"), Type.intType(), 2);
+    tree.put(new IntDataBox(100), rid(100));
+    List<Pair<DataBox, RecordId>> entries = range(0, 10);
+    entries.add(entry(3));
+    try {
+      tree.putAll(entries);
+      fail();
+    } catch (BPlusTreeException e) {
+      // expected
+    }
+    assertFalse(tree.get(new IntDataBox(0)).isPresent());
+  }
+}
@@ -0,0 +1,103 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class TestAllocPages {
+  private String filename;
+  private PageAllocator allocator;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void beforeEach() throws IOException {
+    this.filename = tempFolder.newFile("extent.alloc").getAbsolutePath();
+    this.allocator = new PageAllocator(this.filename, true, false);
+  }
+
+  @After
+  public void afterEach() {
+    this.allocator.close();
+  }
+
+  private static void assertConsecutive(int first, int n, int[] pageNums) {
+    assertEquals(n, pageNums.length);
+    for (int i = 0; i < n; i++) {
+      assertEquals(first + i, pageNums[i]);
+    }
+  }
+
+  @Test
+  public void testRunIsConsecutive() {
+    int[] pageNums = this.allocator.allocPages(50);
+    assertConsecutive(0, 50, pageNums);
+    assertEquals(50, this.allocator.getNumPages());
+    for (int pageNum : pageNums) {
+      assertEquals(0, this.allocator.fetchPage(pageNum).readInt(0));
+    }
+    assertEquals(50, this.allocator.allocPage());
+  }
+
+  @Test
+  public void testRunSkipsHolesThatAreTooShort() {
+    for (int i = 0; i < 10; i++) {
+      this.allocator.allocPage();
+    }
+    this.allocator.freePage(2);
+    this.allocator.freePage(5);
+    this.allocator.freePage(6);
+    assertConsecutive(10, 3, this.allocator.allocPages(3));
+    assertConsecutive(5, 2, this.allocator.allocPages(2));
+    assertEquals(2, this.allocator.allocPage());
+    assertEquals(13, this.allocator.getNumPages());
+  }
+
+  @Test
+  public void testRunZeroesReusedPages() {
+    for (int i = 0; i < 8; i++) {
+      this.allocator.fetchPage(this.allocator.allocPage()).writeInt(0, 0xff);
+    }
+    for (int i = 0; i < 8; i++) {
+      this.allocator.freePage(i);
+    }
+    int[] pageNums = this.allocator.allocPages(8);
+    assertConsecutive(0, 8, pageNums);
+    for (int pageNum : pageNums) {
+      assertEquals(0, this.allocator.fetchPage(pageNum).readInt(0));
+    }
+  }
+
+  @Test
+  public void testRunSurvivesReopen() {
+    int[] pageNums = this.allocator.allocPages(20);
+    for (int pageNum : pageNums) {
+      this.allocator.fetchPage(pageNum).writeInt(0, pageNum * 7);
+    }
+    this.allocator.close();
+
+    this.allocator = new PageAllocator(this.filename, false, false);
+    assertEquals(20, this.allocator.getNumPages());
+    Iterator<Page> iter = this.allocator.iterator();
+    for (int i = 0; i < 20; i++) {
+      Page p = iter.next();
+      assertEquals(i, p.getPageNum());
+      assertEquals(i * 7, p.readInt(0));
+    }
+    assertFalse(iter.hasNext());
+  }
+
+  @Test(expected = PageException.class)
+  public void testRunLongerThanAPage() {
+    this.allocator.allocPages(this.allocator.getPageSize() + 1);
+  }
+}
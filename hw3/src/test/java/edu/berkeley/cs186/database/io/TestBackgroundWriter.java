@@ -0,0 +1,120 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class TestBackgroundWriter {
+  private PageAllocator allocator;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void beforeEach() throws IOException {
+    String filename = tempFolder.newFile("writer.alloc").getAbsolutePath();
+    this.allocator = new PageAllocator(filename, true, true);
+  }
+
+  @After
+  public void afterEach() {
+    this.allocator.close();
+  }
+
+  private Page writePage(int value) {
+    Page page = this.allocator.fetchPage(this.allocator.allocPage());
+    page.writeInt(0, value);
+    assertTrue(page.isDirty());
+    return page;
+  }
+
+  @Test
+  public void testWriteDirtyPages() {
+    Page[] pages = new Page[10];
+    for (int i = 0; i < pages.length; i++) {
+      pages[i] = writePage(i);
+    }
+    PageAllocatorMetrics metrics = this.allocator.getMetrics();
+    long backgroundWrites = metrics.getBackgroundWrites();
+    this.allocator.writeDirtyPages();
+    for (Page page : pages) {
+      assertFalse(page.isDirty());
+    }
+    assertEquals(backgroundWrites + pages.length, metrics.getBackgroundWrites());
+
+    // Nothing is left to write.
+    this.allocator.writeDirtyPages();
+    assertEquals(backgroundWrites + pages.length, metrics.getBackgroundWrites());
+  }
+
+  @Test
+  public void testPinnedPageStaysDirty() {
+    int pageNum = writePage(1).getPageNum();
+    Page page = this.allocator.pinPage(pageNum);
+    page.writeInt(4, 2);
+    this.allocator.writeDirtyPages();
+    assertTrue(page.isDirty());
+
+    this.allocator.unpinPage(page, true);
+    this.allocator.writeDirtyPages();
+    assertFalse(page.isDirty());
+  }
+
+  @Test
+  public void testLatchedPageStaysDirty() throws InterruptedException {
+    Page page = writePage(1);
+    CountDownLatch latched = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    Thread writer = new Thread(() -> {
+      page.latchExclusive();
+      try {
+        page.writeInt(4, 2);
+        latched.countDown();
+        done.await();
+        page.writeInt(8, 3);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        page.unlatchExclusive();
+      }
+    });
+    writer.start();
+    latched.await();
+    // The writer is in the middle of its writes, so the page must not be
+    // marked clean under it.
+    this.allocator.writeDirtyPages();
+    assertTrue(page.isDirty());
+    done.countDown();
+    writer.join();
+
+    assertTrue(page.isDirty());
+    this.allocator.writeDirtyPages();
+    assertFalse(page.isDirty());
+    assertEquals(3, page.readInt(8));
+  }
+
+  @Test
+  public void testBackgroundThreadWritesPages() throws InterruptedException {
+    Page page = writePage(1);
+    PageAllocatorMetrics metrics = this.allocator.getMetrics();
+    this.allocator.setBackgroundWriteInterval(10);
+    assertEquals(10, this.allocator.getBackgroundWriteInterval());
+    // The writes are counted once the page has been written and forced.
+    long deadline = System.currentTimeMillis() + 10000;
+    while (metrics.getBackgroundWrites() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, metrics.getBackgroundWrites());
+    assertFalse(page.isDirty());
+
+    this.allocator.setBackgroundWriteInterval(0);
+    assertEquals(0, this.allocator.getBackgroundWriteInterval());
+  }
+}
@@ -0,0 +1,140 @@
+package edu.berkeley.cs186.database.io;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestBufferPool {
+  private static Page newPage(int pageNum) {
+    return new Page(ByteBuffer.allocate(Page.pageSize), null, pageNum, false);
+  }
+
+  private static int numResident(BufferPool pool, int numPages) {
+    int n = 0;
+    for (int i = 0; i < numPages; i++) {
+      if (pool.contains(i)) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPartitionsMustBePowerOfTwo() {
+    new BufferPool(12, 3, EvictionPolicy.CLOCK);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCapacityAtLeastPartitions() {
+    new BufferPool(4, 8, EvictionPolicy.CLOCK);
+  }
+
+  @Test
+  public void testGetAfterPut() {
+    BufferPool pool = new BufferPool(16, 4, EvictionPolicy.CLOCK);
+    Page page = newPage(7);
+    assertNull(pool.get(7, AllocatorClass.BASE_TABLE));
+    assertSame(page, pool.putIfAbsent(7, page, AllocatorClass.BASE_TABLE));
+    assertSame(page, pool.get(7, AllocatorClass.BASE_TABLE));
+    assertTrue(pool.contains(7));
+    assertFalse(pool.contains(8));
+  }
+
+  @Test
+  public void testPutIfAbsentKeepsResidentPage() {
+    BufferPool pool = new BufferPool(16, 4, EvictionPolicy.CLOCK);
+    Page first = newPage(3);
+    Page second = newPage(3);
+    pool.putIfAbsent(3, first, AllocatorClass.BASE_TABLE);
+    assertSame(first, pool.putIfAbsent(3, second, AllocatorClass.BASE_TABLE));
+    assertTrue(pool.isResident(3, first));
+    assertFalse(pool.isResident(3, second));
+  }
+
+  @Test
+  public void testCapacityIsBoundAcrossPartitions() {
+    for (EvictionPolicy policy : EvictionPolicy.values()) {
+      BufferPool pool = new BufferPool(32, 8, policy);
+      for (int i = 0; i < 1000; i++) {
+        pool.putIfAbsent(i, newPage(i), AllocatorClass.BASE_TABLE);
+      }
+      assertTrue(policy.toString(), numResident(pool, 1000) <= 32);
+      assertTrue(policy.toString(), numResident(pool, 1000) > 0);
+    }
+  }
+
+  @Test
+  public void testRemove() {
+    BufferPool pool = new BufferPool(16, 4, EvictionPolicy.CLOCK);
+    Page page = newPage(5);
+    pool.putIfAbsent(5, page, AllocatorClass.BASE_TABLE);
+    assertSame(page, pool.remove(5));
+    assertFalse(pool.contains(5));
+    assertNull(pool.remove(5));
+  }
+
+  @Test
+  public void testRemoveOnlyMatchingPage() {
+    BufferPool pool = new BufferPool(16, 4, EvictionPolicy.CLOCK);
+    Page resident = newPage(5);
+    pool.putIfAbsent(5, resident, AllocatorClass.BASE_TABLE);
+    assertFalse(pool.remove(5, newPage(5)));
+    assertTrue(pool.isResident(5, resident));
+    assertTrue(pool.remove(5, resident));
+    assertFalse(pool.contains(5));
+  }
+
+  @Test
+  public void testPinnedPagesAreNotEvicted() {
+    BufferPool pool = new BufferPool(4, 1, EvictionPolicy.CLOCK);
+    Page pinned = newPage(0);
+    pinned.pin();
+    pool.putIfAbsent(0, pinned, AllocatorClass.BASE_TABLE);
+    for (int i = 1; i < 100; i++) {
+      pool.putIfAbsent(i, newPage(i), AllocatorClass.BASE_TABLE);
+    }
+    assertTrue(pool.isResident(0, pinned));
+  }
+
+  @Test
+  public void testFullyPinnedPartitionGrows() {
+    BufferPool pool = new BufferPool(4, 1, EvictionPolicy.LRU);
+    for (int i = 0; i < 6; i++) {
+      Page page = newPage(i);
+      page.pin();
+      pool.putIfAbsent(i, page, AllocatorClass.BASE_TABLE);
+    }
+    assertEquals(6, numResident(pool, 6));
+  }
+
+  @Test
+  public void testQuotaKeepsClassesApart() {
+    // Temporary pages past their quota replace each other rather than the table's pages.
+    BufferPool pool = new BufferPool(16, 1, EvictionPolicy.LRU);
+    pool.setQuota(AllocatorClass.BASE_TABLE, 8);
+    pool.setQuota(AllocatorClass.TEMP, 8);
+    for (int i = 0; i < 8; i++) {
+      pool.putIfAbsent(i, newPage(i), AllocatorClass.BASE_TABLE);
+    }
+    for (int i = 100; i < 200; i++) {
+      pool.putIfAbsent(i, newPage(i), AllocatorClass.TEMP);
+    }
+    assertEquals(8, numResident(pool, 8));
+  }
+
+  @Test
+  public void testHitsAndMissesPerClass() {
+    BufferPool pool = new BufferPool(16, 4, EvictionPolicy.CLOCK);
+    pool.putIfAbsent(1, newPage(1), AllocatorClass.INDEX);
+    pool.get(1, AllocatorClass.INDEX);
+    pool.get(1, AllocatorClass.INDEX);
+    pool.get(2, AllocatorClass.INDEX);
+    pool.get(2, AllocatorClass.TEMP);
+    assertEquals(2, pool.getHits(AllocatorClass.INDEX));
+    assertEquals(1, pool.getMisses(AllocatorClass.INDEX));
+    assertEquals(0, pool.getHits(AllocatorClass.TEMP));
+    assertEquals(1, pool.getMisses(AllocatorClass.TEMP));
+  }
+}
@@ -0,0 +1,119 @@
+package edu.berkeley.cs186.database.io;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestEvictionPolicy {
+  private static final int CAPACITY = 8;
+
+  // A single partition, so that the policy sees every page.
+  private static BufferPool newPool(EvictionPolicy policy) {
+    return new BufferPool(CAPACITY, 1, policy);
+  }
+
+  private static void put(BufferPool pool, int pageNum) {
+    Page page = new Page(ByteBuffer.allocate(Page.pageSize), null, pageNum, false);
+    pool.putIfAbsent(pageNum, page, AllocatorClass.BASE_TABLE);
+  }
+
+  private static void get(BufferPool pool, int pageNum) {
+    assertNotNull(pool.get(pageNum, AllocatorClass.BASE_TABLE));
+  }
+
+  private static void fill(BufferPool pool) {
+    for (int i = 0; i < CAPACITY; i++) {
+      put(pool, i);
+    }
+  }
+
+  // Touches 100 pages that are never touched again.
+  private static void scan(BufferPool pool) {
+    for (int i = 1000; i < 1100; i++) {
+      put(pool, i);
+    }
+  }
+
+  @Test
+  public void testLRUEvictsLeastRecentlyUsed() {
+    BufferPool pool = newPool(EvictionPolicy.LRU);
+    fill(pool);
+    get(pool, 0);
+    put(pool, CAPACITY);
+    assertTrue(pool.contains(0));
+    assertFalse(pool.contains(1));
+  }
+
+  @Test
+  public void testLRUIsFloodedByScan() {
+    BufferPool pool = newPool(EvictionPolicy.LRU);
+    fill(pool);
+    get(pool, 0);
+    get(pool, 0);
+    scan(pool);
+    assertFalse(pool.contains(0));
+  }
+
+  @Test
+  public void testClockGivesSecondChance() {
+    BufferPool pool = newPool(EvictionPolicy.CLOCK);
+    fill(pool);
+    // Every page was referenced when added, so the hand clears every bit and comes back to 0.
+    put(pool, CAPACITY);
+    assertFalse(pool.contains(0));
+    get(pool, 1);
+    put(pool, CAPACITY + 1);
+    assertTrue(pool.contains(1));
+    assertFalse(pool.contains(2));
+  }
+
+  @Test
+  public void testTwoQueueKeepsReReferencedPagesThroughScan() {
+    BufferPool pool = newPool(EvictionPolicy.TWO_Q);
+    fill(pool);
+    // Page 0 falls out of A1in, and coming back while A1out remembers it promotes it to Am.
+    put(pool, CAPACITY);
+    assertFalse(pool.contains(0));
+    put(pool, 0);
+    scan(pool);
+    assertTrue(pool.contains(0));
+  }
+
+  @Test
+  public void testLRUKKeepsPagesReferencedTwiceThroughScan() {
+    BufferPool pool = newPool(EvictionPolicy.LRU_K);
+    fill(pool);
+    get(pool, 0);
+    get(pool, 3);
+    scan(pool);
+    assertTrue(pool.contains(0));
+    assertTrue(pool.contains(3));
+    assertFalse(pool.contains(1));
+  }
+
+  @Test
+  public void testLRUKRemembersEvictedPages() {
+    BufferPool pool = newPool(EvictionPolicy.LRU_K);
+    fill(pool);
+    put(pool, CAPACITY);
+    assertFalse(pool.contains(0));
+    // Its first reference is still remembered, so this is its second.
+    put(pool, 0);
+    scan(pool);
+    assertTrue(pool.contains(0));
+  }
+
+  @Test
+  public void testEveryPolicySkipsPinnedPages() {
+    for (EvictionPolicy policy : EvictionPolicy.values()) {
+      BufferPool pool = newPool(policy);
+      fill(pool);
+      Page pinned = pool.get(0, AllocatorClass.BASE_TABLE);
+      pinned.pin();
+      scan(pool);
+      assertTrue(policy.toString(), pool.isResident(0, pinned));
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class TestGroupCommit {
+  // Long enough that the group committer never runs during a test.
+  private static final long INTERVAL_MILLIS = 60 * 60 * 1000;
+
+  private String filename;
+  private PageAllocator allocator;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void beforeEach() throws IOException {
+    this.filename = tempFolder.newFile("commit.alloc").getAbsolutePath();
+    this.allocator = new PageAllocator(this.filename, true, true);
+  }
+
+  @After
+  public void afterEach() {
+    this.allocator.close();
+  }
+
+  // Allocates 50 pages, then frees page 10.
+  private void allocate() {
+    for (int i = 0; i < 50; i++) {
+      this.allocator.allocPage();
+    }
+    this.allocator.freePage(10);
+  }
+
+  @Test
+  public void testEveryAllocationIsForcedByDefault() {
+    PageAllocatorMetrics metrics = this.allocator.getMetrics();
+    long flushes = metrics.getFlushes();
+    for (int i = 0; i < 10; i++) {
+      this.allocator.allocPage();
+    }
+    // The master page and a header page, each time.
+    assertEquals(flushes + 20, metrics.getFlushes());
+  }
+
+  @Test
+  public void testAllocationsAreForcedBySync() {
+    this.allocator.setGroupCommitInterval(INTERVAL_MILLIS);
+    assertEquals(INTERVAL_MILLIS, this.allocator.getGroupCommitInterval());
+    PageAllocatorMetrics metrics = this.allocator.getMetrics();
+    long flushes = metrics.getFlushes();
+    allocate();
+    assertEquals(flushes, metrics.getFlushes());
+
+    // One force each of the master page and the header page covers them all.
+    this.allocator.sync();
+    assertEquals(flushes + 2, metrics.getFlushes());
+    this.allocator.sync();
+    assertEquals(flushes + 2, metrics.getFlushes());
+  }
+
+  @Test
+  public void testSyncedAllocationsAreInFile() throws IOException {
+    this.allocator.setGroupCommitInterval(INTERVAL_MILLIS);
+    allocate();
+    this.allocator.sync();
+
+    // Open a copy of the file as it is, with the allocator still open.
+    File copy = new File(tempFolder.getRoot(), "copy.alloc");
+    Files.copy(new File(this.filename).toPath(), copy.toPath());
+    PageAllocator copied = new PageAllocator(copy.getPath(), false, false);
+    try {
+      assertEquals(49, copied.getNumPages());
+      assertEquals(10, copied.allocPage());
+    } finally {
+      copied.close();
+    }
+  }
+
+  @Test
+  public void testCloseForcesAllocations() {
+    this.allocator.setGroupCommitInterval(INTERVAL_MILLIS);
+    allocate();
+    this.allocator.fetchPage(20).writeInt(0, 186);
+    PageAllocatorMetrics metrics = this.allocator.getMetrics();
+    long flushes = metrics.getFlushes();
+    this.allocator.close();
+    assertTrue(metrics.getFlushes() >= flushes + 2);
+
+    this.allocator = new PageAllocator(this.filename, false, true);
+    assertEquals(49, this.allocator.getNumPages());
+    assertEquals(186, this.allocator.fetchPage(20).readInt(0));
+    assertEquals(10, this.allocator.allocPage());
+  }
+}
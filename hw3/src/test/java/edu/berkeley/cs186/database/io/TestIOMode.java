@@ -0,0 +1,201 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class TestIOMode {
+  // More pages than the buffer pool holds, so that some of them are evicted and read back.
+  private static final int NUM_PAGES = 2000;
+
+  // The modes whose files outlive the allocator.
+  private static final IOMode[] DURABLE_MODES = {
+    IOMode.MMAP_PER_PAGE, IOMode.MMAP_SEGMENTS, IOMode.PREAD, IOMode.COMPRESSED
+  };
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private String path(String name) {
+    return new File(this.tempFolder.getRoot(), name).getAbsolutePath();
+  }
+
+  private static PageAllocator open(String fName, boolean wipe, IOMode ioMode) {
+    return new PageAllocator(fName, wipe, true, EvictionPolicy.CLOCK, ioMode);
+  }
+
+  // Writes a value derived from its page number at both ends of every page.
+  private static void writePages(PageAllocator allocator) {
+    for (int i = 0; i < NUM_PAGES; i++) {
+      Page page = allocator.fetchPage(allocator.allocPage());
+      page.writeInt(0, i * 3);
+      page.writeInt(allocator.getPageSize() - 4, i * 5);
+    }
+  }
+
+  private static void checkPages(PageAllocator allocator, String mode) {
+    assertEquals(mode, NUM_PAGES, allocator.getNumPages());
+    for (int i = 0; i < NUM_PAGES; i++) {
+      Page page = allocator.fetchPage(i);
+      assertEquals(mode + " page " + i, i * 3, page.readInt(0));
+      assertEquals(mode + " page " + i, i * 5, page.readInt(allocator.getPageSize() - 4));
+    }
+    int numIterated = 0;
+    for (Page page : allocator) {
+      numIterated++;
+    }
+    assertEquals(mode, NUM_PAGES, numIterated);
+  }
+
+  @Test
+  public void testReadBackInEveryMode() {
+    for (IOMode mode : IOMode.values()) {
+      PageAllocator allocator = open(path("read." + mode), true, mode);
+      writePages(allocator);
+      checkPages(allocator, mode.toString());
+      allocator.close();
+    }
+  }
+
+  @Test
+  public void testReopenAfterClose() {
+    for (IOMode mode : DURABLE_MODES) {
+      String fName = path("reopen." + mode);
+      PageAllocator allocator = open(fName, true, mode);
+      writePages(allocator);
+      allocator.freePage(allocator.fetchPage(10));
+      allocator.close();
+
+      allocator = open(fName, false, mode);
+      assertEquals(mode.toString(), NUM_PAGES - 1, allocator.getNumPages());
+      for (int i = 0; i < NUM_PAGES; i++) {
+        if (i != 10) {
+          assertEquals(mode + " page " + i, i * 3, allocator.fetchPage(i).readInt(0));
+        }
+      }
+      // The freed page is still free, and is the first to be handed out again.
+      assertEquals(mode.toString(), 10, allocator.allocPage());
+      allocator.close();
+    }
+  }
+
+  @Test
+  public void testReopenCompressedAfterEviction() {
+    String fName = path("compressed");
+    PageAllocator allocator = open(fName, true, IOMode.COMPRESSED);
+    writePages(allocator);
+    // Write the pages back in a different order, so that they are repacked.
+    for (int i = NUM_PAGES - 1; i >= 0; i -= 2) {
+      allocator.fetchPage(i).writeInt(8, i);
+    }
+    allocator.close();
+    assertTrue(new File(fName + ".pages").exists());
+
+    allocator = open(fName, false, IOMode.COMPRESSED);
+    checkPages(allocator, "COMPRESSED");
+    for (int i = NUM_PAGES - 1; i >= 0; i -= 2) {
+      assertEquals(i, allocator.fetchPage(i).readInt(8));
+    }
+    allocator.close();
+  }
+
+  @Test
+  public void testModeIsRecorded() {
+    for (IOMode mode : DURABLE_MODES) {
+      String fName = path("recorded." + mode);
+      assertNull(PageAllocator.getRecordedIOMode(fName));
+      PageAllocator allocator = open(fName, true, mode);
+      allocator.allocPage();
+      allocator.close();
+      assertEquals(mode, PageAllocator.getRecordedIOMode(fName));
+    }
+  }
+
+  @Test(expected = PageException.class)
+  public void testCompressedFileRejectsOtherModes() {
+    String fName = path("compressed");
+    PageAllocator allocator = open(fName, true, IOMode.COMPRESSED);
+    writePages(allocator);
+    allocator.close();
+    open(fName, false, IOMode.PREAD);
+  }
+
+  @Test(expected = PageException.class)
+  public void testOtherFilesRejectCompressed() {
+    String fName = path("pread");
+    PageAllocator allocator = open(fName, true, IOMode.PREAD);
+    writePages(allocator);
+    allocator.close();
+    open(fName, false, IOMode.COMPRESSED);
+  }
+
+  @Test
+  public void testSwitchBetweenUncompressedModes() {
+    String fName = path("switch");
+    PageAllocator allocator = open(fName, true, IOMode.MMAP_PER_PAGE);
+    writePages(allocator);
+    allocator.close();
+    for (IOMode mode : new IOMode[] {IOMode.PREAD, IOMode.MMAP_SEGMENTS, IOMode.MMAP_PER_PAGE}) {
+      allocator = open(fName, false, mode);
+      checkPages(allocator, mode.toString());
+      allocator.close();
+      assertEquals(mode, PageAllocator.getRecordedIOMode(fName));
+    }
+  }
+
+  @Test
+  public void testMemorySpillsAndLeavesNoFile() {
+    long threshold = PageAllocator.getMemorySpillThreshold();
+    PageAllocator.setMemorySpillThreshold(100 * Page.pageSize);
+    String fName = path("memory");
+    PageAllocator allocator = open(fName, true, IOMode.MEMORY);
+    try {
+      assertFalse(new File(fName).exists());
+      writePages(allocator);
+      assertTrue(new File(fName).exists());
+      checkPages(allocator, "MEMORY");
+    } finally {
+      allocator.close();
+      PageAllocator.setMemorySpillThreshold(threshold);
+    }
+    assertFalse(new File(fName).exists());
+  }
+
+  @Test
+  public void testMemoryKeepsPagesWrittenBeforeSpill() {
+    long threshold = PageAllocator.getMemorySpillThreshold();
+    PageAllocator.setMemorySpillThreshold(100 * Page.pageSize);
+    String fName = path("memory");
+    PageAllocator allocator = open(fName, true, IOMode.MEMORY);
+    try {
+      for (int i = 0; i < 50; i++) {
+        allocator.fetchPage(allocator.allocPage()).writeInt(0, i * 3);
+      }
+      assertFalse(new File(fName).exists());
+      // Evict the first pages to the heap, and then spill the rest.
+      for (int i = 50; i < NUM_PAGES; i++) {
+        allocator.fetchPage(allocator.allocPage()).writeInt(0, i * 3);
+      }
+      assertTrue(new File(fName).exists());
+      for (int i = 0; i < 50; i++) {
+        assertEquals("page " + i, i * 3, allocator.fetchPage(i).readInt(0));
+      }
+
+      // Pages kept on the heap are written back there, even after the spill.
+      for (int i = 0; i < NUM_PAGES; i++) {
+        allocator.fetchPage(i).writeInt(4, i * 5);
+      }
+      for (int i = 0; i < NUM_PAGES; i++) {
+        assertEquals("page " + i, i * 3, allocator.fetchPage(i).readInt(0));
+        assertEquals("page " + i, i * 5, allocator.fetchPage(i).readInt(4));
+      }
+    } finally {
+      allocator.close();
+      PageAllocator.setMemorySpillThreshold(threshold);
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class TestPageAllocatorMetrics {
+  private static final int NUM_PAGES = 10;
+
+  private String filename;
+  private PageAllocator allocator;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void beforeEach() throws IOException {
+    this.filename = tempFolder.newFile("metrics.alloc").getAbsolutePath();
+    this.allocator = new PageAllocator(this.filename, true, true);
+    for (int i = 0; i < NUM_PAGES; i++) {
+      this.allocator.fetchPage(this.allocator.allocPage()).writeInt(0, i);
+    }
+    // Start every test with fresh metrics and none of the pages in the buffer pool.
+    this.allocator.close();
+    this.allocator = new PageAllocator(this.filename, false, true);
+  }
+
+  @After
+  public void afterEach() {
+    this.allocator.close();
+  }
+
+  private static Set<ObjectName> registered(String name) throws JMException {
+    ObjectName pattern = new ObjectName("edu.berkeley.cs186.database:type=Table,name="
+                                        + ObjectName.quote(name) + ",*");
+    return ManagementFactory.getPlatformMBeanServer().queryNames(pattern, null);
+  }
+
+  @Test
+  public void testFetchesHitsAndMisses() {
+    PageAllocatorMetrics metrics = this.allocator.getMetrics();
+    assertEquals(0, metrics.getFetches());
+    for (int i = 0; i < NUM_PAGES; i++) {
+      assertEquals(i, this.allocator.fetchPage(i).readInt(0));
+    }
+    assertEquals(NUM_PAGES, metrics.getFetches());
+    assertEquals(NUM_PAGES, metrics.getMisses());
+    assertEquals(0, metrics.getHits());
+
+    for (int i = 0; i < NUM_PAGES; i++) {
+      this.allocator.fetchPage(i);
+    }
+    assertEquals(2 * NUM_PAGES, metrics.getFetches());
+    assertEquals(NUM_PAGES, metrics.getMisses());
+    assertEquals(NUM_PAGES, metrics.getHits());
+  }
+
+  @Test
+  public void testMetricsArePerAllocator() throws IOException {
+    PageAllocator other = new PageAllocator(tempFolder.newFile("other.alloc").getAbsolutePath(),
+                                            true, true);
+    try {
+      other.fetchPage(other.allocPage());
+      long otherFetches = other.getMetrics().getFetches();
+      assertEquals(0, this.allocator.getMetrics().getFetches());
+      this.allocator.fetchPage(0);
+      assertEquals(1, this.allocator.getMetrics().getFetches());
+      assertEquals(otherFetches, other.getMetrics().getFetches());
+      assertNotSame(this.allocator.getMetrics(), other.getMetrics());
+    } finally {
+      other.close();
+    }
+  }
+
+  @Test
+  public void testFlushLatencyHistogram() {
+    PageAllocatorMetrics metrics = this.allocator.getMetrics();
+    for (int i = 0; i < NUM_PAGES; i++) {
+      this.allocator.fetchPage(i).writeInt(4, i);
+    }
+    this.allocator.writeDirtyPages();
+    this.allocator.allocPage();
+    assertTrue(metrics.getFlushes() > 0);
+
+    long[] histogram = metrics.getFlushLatencyHistogram();
+    long[] bounds = metrics.getFlushLatencyBucketBoundsMicros();
+    assertEquals(bounds.length + 1, histogram.length);
+    long total = 0;
+    for (long count : histogram) {
+      total += count;
+    }
+    assertEquals(metrics.getFlushes(), total);
+    for (int i = 1; i < bounds.length; i++) {
+      assertEquals(2 * bounds[i - 1], bounds[i]);
+    }
+  }
+
+  @Test
+  public void testRegisteredUntilClosed() throws JMException {
+    String name = "metrics table";
+    assertTrue(registered(name).isEmpty());
+    this.allocator.registerMetrics("Table", name);
+    this.allocator.fetchPage(0);
+    this.allocator.fetchPage(0);
+
+    Set<ObjectName> names = registered(name);
+    assertEquals(1, names.size());
+    ObjectName objectName = names.iterator().next();
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    assertEquals(2L, server.getAttribute(objectName, "Fetches"));
+    assertEquals(1L, server.getAttribute(objectName, "Hits"));
+
+    this.allocator.close();
+    assertTrue(registered(name).isEmpty());
+  }
+}
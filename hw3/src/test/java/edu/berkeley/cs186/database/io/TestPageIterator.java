@@ -0,0 +1,106 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class TestPageIterator {
+  private static final int NUM_PAGES = 300;
+
+  private String filename;
+  private PageAllocator allocator;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void beforeEach() throws IOException {
+    this.filename = tempFolder.newFile("iter.alloc").getAbsolutePath();
+    this.allocator = new PageAllocator(this.filename, true, false);
+    for (int i = 0; i < NUM_PAGES; i++) {
+      this.allocator.fetchPage(this.allocator.allocPage()).writeInt(0, i);
+    }
+  }
+
+  @After
+  public void afterEach() {
+    this.allocator.close();
+  }
+
+  private List<Integer> iterate() {
+    List<Integer> pageNums = new ArrayList<>();
+    for (Page page : this.allocator) {
+      assertEquals(page.getPageNum(), page.readInt(0));
+      pageNums.add(page.getPageNum());
+    }
+    return pageNums;
+  }
+
+  // Frees the first and last pages, a run across the 64-page words of the free page index, and
+  // every other page of another run.
+  private List<Integer> freePages() {
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < NUM_PAGES; i++) {
+      boolean free = i == 0 || i == NUM_PAGES - 1 || (i >= 60 && i < 200)
+                     || (i >= 220 && i < 260 && i % 2 == 0);
+      if (free) {
+        this.allocator.freePage(i);
+      } else {
+        expected.add(i);
+      }
+    }
+    return expected;
+  }
+
+  @Test
+  public void testFreedPagesAreSkipped() {
+    List<Integer> expected = freePages();
+    assertEquals(expected, iterate());
+  }
+
+  @Test
+  public void testFreedPagesAreNotFetched() {
+    List<Integer> expected = freePages();
+    this.allocator.close();
+    this.allocator = new PageAllocator(this.filename, false, false);
+    PageAllocatorMetrics metrics = this.allocator.getMetrics();
+    assertEquals(expected, iterate());
+    assertEquals(expected.size(), metrics.getFetches());
+  }
+
+  @Test
+  public void testReusedPagesAreIterated() {
+    List<Integer> expected = freePages();
+    int pageNum = this.allocator.allocPage();
+    assertFalse(expected.contains(pageNum));
+    this.allocator.fetchPage(pageNum).writeInt(0, pageNum);
+    expected.add(pageNum);
+    expected.sort(null);
+    assertEquals(expected, iterate());
+  }
+
+  @Test
+  public void testNoPages() {
+    for (int i = 0; i < NUM_PAGES; i++) {
+      this.allocator.freePage(i);
+    }
+    Iterator<Page> iter = this.allocator.iterator();
+    assertFalse(iter.hasNext());
+    try {
+      iter.next();
+      fail();
+    } catch (NoSuchElementException e) {
+      // expected
+    }
+  }
+}
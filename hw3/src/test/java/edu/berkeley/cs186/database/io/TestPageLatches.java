@@ -0,0 +1,180 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class TestPageLatches {
+  private static final int NUM_THREADS = 4;
+  private static final int NUM_ITERATIONS = 2000;
+
+  private PageAllocator allocator;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void beforeEach() throws IOException {
+    String filename = tempFolder.newFile("latch.alloc").getAbsolutePath();
+    this.allocator = new PageAllocator(filename, true, false);
+  }
+
+  @After
+  public void afterEach() {
+    this.allocator.close();
+  }
+
+  // Runs body on NUM_THREADS threads at once, and fails if any of them throws.
+  private static void runThreads(ThreadBody body) throws InterruptedException {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    AtomicInteger failures = new AtomicInteger();
+    for (int i = 0; i < NUM_THREADS; i++) {
+      int id = i;
+      Thread t = new Thread(() -> {
+        try {
+          start.await();
+          body.run(id);
+        } catch (Throwable e) {
+          failures.incrementAndGet();
+        }
+      });
+      t.start();
+      threads.add(t);
+    }
+    start.countDown();
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertEquals(0, failures.get());
+  }
+
+  private interface ThreadBody {
+    void run(int id) throws Exception;
+  }
+
+  // Returns whether another thread could latch page shared, releasing the latch if so.
+  private static boolean tryLatchSharedOnOtherThread(Page page) throws InterruptedException {
+    AtomicBoolean taken = new AtomicBoolean();
+    Thread reader = new Thread(() -> {
+      if (page.tryLatchShared()) {
+        taken.set(true);
+        page.unlatchShared();
+      }
+    });
+    reader.start();
+    reader.join();
+    return taken.get();
+  }
+
+  @Test
+  public void testViewsHaveTheirOwnPositions() {
+    Page page = this.allocator.fetchPage(this.allocator.allocPage());
+    ByteBuffer first = page.getByteBuffer();
+    first.position(100);
+    first.putInt(7);
+    ByteBuffer second = page.getByteBuffer();
+    assertEquals(0, second.position());
+    assertEquals(104, first.position());
+    assertEquals(7, second.getInt(100));
+    assertEquals(7, page.readInt(100));
+
+    page.writeBytes(200, 3, new byte[] {1, 2, 3});
+    assertEquals(0, page.getByteBuffer().position());
+    assertArrayEquals(new byte[] {1, 2, 3}, page.readBytes(200, 3));
+    assertEquals(2, page.readByte(201));
+  }
+
+  @Test
+  public void testReadOnlyViewLeavesPageClean() {
+    int pageNum = this.allocator.allocPage();
+    this.allocator.fetchPage(pageNum).writeInt(0, 186);
+    this.allocator.writeDirtyPages();
+    Page page = this.allocator.fetchPage(pageNum);
+    assertFalse(page.isDirty());
+
+    ByteBuffer view = page.getReadOnlyByteBuffer();
+    assertTrue(view.isReadOnly());
+    assertEquals(186, view.getInt());
+    assertFalse(page.isDirty());
+    page.getByteBuffer();
+    assertTrue(page.isDirty());
+  }
+
+  @Test
+  public void testConcurrentAccessorsAtDifferentOffsets() throws InterruptedException {
+    // Without a shared position, threads that touch different parts of a page do not
+    // interfere, even unlatched.
+    Page page = this.allocator.fetchPage(this.allocator.allocPage());
+    runThreads(id -> {
+      int offset = id * 512;
+      for (int i = 0; i < NUM_ITERATIONS; i++) {
+        page.writeInt(offset, i);
+        page.writeBytes(offset + 4, 4, ByteBuffer.allocate(4).putInt(-i).array());
+        assertEquals(i, page.readInt(offset));
+        assertEquals(-i, ByteBuffer.wrap(page.readBytes(offset + 4, 4)).getInt());
+      }
+    });
+  }
+
+  @Test
+  public void testExclusiveLatchSerializesWriters() throws InterruptedException {
+    Page page = this.allocator.fetchPage(this.allocator.allocPage());
+    runThreads(id -> {
+      for (int i = 0; i < NUM_ITERATIONS; i++) {
+        page.latchExclusive();
+        try {
+          page.writeInt(0, page.readInt(0) + 1);
+        } finally {
+          page.unlatchExclusive();
+        }
+      }
+    });
+    assertEquals(NUM_THREADS * NUM_ITERATIONS, page.readInt(0));
+  }
+
+  @Test
+  public void testSharedLatchesWaitForExclusive() throws InterruptedException {
+    Page page = this.allocator.fetchPage(this.allocator.allocPage());
+    page.latchShared();
+    page.latchShared();
+    page.unlatchShared();
+    page.unlatchShared();
+
+    page.latchExclusive();
+    // The exclusive holder may also latch the page shared.
+    page.latchShared();
+    page.unlatchShared();
+    assertFalse(tryLatchSharedOnOtherThread(page));
+    page.unlatchExclusive();
+    assertTrue(tryLatchSharedOnOtherThread(page));
+  }
+
+  @Test
+  public void testLatchOutlivesEviction() throws InterruptedException {
+    int pageNum = this.allocator.allocPage();
+    Page page = this.allocator.fetchPage(pageNum);
+    page.latchExclusive();
+    try {
+      // Fetch enough other pages to evict it.
+      for (int i = 0; i < 3000; i++) {
+        this.allocator.fetchPage(this.allocator.allocPage());
+      }
+      assertFalse(tryLatchSharedOnOtherThread(this.allocator.fetchPage(pageNum)));
+    } finally {
+      page.unlatchExclusive();
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class TestPageSize {
+  private static final int PAGE_SIZE = 4 * Page.pageSize;
+  private static final int NUM_PAGES = 300;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private String path(String name) {
+    return new File(this.tempFolder.getRoot(), name).getAbsolutePath();
+  }
+
+  private static PageAllocator open(String fName, boolean wipe, IOMode ioMode, int pageSize) {
+    return new PageAllocator(fName, wipe, true, EvictionPolicy.CLOCK, ioMode,
+                             AllocatorClass.BASE_TABLE, pageSize);
+  }
+
+  @Test
+  public void testReopenKeepsPageSize() {
+    for (IOMode mode : new IOMode[] {IOMode.MMAP_PER_PAGE, IOMode.MMAP_SEGMENTS, IOMode.PREAD,
+                                     IOMode.COMPRESSED}) {
+      String fName = path("large." + mode);
+      PageAllocator allocator = open(fName, true, mode, PAGE_SIZE);
+      assertEquals(PAGE_SIZE, allocator.getPageSize());
+      for (int i = 0; i < NUM_PAGES; i++) {
+        Page page = allocator.fetchPage(allocator.allocPage());
+        page.writeInt(0, i);
+        page.writeInt(PAGE_SIZE - 4, -i);
+      }
+      allocator.close();
+
+      // Reopened with the default page size, the file keeps its own.
+      allocator = new PageAllocator(fName, false, true, EvictionPolicy.CLOCK, mode);
+      try {
+        assertEquals(mode.toString(), PAGE_SIZE, allocator.getPageSize());
+        assertEquals(mode.toString(), NUM_PAGES, allocator.getNumPages());
+        for (int i = 0; i < NUM_PAGES; i++) {
+          Page page = allocator.fetchPage(i);
+          assertEquals(PAGE_SIZE, page.readBytes().length);
+          assertEquals(mode + " page " + i, i, page.readInt(0));
+          assertEquals(mode + " page " + i, -i, page.readInt(PAGE_SIZE - 4));
+        }
+      } finally {
+        allocator.close();
+      }
+    }
+  }
+
+  @Test
+  public void testWipeTakesNewPageSize() {
+    String fName = path("wipe");
+    PageAllocator allocator = open(fName, true, IOMode.PREAD, PAGE_SIZE);
+    allocator.allocPage();
+    allocator.close();
+
+    allocator = open(fName, true, IOMode.PREAD, 2 * PAGE_SIZE);
+    try {
+      assertEquals(2 * PAGE_SIZE, allocator.getPageSize());
+      Page page = allocator.fetchPage(allocator.allocPage());
+      assertEquals(2 * PAGE_SIZE, page.readBytes().length);
+    } finally {
+      allocator.close();
+    }
+  }
+
+  @Test
+  public void testInvalidPageSizes() {
+    for (int pageSize : new int[] {Page.pageSize / 2, Page.pageSize + 1, 128 * 1024}) {
+      try {
+        open(path("invalid"), true, IOMode.PREAD, pageSize);
+        fail("page size " + pageSize);
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+}
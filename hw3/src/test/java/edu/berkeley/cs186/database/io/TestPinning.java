@@ -0,0 +1,98 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class TestPinning {
+  // More pages than the buffer pool holds, so that fetching them all evicts everything unpinned.
+  private static final int NUM_PAGES = 3000;
+
+  private PageAllocator allocator;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void beforeEach() throws IOException {
+    File file = tempFolder.newFile("pin.alloc");
+    this.allocator = new PageAllocator(file.getAbsolutePath(), true, false,
+                                       EvictionPolicy.CLOCK, IOMode.PREAD);
+  }
+
+  @After
+  public void afterEach() {
+    this.allocator.close();
+  }
+
+  private void fetchMany() {
+    for (int i = 0; i < NUM_PAGES; i++) {
+      this.allocator.fetchPage(this.allocator.allocPage());
+    }
+  }
+
+  @Test
+  public void testPinnedPageStaysResident() {
+    int pageNum = this.allocator.allocPage();
+    Page pinned = this.allocator.pinPage(pageNum);
+    assertTrue(pinned.isPinned());
+    fetchMany();
+    assertSame(pinned, this.allocator.fetchPage(pageNum));
+    this.allocator.unpinPage(pinned, false);
+    assertFalse(pinned.isPinned());
+  }
+
+  @Test
+  public void testPinsAreCounted() {
+    int pageNum = this.allocator.allocPage();
+    Page first = this.allocator.pinPage(pageNum);
+    Page second = this.allocator.pinPage(pageNum);
+    assertSame(first, second);
+    this.allocator.unpinPage(first, false);
+    assertTrue(first.isPinned());
+    fetchMany();
+    assertSame(first, this.allocator.fetchPage(pageNum));
+    this.allocator.unpinPage(second, false);
+    assertFalse(first.isPinned());
+  }
+
+  @Test(expected = PageException.class)
+  public void testUnpinUnpinnedPage() {
+    int pageNum = this.allocator.allocPage();
+    Page page = this.allocator.pinPage(pageNum);
+    this.allocator.unpinPage(page, false);
+    page.unpin();
+  }
+
+  @Test
+  public void testDirtyUnpinIsWrittenBack() {
+    int pageNum = this.allocator.allocPage();
+    Page page = this.allocator.pinPage(pageNum);
+    page.getByteBuffer().putInt(16, 42);
+    this.allocator.unpinPage(page, true);
+    assertTrue(page.isDirty());
+    // Evicting the page writes it back and gives up its frame, so the next fetch reads it again.
+    fetchMany();
+    assertEquals(42, this.allocator.fetchPage(pageNum).readInt(16));
+  }
+
+  @Test
+  public void testBackgroundWriterSkipsPinnedPages() {
+    int pageNum = this.allocator.allocPage();
+    Page page = this.allocator.pinPage(pageNum);
+    page.writeInt(0, 7);
+    this.allocator.writeDirtyPages();
+    assertTrue(page.isDirty());
+    this.allocator.unpinPage(page, true);
+    this.allocator.writeDirtyPages();
+    assertFalse(page.isDirty());
+    assertEquals(7, this.allocator.fetchPage(pageNum).readInt(0));
+  }
+}
@@ -0,0 +1,93 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class TestReadAhead {
+  private static final int NUM_PAGES = 64;
+
+  private String filename;
+  private PageAllocator allocator;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void beforeEach() throws IOException {
+    this.filename = tempFolder.newFile("readahead.alloc").getAbsolutePath();
+    this.allocator = new PageAllocator(this.filename, true, false);
+    for (int i = 0; i < NUM_PAGES; i++) {
+      this.allocator.fetchPage(this.allocator.allocPage()).writeInt(0, i);
+    }
+    // Start every test with none of the pages in the buffer pool.
+    this.allocator.close();
+    this.allocator = new PageAllocator(this.filename, false, false);
+    assertEquals(0, this.allocator.getNumResidentPages());
+  }
+
+  @After
+  public void afterEach() {
+    this.allocator.close();
+  }
+
+  // Waits for everything queued for the read-ahead thread so far.
+  private static void drainReadAhead() throws InterruptedException, ExecutionException {
+    PageAllocator.getReadAheadExecutor().submit(() -> {}).get();
+  }
+
+  @Test
+  public void testDefaultIteratorDoesNotReadAhead() throws Exception {
+    PageAllocator.PageIterator iter = this.allocator.iterator();
+    assertEquals(0, iter.next().readInt(0));
+    drainReadAhead();
+    assertEquals(1, this.allocator.getNumResidentPages());
+  }
+
+  @Test
+  public void testReadAheadPagesBecomeResident() throws Exception {
+    PageAllocatorMetrics metrics = this.allocator.getMetrics();
+    PageAllocator.PageIterator iter = this.allocator.iterator(16);
+    assertEquals(0, iter.next().readInt(0));
+    drainReadAhead();
+    assertEquals(17, this.allocator.getNumResidentPages());
+
+    // The scan then finds the pages it reaches in the pool.
+    long misses = metrics.getMisses();
+    for (int i = 1; i <= 16; i++) {
+      assertEquals(i, iter.next().readInt(0));
+    }
+    assertEquals(misses, metrics.getMisses());
+  }
+
+  @Test
+  public void testCloseStopsPendingReadAhead() throws Exception {
+    // Hold the read-ahead thread up, so that the iterator's read-ahead is
+    // still queued when it is closed.
+    CountDownLatch blocked = new CountDownLatch(1);
+    PageAllocator.getReadAheadExecutor().execute(() -> {
+      try {
+        blocked.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    try {
+      PageAllocator.PageIterator iter = this.allocator.iterator(16);
+      iter.next();
+      iter.close();
+    } finally {
+      blocked.countDown();
+    }
+    drainReadAhead();
+    assertEquals(1, this.allocator.getNumResidentPages());
+  }
+}
@@ -0,0 +1,183 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class TestSegmentFiles {
+  // The layout of a file of 4 KB pages (see PageAllocator): a master page holding the page counts
+  // of 896 header pages, then each header page followed by the pages it tracks, one byte each.
+  // The master page ends with the IOMode, the layout marker and the page size.
+  private static final int NUM_HEADER_PAGES = 896;
+  private static final int PAGES_PER_FILE = NUM_HEADER_PAGES * Page.pageSize;
+  private static final int LAYOUT_OFFSET = Page.pageSize - 8;
+  private static final int IO_MODE_OFFSET = Page.pageSize - 12;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private String path(String name) {
+    return new File(this.tempFolder.getRoot(), name).getAbsolutePath();
+  }
+
+  private static PageAllocator open(String fName, boolean wipe) {
+    return new PageAllocator(fName, wipe, true, EvictionPolicy.CLOCK, IOMode.PREAD);
+  }
+
+  // Clears the IOMode and the layout marker, which files from before them do not have.
+  private static void unmark(String fName) throws IOException {
+    writeInt(fName, IO_MODE_OFFSET, 0);
+    writeInt(fName, LAYOUT_OFFSET, 0);
+  }
+
+  // Creates fName with page 0 holding 186.
+  private static void create(String fName) {
+    PageAllocator allocator = open(fName, true);
+    allocator.fetchPage(allocator.allocPage()).writeInt(0, 186);
+    allocator.close();
+  }
+
+  private static void writeInt(String fName, long position, int value) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(fName, "rw")) {
+      FileChannel fc = file.getChannel();
+      fc.write(ByteBuffer.allocate(4).putInt(0, value), position);
+    }
+  }
+
+  private static int readInt(String fName, long position) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(fName, "r")) {
+      ByteBuffer buf = ByteBuffer.allocate(4);
+      file.getChannel().read(buf, position);
+      return buf.getInt(0);
+    }
+  }
+
+  // Marks every page of fName allocated, much faster than allocating them would be. The pages
+  // themselves are never written, so the file stays sparse.
+  private static void fill(String fName) throws IOException {
+    byte[] flags = new byte[Page.pageSize];
+    Arrays.fill(flags, (byte) 1);
+    try (RandomAccessFile file = new RandomAccessFile(fName, "rw")) {
+      FileChannel fc = file.getChannel();
+      for (int i = 0; i < NUM_HEADER_PAGES; i++) {
+        long headerBlock = 1 + (long) i * (Page.pageSize + 1);
+        fc.write(ByteBuffer.wrap(flags), headerBlock * Page.pageSize);
+        fc.write(ByteBuffer.allocate(4).putInt(0, Page.pageSize), 4L * i);
+      }
+    }
+  }
+
+  @Test
+  public void testPageInSecondSegmentFile() throws IOException {
+    String fName = path("full");
+    create(fName);
+    fill(fName);
+
+    PageAllocator allocator = open(fName, false);
+    try {
+      assertEquals(PAGES_PER_FILE, allocator.getNumPages());
+      assertEquals(1, allocator.getSegmentFiles().size());
+      int pageNum = allocator.allocPage();
+      assertEquals(PAGES_PER_FILE, pageNum);
+      assertEquals(Arrays.asList(fName, fName + ".seg1"), allocator.getSegmentFiles());
+      allocator.fetchPage(pageNum).writeInt(0, 1860);
+    } finally {
+      allocator.close();
+    }
+
+    allocator = open(fName, false);
+    try {
+      assertEquals(2, allocator.getSegmentFiles().size());
+      assertEquals(PAGES_PER_FILE + 1, allocator.getNumPages());
+      assertEquals(186, allocator.fetchPage(0).readInt(0));
+      assertEquals(1860, allocator.fetchPage(PAGES_PER_FILE).readInt(0));
+
+      // Pages freed in the allocator's own file are used before the segment file grows.
+      allocator.freePage(5);
+      assertEquals(5, allocator.allocPage());
+      assertEquals(PAGES_PER_FILE + 1, allocator.allocPage());
+    } finally {
+      allocator.close();
+    }
+
+    // Wiping the file removes its segment files.
+    open(fName, true).close();
+    assertFalse(new File(fName + ".seg1").exists());
+  }
+
+  @Test
+  public void testSegmentDirectories() throws IOException {
+    String fName = path("spread");
+    File directory = this.tempFolder.newFolder("other");
+    create(fName);
+    fill(fName);
+
+    PageAllocator allocator = open(fName, false);
+    try {
+      allocator.setSegmentDirectories(Collections.singletonList(directory.getPath()));
+      allocator.fetchPage(allocator.allocPage()).writeInt(0, 1860);
+      String segment = new File(directory, "spread.seg1").getPath();
+      assertEquals(Arrays.asList(fName, segment), allocator.getSegmentFiles());
+      assertTrue(new File(segment).exists());
+    } finally {
+      allocator.close();
+    }
+
+    allocator = open(fName, false);
+    try {
+      assertEquals(1860, allocator.fetchPage(PAGES_PER_FILE).readInt(0));
+    } finally {
+      allocator.close();
+    }
+  }
+
+  @Test
+  public void testUnmarkedMasterPageIsUpgraded() throws IOException {
+    String fName = path("unmarked");
+    create(fName);
+    // As written before the layout marker, by an allocator with fewer than 896 header pages.
+    unmark(fName);
+
+    PageAllocator allocator = open(fName, false);
+    try {
+      assertEquals(1, allocator.getNumPages());
+      assertEquals(186, allocator.fetchPage(0).readInt(0));
+    } finally {
+      allocator.close();
+    }
+    // The file now has the marker, and reads the same.
+    assertNotEquals(0, readInt(fName, LAYOUT_OFFSET));
+    allocator = open(fName, false);
+    try {
+      assertEquals(186, allocator.fetchPage(0).readInt(0));
+    } finally {
+      allocator.close();
+    }
+  }
+
+  @Test
+  public void testOldLayoutIsRejected() throws IOException {
+    String fName = path("old");
+    create(fName);
+    // The page count of header page 900, in the old layout of up to 1024 header pages.
+    unmark(fName);
+    writeInt(fName, 4L * 900, 12);
+
+    try {
+      open(fName, false);
+      fail();
+    } catch (PageException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class TestWarmRestart {
+  private static final int NUM_PAGES = 100;
+
+  private String filename;
+  private File manifest;
+  private PageAllocator allocator;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void beforeEach() throws IOException {
+    this.filename = tempFolder.newFile("warm.alloc").getAbsolutePath();
+    this.manifest = new File(this.filename + ".hot");
+    this.allocator = new PageAllocator(this.filename, true, false);
+    for (int i = 0; i < NUM_PAGES; i++) {
+      this.allocator.allocPage();
+    }
+    this.allocator.close();
+    assertFalse(this.manifest.exists());
+    this.allocator = new PageAllocator(this.filename, false, false);
+  }
+
+  @After
+  public void afterEach() {
+    this.allocator.close();
+  }
+
+  // Waits for the preload, which runs on the read-ahead thread.
+  private static void drainReadAhead() throws InterruptedException, ExecutionException {
+    PageAllocator.getReadAheadExecutor().submit(() -> {}).get();
+  }
+
+  // Closes the allocator with pages [from, to) in the buffer pool.
+  private void closeWithHotPages(int from, int to) {
+    this.allocator.setWarmRestart(true);
+    for (int i = from; i < to; i++) {
+      this.allocator.fetchPage(i);
+    }
+    this.allocator.close();
+    assertTrue(this.manifest.exists());
+  }
+
+  private void writeManifest(int... ints) throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(4 * ints.length);
+    buf.asIntBuffer().put(ints);
+    Files.write(this.manifest.toPath(), buf.array());
+  }
+
+  @Test
+  public void testHotPagesArePreloaded() throws Exception {
+    closeWithHotPages(10, 30);
+    this.allocator = new PageAllocator(this.filename, false, false);
+    drainReadAhead();
+    assertFalse(this.manifest.exists());
+    assertEquals(20, this.allocator.getNumResidentPages());
+    PageAllocatorMetrics metrics = this.allocator.getMetrics();
+    assertEquals(20, metrics.getPreloads());
+
+    long misses = metrics.getMisses();
+    for (int i = 10; i < 30; i++) {
+      this.allocator.fetchPage(i);
+    }
+    assertEquals(misses, metrics.getMisses());
+  }
+
+  @Test
+  public void testNoManifest() throws Exception {
+    this.allocator.close();
+    this.allocator = new PageAllocator(this.filename, false, false);
+    drainReadAhead();
+    assertEquals(0, this.allocator.getNumResidentPages());
+  }
+
+  @Test
+  public void testManifestIgnoredAfterWipe() throws Exception {
+    closeWithHotPages(10, 30);
+    this.allocator = new PageAllocator(this.filename, true, false);
+    drainReadAhead();
+    assertFalse(this.manifest.exists());
+    assertEquals(0, this.allocator.getNumResidentPages());
+  }
+
+  @Test
+  public void testMalformedManifestIgnored() throws Exception {
+    this.allocator.close();
+    // Claims three pages but lists two.
+    writeManifest(3, 10, 11);
+    this.allocator = new PageAllocator(this.filename, false, false);
+    drainReadAhead();
+    assertFalse(this.manifest.exists());
+    assertEquals(0, this.allocator.getNumResidentPages());
+  }
+
+  @Test
+  public void testStalePagesSkipped() throws Exception {
+    this.allocator.freePage(5);
+    this.allocator.close();
+    // Page 5 is free, and page 500 was never allocated.
+    writeManifest(3, 5, 6, 500);
+    this.allocator = new PageAllocator(this.filename, false, false);
+    drainReadAhead();
+    assertEquals(1, this.allocator.getNumResidentPages());
+    assertEquals(1, this.allocator.getMetrics().getPreloads());
+  }
+}
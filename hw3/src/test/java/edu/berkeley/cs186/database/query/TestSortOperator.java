@@ -0,0 +1,121 @@
+package edu.berkeley.cs186.database.query;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+import static org.junit.Assert.*;
+
+public class TestSortOperator {
+  private static final String TABLENAME = "unsorted";
+  private static final int STRING_SIZE = 500;
+  // 16 runs of 16 pages, merged in a single pass. The table's 256 data pages
+  // and header page make it larger than a quarter of the buffer pool.
+  private static final int NUM_BUFFERS = 17;
+  private static final int NUM_RECORDS = 256 * 8;
+
+  private Database db;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void beforeEach() throws IOException, DatabaseException {
+    File dir = tempFolder.newFolder("db");
+    this.db = new Database(dir.getAbsolutePath(), NUM_BUFFERS);
+    Schema schema = new Schema(Arrays.asList("id", "name"),
+                               Arrays.asList(Type.intType(), Type.stringType(STRING_SIZE)));
+    this.db.createTable(schema, TABLENAME);
+    List<List<DataBox>> rows = new ArrayList<>();
+    for (int i = 0; i < NUM_RECORDS; i++) {
+      // A permutation of 0 .. NUM_RECORDS - 1.
+      int id = (i * 997) % NUM_RECORDS;
+      rows.add(Arrays.<DataBox>asList(new IntDataBox(id), new StringDataBox("r" + id, STRING_SIZE)));
+    }
+    Database.Transaction t = this.db.beginTransaction();
+    t.addRecords(TABLENAME, rows.iterator());
+    t.end();
+    // Start the sort with none of the table's data pages in the buffer pool.
+    this.db.close();
+    this.db = new Database(dir.getAbsolutePath(), NUM_BUFFERS);
+  }
+
+  @After
+  public void afterEach() {
+    this.db.close();
+  }
+
+  @Test
+  public void testSortReadsTableAroundPool() throws DatabaseException, QueryPlanException {
+    Database.Transaction t = this.db.beginTransaction();
+    assertEquals(256, t.getNumDataPages(TABLENAME));
+    Comparator<Record> byId = new Comparator<Record>() {
+      public int compare(Record r1, Record r2) {
+        return r1.getValues().get(0).compareTo(r2.getValues().get(0));
+      }
+    };
+    SortOperator sort = new SortOperator(t, TABLENAME, byId);
+    String sorted = sort.sort();
+
+    Iterator<Record> iter = t.getRecordIterator(sorted);
+    for (int i = 0; i < NUM_RECORDS; i++) {
+      assertTrue(iter.hasNext());
+      assertEquals(new IntDataBox(i), iter.next().getValues().get(0));
+    }
+    assertFalse(iter.hasNext());
+    // The sort read every page of the table once, without keeping any of them
+    // in the buffer pool. Only the header page may be resident.
+    assertTrue(this.db.getTable(TABLENAME).getAllocator().getNumResidentPages() <= 1);
+    t.end();
+  }
+
+  @Test
+  public void testRunIsWrittenToConsecutivePages() throws DatabaseException, QueryPlanException {
+    Database.Transaction t = this.db.beginTransaction();
+    SortOperator sort = new SortOperator(t, TABLENAME, null);
+    List<Record> records = new ArrayList<>();
+    Iterator<Record> iter = t.getRecordIterator(TABLENAME);
+    for (int i = 0; i < 100; i++) {
+      assertTrue(iter.hasNext());
+      records.add(iter.next());
+    }
+    SortOperator.Run run = sort.createRun();
+    run.addRecords(records.subList(0, 60));
+    run.addRecords(records.subList(60, 100));
+
+    // 100 records take 13 pages, which follow the header page of the run.
+    assertEquals(13, t.getNumDataPages(run.tableName()));
+    Iterator<Page> pages = t.getPageIterator(run.tableName());
+    for (int pageNum = 0; pageNum <= 13; pageNum++) {
+      assertEquals(pageNum, pages.next().getPageNum());
+    }
+    assertFalse(pages.hasNext());
+    Iterator<Record> runIter = run.iterator();
+    for (Record r : records) {
+      assertTrue(runIter.hasNext());
+      assertEquals(r, runIter.next());
+    }
+    assertFalse(runIter.hasNext());
+    t.end();
+  }
+}
@@ -0,0 +1,103 @@
+package edu.berkeley.cs186.database.table;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.AccessStrategy;
+import edu.berkeley.cs186.database.io.PageAllocatorMetrics;
+
+import static org.junit.Assert.*;
+
+public class TestAccessStrategy {
+  private static final String TABLENAME = "scan";
+  private static final int STRING_SIZE = 500;
+  // Eight records a page, so 4800 records fill 600 data pages: more than a
+  // quarter of the buffer pool.
+  private static final int NUM_RECORDS = 4800;
+
+  private String filename;
+  private Table table;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void beforeEach() throws DatabaseException {
+    Schema schema = new Schema(Arrays.asList("id", "name"),
+                               Arrays.asList(Type.intType(), Type.stringType(STRING_SIZE)));
+    this.filename = new File(tempFolder.getRoot(), TABLENAME + Table.FILENAME_EXTENSION).getPath();
+    this.table = new Table(TABLENAME, schema, this.filename);
+    List<List<DataBox>> rows = new ArrayList<>();
+    for (int i = 0; i < NUM_RECORDS; i++) {
+      rows.add(Arrays.asList(new IntDataBox(i), new StringDataBox("r" + i, STRING_SIZE)));
+    }
+    this.table.addRecords(rows.iterator());
+    // Start every scan with none of the data pages in the buffer pool.
+    this.table.close();
+    this.table = new Table(TABLENAME, this.filename);
+  }
+
+  @After
+  public void afterEach() {
+    this.table.close();
+  }
+
+  private int scan(Iterator<Record> iter) {
+    int n = 0;
+    while (iter.hasNext()) {
+      assertEquals(new IntDataBox(n), iter.next().getValues().get(0));
+      n++;
+    }
+    return n;
+  }
+
+  @Test
+  public void testBulkReadLeavesPoolAlone() {
+    int numDataPages = this.table.getNumDataPages();
+    assertEquals(600, numDataPages);
+    PageAllocatorMetrics metrics = this.table.getAllocator().getMetrics();
+    long misses = metrics.getMisses();
+
+    assertEquals(NUM_RECORDS, scan(this.table.iterator(AccessStrategy.BULK_READ)));
+    // Every data page is read once, and none of them stays in the pool. Only
+    // the header page, which the table itself uses, may be resident.
+    assertTrue(metrics.getMisses() - misses <= numDataPages + 1);
+    assertTrue(this.table.getAllocator().getNumResidentPages() <= 1);
+  }
+
+  @Test
+  public void testNormalScanFillsPool() {
+    PageAllocatorMetrics metrics = this.table.getAllocator().getMetrics();
+    long misses = metrics.getMisses();
+
+    assertEquals(NUM_RECORDS, scan(this.table.iterator()));
+    assertTrue(metrics.getMisses() - misses <= this.table.getNumDataPages() + 1);
+    // The pool is partitioned, so a partition may have had to evict a few.
+    assertTrue(this.table.getAllocator().getNumResidentPages() > this.table.getNumDataPages() / 2);
+  }
+
+  @Test
+  public void testAbandonedBulkReadReleasesRing() {
+    RecordIterator iter = this.table.iterator(AccessStrategy.BULK_READ);
+    for (int i = 0; i < 100; i++) {
+      assertTrue(iter.hasNext());
+      assertEquals(new IntDataBox(i), iter.next().getValues().get(0));
+    }
+    iter.close();
+    assertTrue(this.table.getAllocator().getNumResidentPages() <= 1);
+  }
+}
@@ -0,0 +1,143 @@
+package edu.berkeley.cs186.database.table;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestSlottedPage {
+  private static final int PAGE_SIZE = 4096;
+  private static final int MAX_SLOTS = 100;
+
+  private static byte[] bytes(int length, int value) {
+    byte[] record = new byte[length];
+    Arrays.fill(record, (byte) value);
+    return record;
+  }
+
+  private static byte[] read(ByteBuffer buf, int slot) {
+    ByteBuffer record = SlottedPage.getRecord(buf, slot);
+    byte[] bytes = new byte[record.remaining()];
+    record.get(bytes);
+    return bytes;
+  }
+
+  @Test
+  public void testEmptyPage() {
+    ByteBuffer buf = ByteBuffer.allocate(PAGE_SIZE);
+    assertEquals(0, SlottedPage.numSlots(buf));
+    assertEquals(0, SlottedPage.numRecords(buf));
+    assertEquals(PAGE_SIZE - SlottedPage.HEADER_SIZE, SlottedPage.freeSpace(buf));
+    assertFalse(SlottedPage.isOccupied(buf, 0));
+  }
+
+  @Test
+  public void testInsertAndRead() {
+    ByteBuffer buf = ByteBuffer.allocate(PAGE_SIZE);
+    assertEquals(0, SlottedPage.insert(buf, MAX_SLOTS, 0, bytes(10, 1)));
+    assertEquals(1, SlottedPage.insert(buf, MAX_SLOTS, 0, bytes(30, 2)));
+    assertEquals(2, SlottedPage.numRecords(buf));
+    assertArrayEquals(bytes(10, 1), read(buf, 0));
+    assertArrayEquals(bytes(30, 2), read(buf, 1));
+    int used = 40 + 2 * SlottedPage.SLOT_SIZE;
+    assertEquals(PAGE_SIZE - SlottedPage.HEADER_SIZE - used, SlottedPage.freeSpace(buf));
+  }
+
+  @Test
+  public void testDeleteKeepsEntryNumbers() {
+    ByteBuffer buf = ByteBuffer.allocate(PAGE_SIZE);
+    for (int i = 0; i < 3; i++) {
+      SlottedPage.insert(buf, MAX_SLOTS, 0, bytes(10, i));
+    }
+    SlottedPage.delete(buf, 1);
+    assertFalse(SlottedPage.isOccupied(buf, 1));
+    assertArrayEquals(bytes(10, 2), read(buf, 2));
+    // The freed slot is the first one reused.
+    assertEquals(1, SlottedPage.insert(buf, MAX_SLOTS, 0, bytes(5, 9)));
+    assertArrayEquals(bytes(5, 9), read(buf, 1));
+  }
+
+  @Test
+  public void testDeleteLastSlotShrinksDirectory() {
+    ByteBuffer buf = ByteBuffer.allocate(PAGE_SIZE);
+    for (int i = 0; i < 3; i++) {
+      SlottedPage.insert(buf, MAX_SLOTS, 0, bytes(10, i));
+    }
+    SlottedPage.delete(buf, 1);
+    SlottedPage.delete(buf, 2);
+    assertEquals(1, SlottedPage.numSlots(buf));
+    SlottedPage.delete(buf, 0);
+    assertEquals(0, SlottedPage.numSlots(buf));
+    assertEquals(PAGE_SIZE - SlottedPage.HEADER_SIZE, SlottedPage.freeSpace(buf));
+  }
+
+  @Test
+  public void testUpdateShrinkAndGrow() {
+    ByteBuffer buf = ByteBuffer.allocate(PAGE_SIZE);
+    SlottedPage.insert(buf, MAX_SLOTS, 0, bytes(20, 1));
+    SlottedPage.insert(buf, MAX_SLOTS, 0, bytes(20, 2));
+    assertTrue(SlottedPage.update(buf, 0, bytes(5, 3)));
+    assertArrayEquals(bytes(5, 3), read(buf, 0));
+    assertTrue(SlottedPage.update(buf, 0, bytes(200, 4)));
+    assertArrayEquals(bytes(200, 4), read(buf, 0));
+    assertArrayEquals(bytes(20, 2), read(buf, 1));
+  }
+
+  @Test
+  public void testUpdateThatDoesNotFitLeavesPage() {
+    ByteBuffer buf = ByteBuffer.allocate(PAGE_SIZE);
+    SlottedPage.insert(buf, MAX_SLOTS, 0, bytes(20, 1));
+    int free = SlottedPage.freeSpace(buf);
+    assertFalse(SlottedPage.update(buf, 0, bytes(PAGE_SIZE, 2)));
+    assertArrayEquals(bytes(20, 1), read(buf, 0));
+    assertEquals(free, SlottedPage.freeSpace(buf));
+  }
+
+  @Test
+  public void testInsertCompactsHoles() {
+    ByteBuffer buf = ByteBuffer.allocate(PAGE_SIZE);
+    int n = 0;
+    while (SlottedPage.insert(buf, MAX_SLOTS, 0, bytes(100, n)) != -1) {
+      n++;
+    }
+    // Free every other record; none of the holes alone fits a 150-byte record.
+    for (int i = 0; i < n; i += 2) {
+      SlottedPage.delete(buf, i);
+    }
+    int slot = SlottedPage.insert(buf, MAX_SLOTS, 0, bytes(150, 99));
+    assertNotEquals(-1, slot);
+    assertArrayEquals(bytes(150, 99), read(buf, slot));
+    for (int i = 1; i < n; i += 2) {
+      assertArrayEquals(bytes(100, i), read(buf, i));
+    }
+  }
+
+  @Test
+  public void testInsertRespectsMaxSlotsAndReserve() {
+    ByteBuffer buf = ByteBuffer.allocate(PAGE_SIZE);
+    assertEquals(0, SlottedPage.insert(buf, 2, 0, bytes(1, 0)));
+    assertEquals(1, SlottedPage.insert(buf, 2, 0, bytes(1, 0)));
+    assertEquals(-1, SlottedPage.insert(buf, 2, 0, bytes(1, 0)));
+
+    buf = ByteBuffer.allocate(PAGE_SIZE);
+    // The first record of a page ignores the reserve.
+    assertEquals(0, SlottedPage.insert(buf, MAX_SLOTS, PAGE_SIZE, bytes(10, 0)));
+    assertEquals(-1, SlottedPage.insert(buf, MAX_SLOTS, PAGE_SIZE, bytes(10, 0)));
+  }
+
+  @Test
+  public void testBitmap() {
+    ByteBuffer buf = ByteBuffer.allocate(PAGE_SIZE);
+    for (int i = 0; i < 10; i++) {
+      SlottedPage.insert(buf, MAX_SLOTS, 0, bytes(4, i));
+    }
+    SlottedPage.delete(buf, 0);
+    SlottedPage.delete(buf, 9);
+    byte[] bitmap = SlottedPage.bitmap(buf, 16);
+    assertEquals(2, bitmap.length);
+    assertEquals((byte) 0x7f, bitmap[0]);
+    assertEquals((byte) 0x80, bitmap[1]);
+  }
+}
@@ -0,0 +1,174 @@
+package edu.berkeley.cs186.database.table;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.AllocatorClass;
+import edu.berkeley.cs186.database.io.EvictionPolicy;
+import edu.berkeley.cs186.database.io.IOMode;
+import edu.berkeley.cs186.database.io.Page;
+
+import static org.junit.Assert.*;
+
+public class TestSlottedTable {
+  private static final String TABLENAME = "slotted";
+  private static final int STRING_SIZE = 500;
+
+  private Schema schema;
+  private String filename;
+  private Table table;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void beforeEach() {
+    this.schema = new Schema(Arrays.asList("id", "name"),
+                             Arrays.asList(Type.intType(), Type.stringType(STRING_SIZE)));
+    this.filename = new File(tempFolder.getRoot(), TABLENAME + Table.FILENAME_EXTENSION).getPath();
+    this.table = createTable(this.filename, TableFormat.SLOTTED);
+  }
+
+  @After
+  public void afterEach() {
+    this.table.close();
+  }
+
+  private Table createTable(String filename, TableFormat format) {
+    return new Table(TABLENAME, this.schema, filename, EvictionPolicy.CLOCK,
+                     AllocatorClass.BASE_TABLE, Page.pageSize, IOMode.MMAP_PER_PAGE, format);
+  }
+
+  private static List<DataBox> row(int id, String name) {
+    return Arrays.asList(new IntDataBox(id), new StringDataBox(name, STRING_SIZE));
+  }
+
+  private static String repeat(char c, int n) {
+    char[] chars = new char[n];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
+
+  @Test
+  public void testFormatIsRecorded() throws DatabaseException {
+    assertEquals(TableFormat.SLOTTED, this.table.getFormat());
+    this.table.addRecord(row(1, "a"));
+    this.table.close();
+    this.table = new Table(TABLENAME, this.filename);
+    assertEquals(TableFormat.SLOTTED, this.table.getFormat());
+  }
+
+  @Test
+  public void testShortStringsPackDenserThanFixed() throws DatabaseException {
+    Table fixed = createTable(new File(tempFolder.getRoot(), "fixed.table").getPath(),
+                              TableFormat.FIXED);
+    try {
+      for (int i = 0; i < 1000; i++) {
+        this.table.addRecord(row(i, "n" + i));
+        fixed.addRecord(row(i, "n" + i));
+      }
+      assertTrue(this.table.getNumDataPages() * 10 < fixed.getNumDataPages());
+    } finally {
+      fixed.close();
+    }
+  }
+
+  @Test
+  public void testAddGetUpdateDelete() throws DatabaseException {
+    RecordId short1 = this.table.addRecord(row(1, "short"));
+    RecordId long2 = this.table.addRecord(row(2, repeat('x', STRING_SIZE)));
+    assertEquals(row(1, "short"), this.table.getRecord(short1).getValues());
+    assertEquals(row(2, repeat('x', STRING_SIZE)), this.table.getRecord(long2).getValues());
+
+    // Growing a record keeps its record id.
+    Record old = this.table.updateRecord(row(1, repeat('y', 300)), short1);
+    assertEquals(row(1, "short"), old.getValues());
+    assertEquals(row(1, repeat('y', 300)), this.table.getRecord(short1).getValues());
+
+    assertEquals(row(2, repeat('x', STRING_SIZE)), this.table.deleteRecord(long2).getValues());
+    assertEquals(1, this.table.getNumRecords());
+  }
+
+  @Test(expected = DatabaseException.class)
+  public void testGetDeletedRecord() throws DatabaseException {
+    RecordId rid = this.table.addRecord(row(1, "a"));
+    this.table.deleteRecord(rid);
+    this.table.getRecord(rid);
+  }
+
+  @Test
+  public void testDeletedSlotsAreReused() throws DatabaseException {
+    List<RecordId> rids = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      rids.add(this.table.addRecord(row(i, "r" + i)));
+    }
+    int numPages = this.table.getNumDataPages();
+    assertTrue(numPages > 1);
+    for (int i = 0; i < 2000; i += 2) {
+      this.table.deleteRecord(rids.get(i));
+    }
+    for (int i = 0; i < 1000; i++) {
+      this.table.addRecord(row(-i, "r" + i));
+    }
+    assertEquals(numPages, this.table.getNumDataPages());
+    assertEquals(2000, this.table.getNumRecords());
+  }
+
+  @Test
+  public void testIteratorSkipsDeletedRecords() throws DatabaseException {
+    List<RecordId> rids = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      rids.add(this.table.addRecord(row(i, repeat('z', i % 50))));
+    }
+    for (int i = 0; i < 500; i += 3) {
+      this.table.deleteRecord(rids.get(i));
+    }
+    // Short records may fill up earlier pages, so the scan need not be in insertion order.
+    Set<Integer> seen = new HashSet<>();
+    Iterator<Record> iter = this.table.iterator();
+    while (iter.hasNext()) {
+      List<DataBox> values = iter.next().getValues();
+      int id = values.get(0).getInt();
+      assertNotEquals(0, id % 3);
+      assertEquals(row(id, repeat('z', id % 50)), values);
+      assertTrue(seen.add(id));
+    }
+    assertEquals(333, seen.size());
+  }
+
+  @Test
+  public void testReopenAfterClose() throws DatabaseException {
+    List<RecordId> rids = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      rids.add(this.table.addRecord(row(i, repeat('a', i % 200))));
+    }
+    for (int i = 0; i < 2000; i += 5) {
+      this.table.deleteRecord(rids.get(i));
+    }
+    this.table.close();
+
+    this.table = new Table(TABLENAME, this.filename);
+    assertEquals(1600, this.table.getNumRecords());
+    for (int i = 1; i < 2000; i++) {
+      if (i % 5 != 0) {
+        assertEquals(row(i, repeat('a', i % 200)), this.table.getRecord(rids.get(i)).getValues());
+      }
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package edu.berkeley.cs186.database.table;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+
+import static org.junit.Assert.*;
+
+public class TestTableState {
+  private static final String TABLENAME = "state";
+
+  private String filename;
+  private Schema schema;
+  private Table table;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void beforeEach() {
+    this.filename = new File(tempFolder.getRoot(), TABLENAME + Table.FILENAME_EXTENSION).getPath();
+  }
+
+  @After
+  public void afterEach() {
+    this.table.close();
+  }
+
+  private void createTable(int stringSize) {
+    this.schema = new Schema(Arrays.asList("id", "name"),
+                             Arrays.asList(Type.intType(), Type.stringType(stringSize)));
+    this.table = new Table(TABLENAME, this.schema, this.filename);
+  }
+
+  private List<RecordId> addRecords(int n) throws DatabaseException {
+    int stringSize = this.schema.getFieldTypes().get(1).getSizeInBytes();
+    List<List<DataBox>> rows = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      rows.add(Arrays.asList(new IntDataBox(i), new StringDataBox("r" + i, stringSize)));
+    }
+    return this.table.addRecords(rows.iterator());
+  }
+
+  private void reopen() throws DatabaseException {
+    this.table.close();
+    this.table = new Table(TABLENAME, this.filename);
+  }
+
+  @Test
+  public void testStateSurvivesReopen() throws DatabaseException {
+    createTable(500);
+    List<RecordId> rids = addRecords(80);
+    int numDataPages = this.table.getNumDataPages();
+    this.table.deleteRecord(rids.get(60));
+    this.table.deleteRecord(rids.get(20));
+    reopen();
+
+    assertEquals(78, this.table.getNumRecords());
+    assertEquals(numDataPages, this.table.getNumDataPages());
+    // The free pages are filled before the table grows.
+    List<RecordId> added = addRecords(2);
+    assertEquals(rids.get(20), added.get(0));
+    assertEquals(rids.get(60), added.get(1));
+    assertEquals(numDataPages, this.table.getNumDataPages());
+  }
+
+  @Test
+  public void testFreeListSpillsPastHeaderPage() throws DatabaseException {
+    // More pages with a free slot than the header page has room to list.
+    createTable(500);
+    assertEquals(8, this.table.getNumRecordsPerPage());
+    List<RecordId> rids = addRecords(8 * 1200);
+    for (int i = 0; i < rids.size(); i += 8) {
+      this.table.deleteRecord(rids.get(i));
+    }
+    reopen();
+
+    assertEquals(7 * 1200, this.table.getNumRecords());
+    // The free page numbers the header page lacks room for took one more
+    // page, which the next close reuses.
+    int numDataPages = this.table.getNumDataPages();
+    assertEquals(1201, numDataPages);
+    reopen();
+    assertEquals(numDataPages, this.table.getNumDataPages());
+
+    List<RecordId> added = addRecords(1200);
+    for (int i = 0; i < added.size(); i++) {
+      assertEquals(rids.get(8 * i), added.get(i));
+    }
+    assertEquals(8 * 1200, this.table.getNumRecords());
+    assertEquals(numDataPages, this.table.getNumDataPages());
+  }
+
+  @Test
+  public void testUncleanCloseIsRecounted() throws DatabaseException, IOException {
+    createTable(500);
+    List<RecordId> rids = addRecords(80);
+    reopen();
+    // The header page still holds the counts of the clean close, but the
+    // table is no longer marked clean.
+    this.table.deleteRecord(rids.get(5));
+    this.table.deleteRecord(rids.get(6));
+    this.table.deleteRecord(rids.get(70));
+    this.table.getAllocator().writeDirtyPages();
+
+    // Copy the file as a crash would leave it, without closing the table.
+    File copy = new File(tempFolder.getRoot(), "copy" + Table.FILENAME_EXTENSION);
+    Files.copy(new File(this.filename).toPath(), copy.toPath());
+    Table recovered = new Table("copy", copy.getPath());
+    try {
+      assertEquals(77, recovered.getNumRecords());
+      List<List<DataBox>> rows = new ArrayList<>();
+      rows.add(Arrays.asList(new IntDataBox(5), new StringDataBox("r5", 500)));
+      assertEquals(rids.get(5), recovered.addRecords(rows.iterator()).get(0));
+    } finally {
+      recovered.close();
+    }
+  }
+}